@@ -0,0 +1,104 @@
+package guru.springframework.spring5webfluxrest.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson encode/decode of vendor and category lists, both through the ObjectMapper and
+ * through the WebFlux encoder that writes list responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+    private static final TypeReference<List<Vendor>> VENDOR_LIST = new TypeReference<List<Vendor>>() {
+    };
+    private static final TypeReference<List<Category>> CATEGORY_LIST = new TypeReference<List<Category>>() {
+    };
+
+    @Param({"10", "1000", "10000"})
+    int size;
+
+    private ObjectMapper objectMapper;
+    private Jackson2JsonEncoder encoder;
+    private DefaultDataBufferFactory bufferFactory;
+
+    private List<Vendor> vendors;
+    private List<Category> categories;
+    private byte[] vendorJson;
+    private byte[] categoryJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        encoder = new Jackson2JsonEncoder(objectMapper);
+        bufferFactory = new DefaultDataBufferFactory();
+
+        vendors = new ArrayList<>(size);
+        categories = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            vendors.add(Vendor.builder().id(Integer.toHexString(i)).fistName("First" + i).lastName("Last" + i).version(0L).build());
+            categories.add(Category.builder().id(Integer.toHexString(i)).description("Category " + i).version(0L).build());
+        }
+        vendorJson = objectMapper.writeValueAsBytes(vendors);
+        categoryJson = objectMapper.writeValueAsBytes(categories);
+    }
+
+    @Benchmark
+    public byte[] encodeVendors() throws Exception {
+        return objectMapper.writeValueAsBytes(vendors);
+    }
+
+    @Benchmark
+    public List<Vendor> decodeVendors() throws Exception {
+        return objectMapper.readValue(vendorJson, VENDOR_LIST);
+    }
+
+    @Benchmark
+    public byte[] encodeCategories() throws Exception {
+        return objectMapper.writeValueAsBytes(categories);
+    }
+
+    @Benchmark
+    public List<Category> decodeCategories() throws Exception {
+        return objectMapper.readValue(categoryJson, CATEGORY_LIST);
+    }
+
+    @Benchmark
+    public long encodeVendorsWebFlux() {
+        return encode(vendors, Vendor.class, MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public long encodeVendorsStreaming() {
+        return encode(vendors, Vendor.class, MediaType.APPLICATION_STREAM_JSON);
+    }
+
+    private long encode(List<?> values, Class<?> type, MediaType mediaType) {
+        return encoder.encode(Flux.fromIterable(values), bufferFactory, ResolvableType.forClass(type), mediaType,
+                Collections.emptyMap())
+                .map(buffer -> {
+                    int count = buffer.readableByteCount();
+                    DataBufferUtils.release(buffer);
+                    return count;
+                })
+                .reduce(0L, Long::sum)
+                .block();
+    }
+}
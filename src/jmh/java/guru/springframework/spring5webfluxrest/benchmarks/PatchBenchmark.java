@@ -0,0 +1,55 @@
+package guru.springframework.spring5webfluxrest.benchmarks;
+
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import guru.springframework.spring5webfluxrest.config.PatchCoalescingProperties;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.services.PatchCoalescer;
+import guru.springframework.spring5webfluxrest.services.PatchService;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a PATCH body into the $set/$inc update sent with findAndModify.
+ * No query is sent; the client is only needed to build the template.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PatchBenchmark {
+
+    private MongoClient mongoClient;
+    private PatchService patchService;
+    private Vendor fullPatch;
+    private Vendor partialPatch;
+
+    @Setup
+    public void setUp() {
+        mongoClient = MongoClients.create();
+        ReactiveMongoTemplate template = new ReactiveMongoTemplate(mongoClient, "benchmark");
+        patchService = new PatchService(template, new PatchCoalescer(template, new PatchCoalescingProperties()));
+        fullPatch = Vendor.builder().fistName("Joe").lastName("Buck").build();
+        partialPatch = Vendor.builder().lastName("Weston").build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mongoClient.close();
+    }
+
+    @Benchmark
+    public Update fullPatch() {
+        Document fields = patchService.changedFields(fullPatch, Vendor.class);
+        return patchService.update(fields, Vendor.class);
+    }
+
+    @Benchmark
+    public Update partialPatch() {
+        Document fields = patchService.changedFields(partialPatch, Vendor.class);
+        return patchService.update(fields, Vendor.class);
+    }
+}
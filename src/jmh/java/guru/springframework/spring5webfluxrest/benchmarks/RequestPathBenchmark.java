@@ -0,0 +1,98 @@
+package guru.springframework.spring5webfluxrest.benchmarks;
+
+import guru.springframework.spring5webfluxrest.controllers.CategoryController;
+import guru.springframework.spring5webfluxrest.controllers.VendorController;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full request paths over HTTP against the application running on the embedded Mongo,
+ * once with the annotated controllers and once with the functional routes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RequestPathBenchmark {
+
+    @Param({"annotated", "functional"})
+    public String mode;
+
+    private ConfigurableApplicationContext context;
+    private WebTestClient webTestClient;
+    private String vendorId;
+
+    @Setup
+    public void setUp() {
+        context = StartupBenchmark.start(mode);
+
+        webTestClient = WebTestClient
+                .bindToServer()
+                .baseUrl("http://localhost:" + context.getEnvironment().getProperty("local.server.port"))
+                .responseTimeout(Duration.ofSeconds(30))
+                .build();
+
+        vendorId = webTestClient.get().uri(VendorController.BASE_URL + "?size=1")
+                .exchange()
+                .expectBodyList(Vendor.class)
+                .returnResult()
+                .getResponseBody()
+                .get(0)
+                .getId();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] listVendors() {
+        return get(VendorController.BASE_URL, MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public byte[] streamVendors() {
+        return get(VendorController.BASE_URL, MediaType.APPLICATION_STREAM_JSON);
+    }
+
+    @Benchmark
+    public byte[] pageVendors() {
+        return get(VendorController.BASE_URL + "?size=2", MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public byte[] getVendor() {
+        return get(VendorController.BASE_URL + "/" + vendorId, MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public byte[] listCategories() {
+        return get(CategoryController.BASE_URL, MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public byte[] patchVendor() {
+        return webTestClient.patch().uri(VendorController.BASE_URL + "/" + vendorId)
+                .body(Mono.just(Vendor.builder().lastName("Buck-" + System.nanoTime()).build()), Vendor.class)
+                .exchange()
+                .expectBody()
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private byte[] get(String uri, MediaType accept) {
+        return webTestClient.get().uri(uri)
+                .accept(accept)
+                .exchange()
+                .expectBody()
+                .returnResult()
+                .getResponseBody();
+    }
+}
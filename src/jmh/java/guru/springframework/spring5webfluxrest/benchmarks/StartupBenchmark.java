@@ -0,0 +1,36 @@
+package guru.springframework.spring5webfluxrest.benchmarks;
+
+import guru.springframework.spring5webfluxrest.Spring5WebfluxRestApplication;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time until the application serves requests, per API mode. The functional mode runs
+ * with the {@code functional} profile, which also trims the context. Rate limiting is
+ * off so it does not cap the throughput {@link RequestPathBenchmark} measures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+public class StartupBenchmark {
+
+    @Param({"annotated", "functional"})
+    public String mode;
+
+    @Benchmark
+    public void startup() {
+        start(mode).close();
+    }
+
+    static ConfigurableApplicationContext start(String mode) {
+        return new SpringApplication(Spring5WebfluxRestApplication.class)
+                .run("--spring.profiles.active=" + ("functional".equals(mode) ? "functional" : "default"),
+                        "--server.port=0", "--spring.data.mongodb.port=0", "--logging.level.root=WARN",
+                        "--app.rate-limit.enabled=false");
+    }
+}
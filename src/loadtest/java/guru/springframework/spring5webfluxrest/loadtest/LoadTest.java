@@ -0,0 +1,193 @@
+package guru.springframework.spring5webfluxrest.loadtest;
+
+import guru.springframework.spring5webfluxrest.Spring5WebfluxRestApplication;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a traffic mix against the application running on the embedded Mongo and
+ * reports throughput and an HDR latency histogram per endpoint. Requests are issued by a
+ * fixed number of concurrent callers (a closed loop), each sending its next request as
+ * soon as the previous one completes, so the figures show capacity at that concurrency.
+ * <p>
+ * Run with {@code ./gradlew loadTest -PloadTestArgs="--duration=60s --mix=getById=80,patch=20"};
+ * see {@link LoadTestOptions} for the arguments.
+ */
+public class LoadTest {
+
+    private static final Duration SEED_TIMEOUT = Duration.ofSeconds(60);
+
+    private final LoadTestOptions options;
+    private final WebClient client;
+    private final Map<Resource, List<String>> ids = new EnumMap<>(Resource.class);
+    private final Map<Resource, Map<Operation, EndpointStats>> stats = new EnumMap<>(Resource.class);
+    private final List<Operation> operations = new ArrayList<>();
+    private final int[] cumulativeWeights;
+    private final AtomicLong sequence = new AtomicLong();
+
+    LoadTest(LoadTestOptions options, String baseUrl) {
+        this.options = options;
+        this.client = WebClient.create(baseUrl);
+        this.cumulativeWeights = new int[options.mix.size()];
+        int total = 0;
+        for (Map.Entry<Operation, Integer> entry : options.mix.entrySet()) {
+            total += entry.getValue();
+            cumulativeWeights[operations.size()] = total;
+            operations.add(entry.getKey());
+        }
+        for (Resource resource : options.resources) {
+            Map<Operation, EndpointStats> byOperation = new LinkedHashMap<>();
+            for (Operation operation : operations) {
+                byOperation.put(operation, new EndpointStats(resource.name().toLowerCase() + " " + operation.key));
+            }
+            stats.put(resource, byOperation);
+        }
+    }
+
+    public static void main(String[] args) {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        ConfigurableApplicationContext context = null;
+        int status = 0;
+        try {
+            context = start(options);
+            LoadTest loadTest = new LoadTest(options,
+                    "http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+            loadTest.awaitSeedData();
+            loadTest.run();
+            loadTest.report(System.out);
+        } catch (Exception e) {
+            e.printStackTrace();
+            status = 1;
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+        // the event loop Boot creates for the Mongo driver outlives the context and would keep the JVM running
+        System.exit(status);
+    }
+
+    /**
+     * Rate limiting is off so it does not cap the throughput being measured. The embedded
+     * Mongo is used unless a {@code --spring.data.mongodb.*} argument points elsewhere.
+     */
+    static ConfigurableApplicationContext start(LoadTestOptions options) {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--spring.profiles.active=" + ("functional".equals(options.mode) ? "functional" : "default"),
+                "--server.port=0", "--logging.level.root=WARN", "--app.rate-limit.enabled=false"));
+        if (options.applicationArgs.stream().noneMatch(arg -> arg.startsWith("--spring.data.mongodb."))) {
+            args.add("--spring.data.mongodb.port=0");
+        }
+        args.addAll(options.applicationArgs);
+        return new SpringApplication(Spring5WebfluxRestApplication.class).run(args.toArray(new String[0]));
+    }
+
+    void awaitSeedData() {
+        for (Resource resource : options.resources) {
+            List<String> found = Mono.defer(() -> client.get().uri(resource.baseUrl)
+                    .accept(MediaType.APPLICATION_JSON)
+                    .retrieve()
+                    .bodyToFlux(new ParameterizedTypeReference<Map<String, Object>>() {
+                    })
+                    .map(document -> (String) document.get("id"))
+                    .collectList())
+                    .filter(list -> !list.isEmpty())
+                    .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofMillis(500)))
+                    .block(SEED_TIMEOUT);
+            ids.put(resource, found);
+        }
+    }
+
+    void run() {
+        long recordFrom = System.nanoTime() + options.warmup.toNanos();
+        long end = recordFrom + options.duration.toNanos();
+
+        Flux.<Long>generate(sink -> sink.next(System.nanoTime()))
+                .takeWhile(now -> now < end)
+                .flatMap(now -> call(now >= recordFrom), options.concurrency)
+                .blockLast();
+    }
+
+    private Mono<Boolean> call(boolean recorded) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Resource resource = options.resources.get(random.nextInt(options.resources.size()));
+        Operation operation = pick(random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]));
+        List<String> known = ids.get(resource);
+        String id = known.get(random.nextInt(known.size()));
+        EndpointStats endpoint = stats.get(resource).get(operation);
+
+        long start = System.nanoTime();
+        return operation.request(client, resource, id, sequence.incrementAndGet())
+                .exchange()
+                .flatMap(response -> response.bodyToMono(byte[].class)
+                        .then(Mono.just(response.statusCode().is2xxSuccessful())))
+                .onErrorReturn(false)
+                .doOnNext(success -> {
+                    if (recorded) {
+                        endpoint.record(start, success);
+                    }
+                });
+    }
+
+    private Operation pick(int roll) {
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (roll < cumulativeWeights[i]) {
+                return operations.get(i);
+            }
+        }
+        return operations.get(operations.size() - 1);
+    }
+
+    /**
+     * Prints one line per endpoint and writes each full percentile distribution, in
+     * milliseconds, to {@code <report-directory>/<resource>-<operation>.hgrm}.
+     */
+    void report(PrintStream out) throws FileNotFoundException {
+        File directory = new File(options.reportDirectory);
+        directory.mkdirs();
+        double seconds = options.duration.toMillis() / 1000.0;
+
+        out.printf("%n%s mode, %d callers, %s measured after %s warmup%n",
+                options.mode, options.concurrency, options.duration, options.warmup);
+        out.printf("%-22s %9s %10s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map<Operation, EndpointStats> byOperation : stats.values()) {
+            for (EndpointStats endpoint : byOperation.values()) {
+                Histogram latencies = endpoint.latencies;
+                out.printf("%-22s %9d %10.1f %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                        endpoint.name, latencies.getTotalCount(), latencies.getTotalCount() / seconds,
+                        endpoint.errors.sum(),
+                        millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)),
+                        millis(latencies.getValueAtPercentile(99)), millis(latencies.getValueAtPercentile(99.9)),
+                        millis(latencies.getMaxValue()));
+                try (PrintStream file = new PrintStream(new File(directory, endpoint.name.replace(' ', '-') + ".hgrm"))) {
+                    latencies.outputPercentileDistribution(file, 1000.0);
+                }
+            }
+        }
+        out.printf("Histograms written to %s%n", directory.getAbsolutePath());
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,88 @@
+package guru.springframework.spring5webfluxrest.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code --name=value} arguments of {@link LoadTest}. Anything it does not know, such as
+ * {@code --spring.data.mongodb.uri=...} or {@code --app.cache.vendors.ttl=1m}, is passed on
+ * to the application.
+ */
+class LoadTestOptions {
+
+    static final String DEFAULT_MIX = "list=10,getById=50,create=5,bulkCreate=5,put=15,patch=15";
+
+    String mode = "annotated";
+    Duration warmup = Duration.ofSeconds(10);
+    Duration duration = Duration.ofSeconds(30);
+    int concurrency = 64;
+    Map<Operation, Integer> mix = parseMix(DEFAULT_MIX);
+    List<Resource> resources = Arrays.asList(Resource.values());
+    String reportDirectory = "build/reports/loadtest";
+    final List<String> applicationArgs = new ArrayList<>();
+
+    static LoadTestOptions parse(String... args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            String name = arg.startsWith("--") && equals > 2 ? arg.substring(2, equals) : "";
+            String value = equals < 0 ? "" : arg.substring(equals + 1);
+            switch (name) {
+                case "mode":
+                    options.mode = value;
+                    break;
+                case "warmup":
+                    options.warmup = DurationStyle.detectAndParse(value);
+                    break;
+                case "duration":
+                    options.duration = DurationStyle.detectAndParse(value);
+                    break;
+                case "concurrency":
+                    options.concurrency = Integer.parseInt(value);
+                    break;
+                case "mix":
+                    options.mix = parseMix(value);
+                    break;
+                case "resources":
+                    options.resources = new ArrayList<>();
+                    for (String resource : value.split(",")) {
+                        options.resources.add(Resource.valueOf(resource.trim().toUpperCase()));
+                    }
+                    break;
+                case "report-directory":
+                    options.reportDirectory = value;
+                    break;
+                default:
+                    options.applicationArgs.add(arg);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * @param mix relative weights such as {@code getById=80,patch=20}
+     */
+    static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight in the mix, got: " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(Operation.of(parts[0].trim()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no operation with a positive weight: " + mix);
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,81 @@
+package guru.springframework.spring5webfluxrest.loadtest;
+
+import guru.springframework.spring5webfluxrest.config.WebFluxConfig;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.StringJoiner;
+
+/**
+ * The controller operations a traffic mix is made of. Reads and updates pick a random
+ * id among the documents present when the run started.
+ */
+enum Operation {
+
+    LIST("list") {
+        @Override
+        WebClient.RequestHeadersSpec<?> request(WebClient client, Resource resource, String id, long n) {
+            return client.get().uri(resource.baseUrl).accept(MediaType.APPLICATION_JSON);
+        }
+    },
+    GET_BY_ID("getById") {
+        @Override
+        WebClient.RequestHeadersSpec<?> request(WebClient client, Resource resource, String id, long n) {
+            return client.get().uri(resource.baseUrl + "/" + id).accept(MediaType.APPLICATION_JSON);
+        }
+    },
+    CREATE("create") {
+        @Override
+        WebClient.RequestHeadersSpec<?> request(WebClient client, Resource resource, String id, long n) {
+            return json(client.post().uri(resource.baseUrl), resource.body(n));
+        }
+    },
+    BULK_CREATE("bulkCreate") {
+        @Override
+        WebClient.RequestHeadersSpec<?> request(WebClient client, Resource resource, String id, long n) {
+            StringJoiner lines = new StringJoiner("\n", "", "\n");
+            for (int i = 0; i < BULK_SIZE; i++) {
+                lines.add(resource.body(n * BULK_SIZE + i));
+            }
+            return client.post().uri(resource.baseUrl + "/_bulk")
+                    .contentType(WebFluxConfig.APPLICATION_NDJSON)
+                    .syncBody(lines.toString());
+        }
+    },
+    PUT("put") {
+        @Override
+        WebClient.RequestHeadersSpec<?> request(WebClient client, Resource resource, String id, long n) {
+            return json(client.method(HttpMethod.PUT).uri(resource.baseUrl + "/" + id), resource.body(n));
+        }
+    },
+    PATCH("patch") {
+        @Override
+        WebClient.RequestHeadersSpec<?> request(WebClient client, Resource resource, String id, long n) {
+            return json(client.method(HttpMethod.PATCH).uri(resource.baseUrl + "/" + id), resource.body(n));
+        }
+    };
+
+    static final int BULK_SIZE = 100;
+
+    final String key;
+
+    Operation(String key) {
+        this.key = key;
+    }
+
+    abstract WebClient.RequestHeadersSpec<?> request(WebClient client, Resource resource, String id, long n);
+
+    static Operation of(String key) {
+        for (Operation operation : values()) {
+            if (operation.key.equals(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + key);
+    }
+
+    private static WebClient.RequestHeadersSpec<?> json(WebClient.RequestBodySpec request, String body) {
+        return request.contentType(MediaType.APPLICATION_JSON).syncBody(body);
+    }
+}
@@ -0,0 +1,28 @@
+package guru.springframework.spring5webfluxrest.loadtest;
+
+import guru.springframework.spring5webfluxrest.controllers.CategoryController;
+import guru.springframework.spring5webfluxrest.controllers.VendorController;
+
+enum Resource {
+
+    VENDORS(VendorController.BASE_URL) {
+        @Override
+        String body(long n) {
+            return "{\"fistName\":\"Load\",\"lastName\":\"Test " + n + "\"}";
+        }
+    },
+    CATEGORIES(CategoryController.BASE_URL) {
+        @Override
+        String body(long n) {
+            return "{\"description\":\"Load test " + n + "\"}";
+        }
+    };
+
+    final String baseUrl;
+
+    Resource(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    abstract String body(long n);
+}
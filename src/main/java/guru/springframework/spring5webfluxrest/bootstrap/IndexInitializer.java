@@ -0,0 +1,48 @@
+package guru.springframework.spring5webfluxrest.bootstrap;
+
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.domain.VendorView;
+import guru.springframework.spring5webfluxrest.idempotency.MongoIdempotencyStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.util.ClassTypeInformation;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The reactive template does not create the indexes declared on documents, so this
+ * creates them. It runs alongside the other startup tasks; none of the indexes is unique,
+ * so writes made before they exist are indexed when they are built.
+ */
+@Slf4j
+@Component
+public class IndexInitializer extends StartupTask {
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final MongoPersistentEntityIndexResolver indexResolver;
+    private final ObjectProvider<MongoIdempotencyStore> idempotencyStore;
+
+    public IndexInitializer(ReactiveMongoOperations mongoOperations, MongoMappingContext mappingContext,
+                            ObjectProvider<MongoIdempotencyStore> idempotencyStore) {
+        this.mongoOperations = mongoOperations;
+        this.indexResolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        this.idempotencyStore = idempotencyStore;
+    }
+
+    @Override
+    protected Mono<?> task() {
+        MongoIdempotencyStore store = idempotencyStore.getIfAvailable();
+        return Flux.just(Vendor.class, Category.class, VendorView.class)
+                .flatMapIterable(type -> indexResolver.resolveIndexFor(ClassTypeInformation.from(type)))
+                .concatMap(index -> mongoOperations.indexOps(index.getCollection()).ensureIndex(index)
+                        .doOnNext(name -> log.info("Ensured index {} on {}", name, index.getCollection())))
+                .concatWith(store == null ? Mono.empty() : store.ensureIndex()
+                        .doOnNext(name -> log.info("Ensured index {} on idempotency keys", name)))
+                .then();
+    }
+}
@@ -0,0 +1,27 @@
+package guru.springframework.spring5webfluxrest.bootstrap;
+
+import guru.springframework.spring5webfluxrest.services.SearchIndexer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Fills the typeahead index in the background. Documents written while it runs are
+ * indexed as they change, and the index keeps whichever version is newest.
+ */
+@Slf4j
+@Component
+public class SearchIndexLoader extends StartupTask {
+
+    private final SearchIndexer searchIndexer;
+
+    public SearchIndexLoader(SearchIndexer searchIndexer) {
+        this.searchIndexer = searchIndexer;
+    }
+
+    @Override
+    protected Mono<?> task() {
+        return searchIndexer.load()
+                .doOnNext(count -> log.info("Indexed {} documents for typeahead", count));
+    }
+}
@@ -0,0 +1,93 @@
+package guru.springframework.spring5webfluxrest.bootstrap;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.springframework.spring5webfluxrest.config.SeedProperties;
+import guru.springframework.spring5webfluxrest.config.WorkSchedulers;
+import guru.springframework.spring5webfluxrest.domain.BulkInsertResult;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.services.BulkInsertService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streams the seed files into empty collections through {@link BulkInsertService}.
+ */
+@Slf4j
+@Component
+public class SeedLoader extends StartupTask {
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final BulkInsertService bulkInsertService;
+    private final SeedProperties seedProperties;
+    private final ObjectMapper objectMapper;
+    private final WorkSchedulers workSchedulers;
+    private final Map<String, BulkInsertResult> results = new ConcurrentHashMap<>();
+
+    public SeedLoader(ReactiveMongoOperations mongoOperations, BulkInsertService bulkInsertService,
+                      SeedProperties seedProperties, ObjectMapper objectMapper, WorkSchedulers workSchedulers) {
+        this.mongoOperations = mongoOperations;
+        this.bulkInsertService = bulkInsertService;
+        this.seedProperties = seedProperties;
+        this.objectMapper = objectMapper;
+        this.workSchedulers = workSchedulers;
+    }
+
+    @Override
+    protected Mono<Void> task() {
+        if (!seedProperties.isEnabled()) {
+            return Mono.empty();
+        }
+        return Flux.merge(seed(Category.class, seedProperties.getCategories()),
+                seed(Vendor.class, seedProperties.getVendors()))
+                .then();
+    }
+
+    public Map<String, BulkInsertResult> getResults() {
+        return results;
+    }
+
+    private <T> Mono<Void> seed(Class<T> type, Resource resource) {
+        if (resource == null) {
+            return Mono.empty();
+        }
+        return mongoOperations.count(new Query(), type)
+                .filter(count -> count == 0)
+                .flatMap(empty -> bulkInsertService.insert(read(resource, type), type))
+                .doOnNext(result -> {
+                    log.info("Seeded {} from {}: {}", type.getSimpleName(), resource.getDescription(), result);
+                    results.put(type.getSimpleName(), result);
+                })
+                .then();
+    }
+
+    /**
+     * Jackson unwraps a top-level array, so the same reader handles both layouts.
+     * The file is read on the blocking scheduler because the reads block.
+     */
+    <T> Flux<T> read(Resource resource, Class<T> type) {
+        return Flux.using(() -> objectMapper.readerFor(type).<T>readValues(resource.getInputStream()),
+                iterator -> Flux.fromIterable(() -> iterator),
+                SeedLoader::close)
+                .subscribeOn(workSchedulers.blocking());
+    }
+
+    private static void close(MappingIterator<?> iterator) {
+        try {
+            iterator.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
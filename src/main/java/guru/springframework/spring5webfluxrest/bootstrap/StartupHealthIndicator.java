@@ -0,0 +1,41 @@
+package guru.springframework.spring5webfluxrest.bootstrap;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Keeps {@code /actuator/health} out of service until every {@link StartupTask} has
+ * finished, and down once one has failed, with the state of each task as details.
+ */
+@Component
+public class StartupHealthIndicator extends AbstractHealthIndicator {
+
+    private final List<StartupTask> tasks;
+
+    public StartupHealthIndicator(List<StartupTask> tasks) {
+        this.tasks = tasks;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        boolean pending = false;
+        boolean failed = false;
+        for (StartupTask task : tasks) {
+            builder.withDetail(task.getName(), task.getState() == StartupTask.State.FAILED
+                    ? task.getState() + ": " + task.getError().getMessage()
+                    : task.getState());
+            pending |= task.getState() == StartupTask.State.PENDING;
+            failed |= task.getState() == StartupTask.State.FAILED;
+        }
+        if (failed) {
+            builder.down();
+        } else if (pending) {
+            builder.outOfService();
+        } else {
+            builder.up();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package guru.springframework.spring5webfluxrest.bootstrap;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.util.ClassUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * Startup work against Mongo that the application does not wait for: the runner only
+ * subscribes, and {@link StartupHealthIndicator} reports the application out of service
+ * until every task has finished.
+ */
+@Slf4j
+public abstract class StartupTask implements CommandLineRunner {
+
+    public enum State {PENDING, COMPLETE, FAILED}
+
+    private volatile State state = State.PENDING;
+    private volatile Throwable error;
+    private Disposable subscription;
+
+    /**
+     * @return the work, subscribed to once when the application has started
+     */
+    protected abstract Mono<?> task();
+
+    @Override
+    public void run(String... args) throws Exception {
+        subscription = task().then().subscribe(null, e -> {
+            log.error("{} failed", getName(), e);
+            error = e;
+            state = State.FAILED;
+        }, () -> state = State.COMPLETE);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    public String getName() {
+        return ClassUtils.getShortNameAsProperty(getClass());
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+}
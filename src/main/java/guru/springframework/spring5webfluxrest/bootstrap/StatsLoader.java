@@ -0,0 +1,33 @@
+package guru.springframework.spring5webfluxrest.bootstrap;
+
+import guru.springframework.spring5webfluxrest.services.StatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Counts the collections for {@code /api/v1/stats} in the background. Documents written
+ * while it runs are counted as they change. The figures are not worth taking the
+ * application out of service for: if the pipelines fail, only changes from now on are
+ * counted and the task still completes.
+ */
+@Slf4j
+@Component
+public class StatsLoader extends StartupTask {
+
+    private final StatsService statsService;
+
+    public StatsLoader(StatsService statsService) {
+        this.statsService = statsService;
+    }
+
+    @Override
+    protected Mono<?> task() {
+        return statsService.load()
+                .doOnNext(count -> log.info("Counted {} documents for stats", count))
+                .onErrorResume(e -> {
+                    log.warn("Could not count documents for stats, counting changes only: {}", e.getMessage());
+                    return Mono.empty();
+                });
+    }
+}
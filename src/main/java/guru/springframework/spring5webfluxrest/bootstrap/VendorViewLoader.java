@@ -0,0 +1,27 @@
+package guru.springframework.spring5webfluxrest.bootstrap;
+
+import guru.springframework.spring5webfluxrest.services.VendorViewProjector;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Catches the vendor views up with the vendors in the background. Vendors written while
+ * it runs are projected as they change, after the views it is rebuilding.
+ */
+@Slf4j
+@Component
+public class VendorViewLoader extends StartupTask {
+
+    private final VendorViewProjector vendorViewProjector;
+
+    public VendorViewLoader(VendorViewProjector vendorViewProjector) {
+        this.vendorViewProjector = vendorViewProjector;
+    }
+
+    @Override
+    protected Mono<?> task() {
+        return vendorViewProjector.load()
+                .doOnNext(count -> log.info("Rebuilt {} vendor views", count));
+    }
+}
@@ -0,0 +1,48 @@
+package guru.springframework.spring5webfluxrest.bootstrap;
+
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Documents written before versioning was introduced have no version field, which
+ * Spring Data would treat as new on save. Give them an initial version, once: a marker
+ * in the migrations collection records that the backfill has run.
+ */
+@Slf4j
+@Component
+public class VersionBackfill extends StartupTask {
+
+    static final String MIGRATIONS = "migrations";
+    static final String MARKER = "version-backfill";
+
+    private final ReactiveMongoOperations mongoOperations;
+
+    public VersionBackfill(ReactiveMongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    protected Mono<?> task() {
+        return mongoOperations.exists(query(where("_id").is(MARKER)), MIGRATIONS)
+                .filter(done -> !done)
+                .flatMap(pending -> Flux.just(Vendor.class, Category.class)
+                        .concatMap(type -> mongoOperations.updateMulti(query(where("version").exists(false)),
+                                new Update().set("version", 0L), type)
+                                .doOnNext(result -> log.info("Backfilled versions of {} {} documents",
+                                        result.getModifiedCount(), type.getSimpleName())))
+                        .then(mongoOperations.save(new Document("_id", MARKER).append("completedAt", new Date()),
+                                MIGRATIONS)));
+    }
+}
@@ -0,0 +1,98 @@
+package guru.springframework.spring5webfluxrest.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.reactivestreams.Publisher;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.codec.HttpMessageDecoder;
+import org.springframework.http.codec.json.Jackson2CodecSupport;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.Assert;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jackson 2.9 has no non-blocking CBOR parser, so unlike the JSON and Smile decoders
+ * this one joins the request body before reading it. Either a CBOR array or a
+ * sequence of top-level items is accepted when decoding to a {@link Flux}.
+ */
+public class Jackson2CborDecoder extends Jackson2CodecSupport implements HttpMessageDecoder<Object> {
+
+    public Jackson2CborDecoder(ObjectMapper objectMapper, MimeType... mimeTypes) {
+        super(objectMapper, mimeTypes);
+        Assert.isAssignable(CBORFactory.class, objectMapper.getFactory().getClass());
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        JavaType javaType = getObjectMapper().getTypeFactory().constructType(elementType.getType());
+        return supportsMimeType(mimeType) && getObjectMapper().canDeserialize(javaType);
+    }
+
+    @Override
+    public Flux<Object> decode(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+                               MimeType mimeType, Map<String, Object> hints) {
+        ObjectReader reader = reader(elementType);
+        return DataBufferUtils.join(inputStream)
+                .flatMapMany(buffer -> {
+                    try {
+                        MappingIterator<Object> values = reader.readValues(buffer.asInputStream());
+                        return Flux.fromIterable(values.readAll());
+                    } catch (IOException | RuntimeException e) {
+                        return Flux.error(new DecodingException("CBOR decoding error: " + e.getMessage(), e));
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                });
+    }
+
+    @Override
+    public Mono<Object> decodeToMono(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+                                     MimeType mimeType, Map<String, Object> hints) {
+        ObjectReader reader = reader(elementType);
+        return DataBufferUtils.join(inputStream)
+                .flatMap(buffer -> {
+                    try {
+                        return Mono.justOrEmpty(reader.readValue(buffer.asInputStream()));
+                    } catch (IOException | RuntimeException e) {
+                        return Mono.error(new DecodingException("CBOR decoding error: " + e.getMessage(), e));
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                });
+    }
+
+    @Override
+    public List<MimeType> getDecodableMimeTypes() {
+        return getMimeTypes();
+    }
+
+    @Override
+    public Map<String, Object> getDecodeHints(ResolvableType actualType, ResolvableType elementType,
+                                              ServerHttpRequest request, ServerHttpResponse response) {
+        return getHints(actualType);
+    }
+
+    @Override
+    protected <A extends Annotation> A getAnnotation(MethodParameter parameter, Class<A> annotType) {
+        return parameter.getParameterAnnotation(annotType);
+    }
+
+    private ObjectReader reader(ResolvableType elementType) {
+        return getObjectMapper().readerFor(getJavaType(elementType.getType(), null));
+    }
+}
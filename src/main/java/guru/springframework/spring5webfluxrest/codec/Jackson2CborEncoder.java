@@ -0,0 +1,43 @@
+package guru.springframework.spring5webfluxrest.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.codec.json.AbstractJackson2Encoder;
+import org.springframework.util.Assert;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Encodes a {@link Flux} as an indefinite-length CBOR array, writing each element as it
+ * arrives instead of collecting the whole list first the way the Jackson base class does.
+ */
+public class Jackson2CborEncoder extends AbstractJackson2Encoder {
+
+    private static final byte INDEFINITE_ARRAY_START = (byte) 0x9F;
+    private static final byte BREAK = (byte) 0xFF;
+
+    public Jackson2CborEncoder(ObjectMapper objectMapper, MimeType... mimeTypes) {
+        super(objectMapper, mimeTypes);
+        Assert.isAssignable(CBORFactory.class, objectMapper.getFactory().getClass());
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        if (inputStream instanceof Mono) {
+            return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+        }
+        return Flux.concat(
+                Mono.fromCallable(() -> bufferFactory.wrap(new byte[]{INDEFINITE_ARRAY_START})),
+                Flux.from(inputStream).concatMap(value ->
+                        super.encode(Mono.just(value), bufferFactory, elementType, mimeType, hints)),
+                Mono.fromCallable(() -> bufferFactory.wrap(new byte[]{BREAK})));
+    }
+}
@@ -0,0 +1,85 @@
+package guru.springframework.spring5webfluxrest.codec;
+
+import guru.springframework.spring5webfluxrest.config.CompressionProperties;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import reactor.ipc.netty.http.server.SimpleCompressionHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reactor Netty's compression handler with the zlib level and size threshold chosen
+ * per response media type. Extending {@link SimpleCompressionHandler} keeps its wrapping
+ * of raw buffers into HTTP content. File regions pass through untouched, so zero-copy
+ * downloads keep working as long as their media type has no rule.
+ */
+public class ResponseCompressionHandler extends SimpleCompressionHandler {
+
+    private static final int WINDOW_BITS = 15;
+    private static final int MEM_LEVEL = 8;
+
+    private final List<MediaType> mediaTypes = new ArrayList<>();
+    private final List<CompressionProperties.Rule> rules;
+    private ChannelHandlerContext ctx;
+
+    public ResponseCompressionHandler(List<CompressionProperties.Rule> rules) {
+        this.rules = rules;
+        for (CompressionProperties.Rule rule : rules) {
+            mediaTypes.add(MediaType.parseMediaType(rule.getMediaType()));
+        }
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    protected Result beginEncode(HttpResponse response, String acceptEncoding) throws Exception {
+        if (response.headers().contains(HttpHeaderNames.CONTENT_ENCODING)) {
+            return null;
+        }
+        CompressionProperties.Rule rule = ruleFor(response.headers().get(HttpHeaderNames.CONTENT_TYPE));
+        if (rule == null) {
+            return null;
+        }
+        long length = HttpUtil.getContentLength(response, -1L);
+        if (length >= 0 && length < rule.getMinResponseSize()) {
+            return null;
+        }
+        ZlibWrapper wrapper = determineWrapper(acceptEncoding);
+        if (wrapper == null) {
+            return null;
+        }
+        return new Result(wrapper == ZlibWrapper.GZIP ? "gzip" : "deflate",
+                new EmbeddedChannel(ctx.channel().id(), ctx.channel().metadata().hasDisconnect(), ctx.channel().config(),
+                        ZlibCodecFactory.newZlibEncoder(wrapper, rule.getLevel(), WINDOW_BITS, MEM_LEVEL)));
+    }
+
+    private CompressionProperties.Rule ruleFor(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        MediaType type;
+        try {
+            type = MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return null;
+        }
+        for (int i = 0; i < mediaTypes.size(); i++) {
+            if (mediaTypes.get(i).includes(type)) {
+                return rules.get(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,28 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.bulk")
+public class BulkProperties {
+
+    /**
+     * Maximum number of documents sent in one insertMany.
+     */
+    private int batchSize = 1000;
+
+    /**
+     * A partially filled batch is flushed once this much time has passed.
+     */
+    private Duration window = Duration.ofMillis(500);
+
+    /**
+     * Number of batches in flight at the same time.
+     */
+    private int concurrency = 2;
+}
@@ -0,0 +1,25 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.repository.CategoryRepository;
+import guru.springframework.spring5webfluxrest.repository.VendorRepository;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public EntityCache<Vendor> vendorCache(VendorRepository vendorRepository, CacheProperties cacheProperties) {
+        return new EntityCache<>(vendorRepository::findById, vendorRepository::findAllById, Vendor::getId,
+                cacheProperties.getVendors());
+    }
+
+    @Bean
+    public EntityCache<Category> categoryCache(CategoryRepository categoryRepository, CacheProperties cacheProperties) {
+        return new EntityCache<>(categoryRepository::findById, categoryRepository::findAllById, Category::getId,
+                cacheProperties.getCategories());
+    }
+}
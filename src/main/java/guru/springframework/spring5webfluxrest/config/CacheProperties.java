@@ -0,0 +1,30 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.cache")
+public class CacheProperties {
+
+    private Spec vendors = new Spec();
+    private Spec categories = new Spec();
+
+    @Data
+    public static class Spec {
+
+        /**
+         * Maximum number of entries kept before the least recently used ones are evicted.
+         */
+        private long maximumSize = 10_000;
+
+        /**
+         * Entries are reloaded from Mongo once they are older than this.
+         */
+        private Duration ttl = Duration.ofMinutes(5);
+    }
+}
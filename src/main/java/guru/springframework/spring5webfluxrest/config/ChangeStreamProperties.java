@@ -0,0 +1,54 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.change-streams")
+public class ChangeStreamProperties {
+
+    /**
+     * Change streams need a replica set, so they are off unless enabled. Without them each
+     * instance only sees its own writes.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Delay before a failed change stream is opened again.
+     */
+    private Duration retryDelay = Duration.ofSeconds(30);
+
+    /**
+     * Recent changes kept per collection, so reconnecting subscribers can resume from
+     * memory instead of opening a change stream of their own.
+     */
+    private int historySize = 1000;
+
+    /**
+     * Change streams opened for subscribers resuming from before the history. Further
+     * such subscribers are told to list again instead.
+     */
+    private int maxResumeStreams = 16;
+
+    /**
+     * Changes buffered for each subscriber before {@link #slowSubscriberPolicy} applies.
+     */
+    private int subscriberBufferSize = 256;
+
+    private SlowSubscriberPolicy slowSubscriberPolicy = SlowSubscriberPolicy.DISCONNECT;
+
+    public enum SlowSubscriberPolicy {
+        /**
+         * Discard the oldest buffered change and keep the subscriber connected.
+         */
+        DROP_OLDEST,
+        /**
+         * End the subscription; the client reconnects with its last resume token.
+         */
+        DISCONNECT
+    }
+}
@@ -0,0 +1,31 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import guru.springframework.spring5webfluxrest.codec.ResponseCompressionHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.ipc.netty.NettyPipeline;
+
+/**
+ * Adds a {@link ResponseCompressionHandler} to every connection, right after the HTTP
+ * codec: Reactor Netty hands requests to its operations without passing them further
+ * down the pipeline, and the compressor has to see them to read Accept-Encoding. It is
+ * not registered under Reactor Netty's own compression handler name, which would make
+ * file responses fall back from zero-copy to chunked writes.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.compression.enabled", matchIfMissing = true)
+public class CompressionConfig {
+
+    public static final String HANDLER_NAME = "responseCompression";
+
+    @Bean
+    public WebServerFactoryCustomizer<NettyReactiveWebServerFactory> responseCompressionCustomizer(
+            CompressionProperties properties) {
+        return factory -> factory.addServerCustomizers(builder -> builder.afterChannelInit(channel ->
+                channel.pipeline().addAfter(NettyPipeline.HttpCodec, HANDLER_NAME,
+                        new ResponseCompressionHandler(properties.getRules()))));
+    }
+}
@@ -0,0 +1,55 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.compression")
+public class CompressionProperties {
+
+    /**
+     * Whether responses matching one of the rules are gzip or deflate encoded.
+     * Leave {@code server.compression.enabled} off, it would compress a second time.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Checked in order, the first rule whose media type includes the response type applies.
+     */
+    private List<Rule> rules = new ArrayList<>(Arrays.asList(
+            new Rule("application/json", 2048, 6),
+            new Rule("application/x-ndjson", 2048, 1),
+            new Rule("application/stream+json", 2048, 1)));
+
+    @Data
+    public static class Rule {
+
+        private String mediaType;
+
+        /**
+         * Responses with a smaller Content-Length are sent as is. Streamed responses
+         * have no length and are always compressed.
+         */
+        private int minResponseSize;
+
+        /**
+         * zlib level from 1 (fastest) to 9 (smallest).
+         */
+        private int level;
+
+        public Rule() {
+        }
+
+        public Rule(String mediaType, int minResponseSize, int level) {
+            this.mediaType = mediaType;
+            this.minResponseSize = minResponseSize;
+            this.level = level;
+        }
+    }
+}
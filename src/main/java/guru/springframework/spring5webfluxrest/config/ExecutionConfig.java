@@ -0,0 +1,69 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.connection.ConnectionPoolSettings;
+import guru.springframework.spring5webfluxrest.metrics.MongoConnectionPoolMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.autoconfigure.mongo.MongoProperties;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.ipc.netty.http.HttpResources;
+import reactor.ipc.netty.resources.LoopResources;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread and connection limits of the server and the Mongo driver.
+ */
+@Configuration
+public class ExecutionConfig {
+
+    /**
+     * Only created when a thread count is configured; otherwise the server keeps
+     * Reactor Netty's shared loops.
+     */
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnProperty("app.execution.event-loop.threads")
+    public LoopResources httpLoopResources(ExecutionProperties executionProperties) {
+        return LoopResources.create("http", executionProperties.getEventLoop().getThreads(), true);
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<NettyReactiveWebServerFactory> eventLoopCustomizer(
+            ObjectProvider<LoopResources> loopResources) {
+        return factory -> factory.addServerCustomizers(builder ->
+                builder.loopResources(loopResources.getIfAvailable(HttpResources::get)));
+    }
+
+    /**
+     * Setting pool settings replaces those Boot derived from the URI, so they are
+     * re-applied from the same connection string before the configured overrides.
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoPoolCustomizer(ExecutionProperties executionProperties,
+                                                                    MongoProperties mongoProperties,
+                                                                    MeterRegistry registry) {
+        ExecutionProperties.MongoPool pool = executionProperties.getMongoPool();
+        ConnectionPoolSettings.Builder settings = ConnectionPoolSettings.builder()
+                .applyConnectionString(new ConnectionString(mongoProperties.determineUri()))
+                .addConnectionPoolListener(new MongoConnectionPoolMetrics(registry));
+        if (pool.getMaxSize() != null) {
+            settings.maxSize(pool.getMaxSize());
+        }
+        if (pool.getMinSize() != null) {
+            settings.minSize(pool.getMinSize());
+        }
+        if (pool.getMaxWaitQueueSize() != null) {
+            settings.maxWaitQueueSize(pool.getMaxWaitQueueSize());
+        }
+        if (pool.getMaxWaitTime() != null) {
+            settings.maxWaitTime(pool.getMaxWaitTime().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return builder -> builder.connectionPoolSettings(settings.build());
+    }
+}
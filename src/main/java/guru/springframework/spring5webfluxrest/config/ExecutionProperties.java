@@ -0,0 +1,74 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.execution")
+public class ExecutionProperties {
+
+    private final Blocking blocking = new Blocking();
+    private final Cpu cpu = new Cpu();
+    private final EventLoop eventLoop = new EventLoop();
+    private final MongoPool mongoPool = new MongoPool();
+
+    @Data
+    public static class Blocking {
+
+        /**
+         * Threads for blocking I/O such as file reads and writes.
+         */
+        private int threads = 10 * Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Tasks waiting for a blocking thread; beyond this work is rejected instead of queued.
+         */
+        private int queueCapacity = 10000;
+
+        /**
+         * Idle time after which a blocking thread is released.
+         */
+        private Duration keepAlive = Duration.ofSeconds(60);
+    }
+
+    @Data
+    public static class Cpu {
+
+        /**
+         * Threads for CPU-heavy work that should not run on an event loop.
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    @Data
+    public static class EventLoop {
+
+        /**
+         * Netty event loop threads serving HTTP; unset keeps Reactor Netty's default.
+         */
+        private Integer threads;
+    }
+
+    /**
+     * Mongo driver connection pool. Unset values keep what the connection string or the
+     * driver defaults say.
+     */
+    @Data
+    public static class MongoPool {
+
+        private Integer maxSize;
+        private Integer minSize;
+
+        /**
+         * Operations allowed to wait for a connection once the pool is exhausted; further
+         * ones fail immediately.
+         */
+        private Integer maxWaitQueueSize;
+
+        private Duration maxWaitTime;
+    }
+}
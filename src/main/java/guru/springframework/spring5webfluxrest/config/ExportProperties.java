@@ -0,0 +1,31 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.export")
+public class ExportProperties {
+
+    /**
+     * Whether collection snapshots are written periodically.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Where snapshots are written. Each one replaces the previous file atomically.
+     */
+    private File directory = new File(System.getProperty("java.io.tmpdir"), "spring5-webflux-rest-export");
+
+    /**
+     * Delay before the first snapshot, long enough for seeding to finish.
+     */
+    private Duration initialDelay = Duration.ofSeconds(30);
+
+    private Duration interval = Duration.ofMinutes(15);
+}
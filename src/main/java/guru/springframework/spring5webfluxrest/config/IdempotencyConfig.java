@@ -0,0 +1,27 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import guru.springframework.spring5webfluxrest.idempotency.IdempotencyFilter;
+import guru.springframework.spring5webfluxrest.idempotency.MongoIdempotencyStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+
+@Configuration
+@ConditionalOnProperty(name = "app.idempotency.enabled", matchIfMissing = true)
+public class IdempotencyConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.idempotency.mongo.enabled")
+    public MongoIdempotencyStore mongoIdempotencyStore(ReactiveMongoOperations mongoOperations,
+                                                       IdempotencyProperties properties) {
+        return new MongoIdempotencyStore(mongoOperations, properties);
+    }
+
+    @Bean
+    public IdempotencyFilter idempotencyFilter(IdempotencyProperties properties, RateLimitProperties rateLimitProperties,
+                                               ObjectProvider<MongoIdempotencyStore> store) {
+        return new IdempotencyFilter(properties, rateLimitProperties, store.getIfAvailable());
+    }
+}
@@ -0,0 +1,64 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.idempotency")
+public class IdempotencyProperties {
+
+    /**
+     * Whether writes carrying an idempotency key are deduplicated.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Header holding the client-chosen key.
+     */
+    private String header = "Idempotency-Key";
+
+    /**
+     * Maximum number of keys whose responses are kept in memory.
+     */
+    private long maximumSize = 10_000;
+
+    /**
+     * How long a response is replayed for its key.
+     */
+    private Duration ttl = Duration.ofHours(24);
+
+    /**
+     * Larger responses are not stored, so a retry of such a request runs again.
+     */
+    private int maxResponseSize = 1024 * 1024;
+
+    /**
+     * Larger request bodies with a key are answered with 413, as they are held in memory
+     * to be compared with those of retries.
+     */
+    private int maxRequestSize = 1024 * 1024;
+
+    private Mongo mongo = new Mongo();
+
+    @Data
+    public static class Mongo {
+
+        /**
+         * Whether keys are also recorded in a Mongo TTL collection, so retries landing on
+         * another instance are deduplicated too.
+         */
+        private boolean enabled = false;
+
+        private String collection = "idempotency_keys";
+
+        /**
+         * How long a request holds its key without a response. Retries after that run
+         * again, so it must be well above the slowest write.
+         */
+        private Duration claimTimeout = Duration.ofMinutes(1);
+    }
+}
@@ -0,0 +1,34 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import guru.springframework.spring5webfluxrest.metrics.EventLoopMetrics;
+import guru.springframework.spring5webfluxrest.metrics.MongoCommandMetrics;
+import guru.springframework.spring5webfluxrest.metrics.RepositoryMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.ipc.netty.http.HttpResources;
+import reactor.ipc.netty.resources.LoopResources;
+
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public static RepositoryMetrics repositoryMetrics() {
+        return new RepositoryMetrics();
+    }
+
+    @Bean
+    public EventLoopMetrics eventLoopMetrics(ObjectProvider<LoopResources> loopResources) {
+        return new EventLoopMetrics(loopResources.getIfAvailable(HttpResources::get));
+    }
+
+    /**
+     * The connection pool listener is added with the pool settings in {@link ExecutionConfig}.
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoMetricsCustomizer(MeterRegistry registry) {
+        return builder -> builder.addCommandListener(new MongoCommandMetrics(registry));
+    }
+}
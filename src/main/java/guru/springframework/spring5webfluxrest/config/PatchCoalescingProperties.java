@@ -0,0 +1,35 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.patch-coalescing")
+public class PatchCoalescingProperties {
+
+    /**
+     * Whether unconditional PATCHes are merged per document and written in batches.
+     */
+    private boolean enabled = false;
+
+    /**
+     * How long a patch may wait for others to the same documents before it is written.
+     */
+    private Duration window = Duration.ofMillis(50);
+
+    /**
+     * Maximum number of documents written in one bulkWrite. Reaching it flushes
+     * before the window ends.
+     */
+    private int batchSize = 500;
+
+    /**
+     * Maximum number of documents with pending patches. Patches to other documents are
+     * written directly while it is reached.
+     */
+    private int maxPending = 10000;
+}
@@ -0,0 +1,28 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import guru.springframework.spring5webfluxrest.ratelimit.MongoConcurrencyLimit;
+import guru.springframework.spring5webfluxrest.ratelimit.RateLimitFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RateLimitConfig {
+
+    @Bean
+    public MongoConcurrencyLimit mongoConcurrencyLimit(RateLimitProperties properties) {
+        return new MongoConcurrencyLimit(properties.getMongo());
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoConcurrencyLimitCustomizer(MongoConcurrencyLimit limit) {
+        return builder -> builder.addCommandListener(limit);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.rate-limit.enabled", matchIfMissing = true)
+    public RateLimitFilter rateLimitFilter(RateLimitProperties properties, MongoConcurrencyLimit limit) {
+        return new RateLimitFilter(properties, limit);
+    }
+}
@@ -0,0 +1,85 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.rate-limit")
+public class RateLimitProperties {
+
+    /**
+     * Whether API requests are rate limited and shed under Mongo overload.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Header identifying the client. Requests without it are limited per remote address.
+     */
+    private String apiKeyHeader = "X-API-Key";
+
+    /**
+     * API keys issued to clients. Requests carrying any other key are limited per remote
+     * address, as if they had none.
+     */
+    private Set<String> apiKeys = new HashSet<>();
+
+    /**
+     * Maximum number of clients whose buckets are kept in memory.
+     */
+    private long maxClients = 100_000;
+
+    /**
+     * Buckets of clients idle for this long are dropped, which is the same as refilling them.
+     */
+    private Duration idleTimeout = Duration.ofMinutes(10);
+
+    private Bucket read = new Bucket(200, 100);
+    private Bucket write = new Bucket(50, 20);
+    private Mongo mongo = new Mongo();
+
+    @Data
+    public static class Bucket {
+
+        /**
+         * Requests a client may burst before being limited to the sustained rate.
+         */
+        private int capacity;
+
+        /**
+         * Sustained requests per second.
+         */
+        private double perSecond;
+
+        public Bucket() {
+        }
+
+        public Bucket(int capacity, double perSecond) {
+            this.capacity = capacity;
+            this.perSecond = perSecond;
+        }
+    }
+
+    @Data
+    public static class Mongo {
+
+        /**
+         * Concurrent Mongo commands allowed before requests are shed, until latency feedback adjusts it.
+         */
+        private int initialLimit = 50;
+
+        private int minLimit = 5;
+
+        private int maxLimit = 200;
+
+        /**
+         * Commands slower than this shrink the limit, faster ones grow it.
+         */
+        private Duration targetLatency = Duration.ofMillis(50);
+    }
+}
@@ -0,0 +1,149 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import guru.springframework.spring5webfluxrest.controllers.CategoryController;
+import guru.springframework.spring5webfluxrest.controllers.ChangeController;
+import guru.springframework.spring5webfluxrest.controllers.ExportController;
+import guru.springframework.spring5webfluxrest.controllers.MultiGet;
+import guru.springframework.spring5webfluxrest.controllers.SearchController;
+import guru.springframework.spring5webfluxrest.controllers.StatsController;
+import guru.springframework.spring5webfluxrest.controllers.VendorController;
+import guru.springframework.spring5webfluxrest.controllers.VendorViewController;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.handlers.CategoryHandler;
+import guru.springframework.spring5webfluxrest.handlers.ChangeHandler;
+import guru.springframework.spring5webfluxrest.handlers.ExportHandler;
+import guru.springframework.spring5webfluxrest.handlers.SearchHandler;
+import guru.springframework.spring5webfluxrest.handlers.ServerResponses;
+import guru.springframework.spring5webfluxrest.handlers.StatsHandler;
+import guru.springframework.spring5webfluxrest.handlers.VendorHandler;
+import guru.springframework.spring5webfluxrest.handlers.VendorViewHandler;
+import guru.springframework.spring5webfluxrest.repository.CategoryRepository;
+import guru.springframework.spring5webfluxrest.repository.VendorRepository;
+import guru.springframework.spring5webfluxrest.repository.VendorViewRepository;
+import guru.springframework.spring5webfluxrest.services.BulkInsertService;
+import guru.springframework.spring5webfluxrest.services.ChangeStreamService;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import guru.springframework.spring5webfluxrest.services.ExportService;
+import guru.springframework.spring5webfluxrest.services.PatchService;
+import guru.springframework.spring5webfluxrest.services.SearchService;
+import guru.springframework.spring5webfluxrest.services.StatsService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.*;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * Functional routes serving the same API as the annotated controllers, enabled with
+ * {@code app.api.mode=functional}. Requests are dispatched by predicates straight to
+ * handler methods, without annotation-driven argument resolution.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.api.mode", havingValue = "functional")
+public class RouterConfig {
+
+    @Bean
+    public VendorHandler vendorHandler(VendorRepository vendorRepository, EntityCache<Vendor> vendorCache,
+                                       BulkInsertService bulkInsertService, PatchService patchService,
+                                       UpdateProperties updateProperties) {
+        return new VendorHandler(vendorRepository, vendorCache, bulkInsertService, patchService, updateProperties);
+    }
+
+    @Bean
+    public CategoryHandler categoryHandler(CategoryRepository categoryRepository, EntityCache<Category> categoryCache,
+                                           BulkInsertService bulkInsertService, PatchService patchService,
+                                           UpdateProperties updateProperties) {
+        return new CategoryHandler(categoryRepository, categoryCache, bulkInsertService, patchService,
+                updateProperties);
+    }
+
+    @Bean
+    public SearchHandler searchHandler(SearchService searchService) {
+        return new SearchHandler(searchService);
+    }
+
+    @Bean
+    public ExportHandler exportHandler(ExportService exportService) {
+        return new ExportHandler(exportService);
+    }
+
+    @Bean
+    public ChangeHandler changeHandler(ChangeStreamService changeStreamService) {
+        return new ChangeHandler(changeStreamService);
+    }
+
+    @Bean
+    public StatsHandler statsHandler(StatsService statsService) {
+        return new StatsHandler(statsService);
+    }
+
+    @Bean
+    public VendorViewHandler vendorViewHandler(VendorViewRepository vendorViewRepository) {
+        return new VendorViewHandler(vendorViewRepository);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> vendorRoutes(VendorHandler handler, ChangeHandler changeHandler) {
+        String base = VendorController.BASE_URL;
+        return route(GET(base).and(queryParam(MultiGet.IDS_PARAM, ids -> true)), handler::getByIds)
+                .andRoute(GET(base).and(ServerResponses.acceptsStream()), handler::stream)
+                .andRoute(GET(base).and(queryParam("size", size -> true).or(queryParam("cursor", cursor -> true))),
+                        handler::page)
+                .andRoute(GET(base), handler::list)
+                .andRoute(GET(base + ChangeController.STREAM_PATH), changeHandler::vendors)
+                .andRoute(GET(base + "/{id}"), handler::getById)
+                .andRoute(POST(base + "/_bulk").and(contentType(MediaType.APPLICATION_STREAM_JSON,
+                        WebFluxConfig.APPLICATION_NDJSON, WebFluxConfig.APPLICATION_SMILE,
+                        WebFluxConfig.APPLICATION_STREAM_SMILE)), handler::bulkCreate)
+                .andRoute(POST(base + MultiGet.PATH), handler::multiGet)
+                .andRoute(POST(base), handler::create)
+                .andRoute(PUT(base + "/{id}"), handler::update)
+                .andRoute(PATCH(base + "/{id}"), handler::patch);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> categoryRoutes(CategoryHandler handler, ChangeHandler changeHandler) {
+        String base = CategoryController.BASE_URL;
+        return route(GET(base).and(queryParam(MultiGet.IDS_PARAM, ids -> true)), handler::getByIds)
+                .andRoute(GET(base).and(ServerResponses.acceptsStream()), handler::stream)
+                .andRoute(GET(base).and(queryParam("size", size -> true).or(queryParam("cursor", cursor -> true))),
+                        handler::page)
+                .andRoute(GET(base), handler::list)
+                .andRoute(GET(base + ChangeController.STREAM_PATH), changeHandler::categories)
+                .andRoute(GET(base + "/{id}"), handler::getById)
+                .andRoute(POST(base + "/_bulk").and(contentType(MediaType.APPLICATION_STREAM_JSON,
+                        WebFluxConfig.APPLICATION_NDJSON, WebFluxConfig.APPLICATION_SMILE,
+                        WebFluxConfig.APPLICATION_STREAM_SMILE)), handler::bulkCreate)
+                .andRoute(POST(base + MultiGet.PATH), handler::multiGet)
+                .andRoute(POST(base), handler::create)
+                .andRoute(PUT(base + "/{id}"), handler::update)
+                .andRoute(PATCH(base + "/{id}"), handler::patch);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> searchRoutes(SearchHandler handler) {
+        return route(GET(SearchController.BASE_URL), handler::search);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> exportRoutes(ExportHandler handler) {
+        return route(GET(ExportController.BASE_URL + "/{collection}"), handler::export);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> statsRoutes(StatsHandler handler) {
+        return route(GET(StatsController.BASE_URL), handler::stats);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> vendorViewRoutes(VendorViewHandler handler) {
+        String base = VendorViewController.BASE_URL;
+        return route(GET(base).and(queryParam(VendorViewController.CATEGORY_PARAM, categoryId -> true)), handler::byCategory)
+                .andRoute(GET(base + "/{id}"), handler::getById);
+    }
+}
@@ -0,0 +1,27 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.seed")
+public class SeedProperties {
+
+    /**
+     * Whether empty collections are seeded at startup.
+     */
+    private boolean enabled = true;
+
+    /**
+     * JSON array or newline-delimited JSON with one category per line.
+     */
+    private Resource categories;
+
+    /**
+     * JSON array or newline-delimited JSON with one vendor per line.
+     */
+    private Resource vendors;
+}
@@ -0,0 +1,19 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.stats")
+public class StatsProperties {
+
+    /**
+     * How long after a vendor update or delete the counters are recounted in Mongo, so a
+     * burst of writes is recounted once.
+     */
+    private Duration recountDelay = Duration.ofSeconds(5);
+}
@@ -0,0 +1,22 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.updates")
+public class UpdateProperties {
+
+    /**
+     * Whether a PUT for an unknown id creates the document. When false it answers 404,
+     * so PUT only ever updates.
+     */
+    private boolean upsert = true;
+
+    /**
+     * Whether PUT and PATCH must carry If-Match; requests without it are answered 428.
+     */
+    private boolean requireIfMatch = false;
+}
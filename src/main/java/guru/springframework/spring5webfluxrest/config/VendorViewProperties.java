@@ -0,0 +1,17 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.vendor-views")
+public class VendorViewProperties {
+
+    /**
+     * Maximum number of vendors with a pending view update. Writes to other vendors are
+     * not queued while it is reached; one pass over the vendors catches up with them.
+     */
+    private int maxPending = 10000;
+}
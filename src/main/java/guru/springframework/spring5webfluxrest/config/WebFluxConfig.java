@@ -0,0 +1,123 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.springframework.spring5webfluxrest.codec.Jackson2CborDecoder;
+import guru.springframework.spring5webfluxrest.codec.Jackson2CborEncoder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Registers {@code application/x-ndjson} and {@code application/stream+json} on one encoder
+ * so that both are written element by element and flushed as soon as each document is
+ * encoded. They are added as custom codecs because Boot replaces the default Jackson codecs.
+ * The default Jackson encoder is kept off {@code application/stream+json}: it comes first
+ * and gives everything it writes the charset of {@code application/json}, which the
+ * streaming type does not have.
+ * <p>
+ * Smile and CBOR are registered the same way. Their mappers come from builders of their
+ * own with Boot's {@link Jackson2ObjectMapperBuilderCustomizer}s applied, so they share the
+ * JSON mapper's configuration without changing the builder Boot shares with everyone else.
+ */
+@Configuration
+public class WebFluxConfig implements WebFluxConfigurer {
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final MediaType APPLICATION_NDJSON = MediaType.valueOf(APPLICATION_NDJSON_VALUE);
+
+    public static final String APPLICATION_CBOR_VALUE = "application/cbor";
+    public static final MediaType APPLICATION_CBOR = MediaType.valueOf(APPLICATION_CBOR_VALUE);
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+
+    /**
+     * Smile documents written back to back without separators, one per element.
+     */
+    public static final String APPLICATION_STREAM_SMILE_VALUE = "application/stream+x-jackson-smile";
+    public static final MediaType APPLICATION_STREAM_SMILE = MediaType.valueOf(APPLICATION_STREAM_SMILE_VALUE);
+
+    /**
+     * Upper bound of documents requested from a Mongo cursor at once while streaming.
+     * The driver sizes its getMore batches from this demand.
+     */
+    public static final int STREAM_BATCH_SIZE = 256;
+
+    private final ObjectMapper objectMapper;
+    private final List<Jackson2ObjectMapperBuilderCustomizer> customizers;
+
+    public WebFluxConfig(ObjectMapper objectMapper, List<Jackson2ObjectMapperBuilderCustomizer> customizers) {
+        this.objectMapper = objectMapper;
+        this.customizers = customizers;
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.defaultCodecs().jackson2JsonEncoder(jsonEncoder(objectMapper));
+
+        Jackson2JsonEncoder encoder = new Jackson2JsonEncoder(objectMapper, APPLICATION_NDJSON,
+                MediaType.APPLICATION_STREAM_JSON);
+        encoder.setStreamingMediaTypes(Arrays.asList(APPLICATION_NDJSON, MediaType.APPLICATION_STREAM_JSON));
+
+        configurer.customCodecs().encoder(encoder);
+        configurer.customCodecs().decoder(new Jackson2JsonDecoder(objectMapper, APPLICATION_NDJSON));
+
+        ObjectMapper smileMapper = build(Jackson2ObjectMapperBuilder.smile());
+        configurer.customCodecs().encoder(new Jackson2SmileEncoder(smileMapper, APPLICATION_SMILE, APPLICATION_STREAM_SMILE));
+        configurer.customCodecs().decoder(new Jackson2SmileDecoder(smileMapper, APPLICATION_SMILE, APPLICATION_STREAM_SMILE));
+
+        ObjectMapper cborMapper = build(Jackson2ObjectMapperBuilder.cbor());
+        configurer.customCodecs().encoder(new Jackson2CborEncoder(cborMapper, APPLICATION_CBOR));
+        configurer.customCodecs().decoder(new Jackson2CborDecoder(cborMapper, APPLICATION_CBOR));
+    }
+
+    /**
+     * Boot puts its own default Jackson encoder back from a configurer that runs after this
+     * one, so the configurer is given this one again once every configurer has run.
+     */
+    @Bean
+    public static BeanPostProcessor jsonEncoderPostProcessor(ObjectProvider<ObjectMapper> objectMapper) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof ServerCodecConfigurer) {
+                    ((ServerCodecConfigurer) bean).defaultCodecs().jackson2JsonEncoder(jsonEncoder(objectMapper.getObject()));
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * The default Jackson encoder, minus {@code application/stream+json}.
+     */
+    private static Jackson2JsonEncoder jsonEncoder(ObjectMapper objectMapper) {
+        return new Jackson2JsonEncoder(objectMapper) {
+            @Override
+            public boolean canEncode(ResolvableType elementType, @Nullable MimeType mimeType) {
+                return !MediaType.APPLICATION_STREAM_JSON.includes(mimeType) && super.canEncode(elementType, mimeType);
+            }
+        };
+    }
+
+    private ObjectMapper build(Jackson2ObjectMapperBuilder builder) {
+        customizers.forEach(customizer -> customizer.customize(builder));
+        return builder.build();
+    }
+}
@@ -0,0 +1,74 @@
+package guru.springframework.spring5webfluxrest.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Collections;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Named, bounded schedulers for work that must stay off the event loops. Blocking work
+ * gets a fixed pool with a bounded queue, so a backlog is rejected rather than growing
+ * threads without limit as {@link Schedulers#elastic()} would. CPU-heavy work gets a
+ * parallel scheduler whose threads Reactor treats as non-blocking.
+ */
+@Component
+public class WorkSchedulers implements MeterBinder, DisposableBean {
+
+    public static final String BLOCKING = "blocking";
+    public static final String CPU = "cpu";
+
+    private final ThreadPoolExecutor blockingExecutor;
+    private final Scheduler blocking;
+    private final Scheduler cpu;
+
+    public WorkSchedulers(ExecutionProperties executionProperties) {
+        ExecutionProperties.Blocking settings = executionProperties.getBlocking();
+        blockingExecutor = new ThreadPoolExecutor(settings.getThreads(), settings.getThreads(),
+                settings.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(settings.getQueueCapacity()), daemonThreads(BLOCKING),
+                new ThreadPoolExecutor.AbortPolicy());
+        blockingExecutor.allowCoreThreadTimeOut(true);
+        blocking = Schedulers.fromExecutorService(blockingExecutor);
+        cpu = Schedulers.newParallel(CPU, executionProperties.getCpu().getThreads(), true);
+    }
+
+    public Scheduler blocking() {
+        return blocking;
+    }
+
+    public Scheduler cpu() {
+        return cpu;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new ExecutorServiceMetrics(blockingExecutor, "schedulers." + BLOCKING, Collections.<Tag>emptyList())
+                .bindTo(registry);
+    }
+
+    @Override
+    public void destroy() {
+        blocking.dispose();
+        cpu.dispose();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
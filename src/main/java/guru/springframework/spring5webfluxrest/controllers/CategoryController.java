@@ -1,32 +1,120 @@
 package guru.springframework.spring5webfluxrest.controllers;
 
+import guru.springframework.spring5webfluxrest.config.UpdateProperties;
+import guru.springframework.spring5webfluxrest.config.WebFluxConfig;
+import guru.springframework.spring5webfluxrest.domain.BulkInsertResult;
 import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.MultiGetRequest;
+import guru.springframework.spring5webfluxrest.domain.MultiGetResult;
+import guru.springframework.spring5webfluxrest.metrics.FluxMetrics;
 import guru.springframework.spring5webfluxrest.repository.CategoryRepository;
+import guru.springframework.spring5webfluxrest.services.BulkInsertService;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import guru.springframework.spring5webfluxrest.services.PatchService;
 import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 @RestController
+@ConditionalOnProperty(name = "app.api.mode", havingValue = "annotated", matchIfMissing = true)
 @RequestMapping(path = CategoryController.BASE_URL)
 public class CategoryController {
     public static final String BASE_URL = "/api/v1/categories";
+    public static final List<String> FILTER_FIELDS = Arrays.asList("description");
 
     private final CategoryRepository categoryRepository;
+    private final EntityCache<Category> categoryCache;
+    private final BulkInsertService bulkInsertService;
+    private final PatchService patchService;
+    private final UpdateProperties updateProperties;
 
-    public CategoryController(CategoryRepository categoryRepository) {
+    public CategoryController(CategoryRepository categoryRepository, EntityCache<Category> categoryCache,
+                              BulkInsertService bulkInsertService, PatchService patchService,
+                              UpdateProperties updateProperties) {
         this.categoryRepository = categoryRepository;
+        this.categoryCache = categoryCache;
+        this.bulkInsertService = bulkInsertService;
+        this.patchService = patchService;
+        this.updateProperties = updateProperties;
     }
 
     @GetMapping
-    Flux<Category> list() {
-        return categoryRepository.findAll();
+    Flux<Category> list(@RequestParam Map<String, String> params) {
+        Flux<Category> categories = ListQuery.from(params, FILTER_FIELDS)
+                .map(categoryRepository::findAll)
+                .orElseGet(categoryRepository::findAll);
+        return FluxMetrics.countElements("categories.list", categories);
+    }
+
+    @GetMapping(produces = {MediaType.APPLICATION_STREAM_JSON_VALUE,
+            WebFluxConfig.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE,
+            WebFluxConfig.APPLICATION_STREAM_SMILE_VALUE})
+    Flux<Category> stream(@RequestParam Map<String, String> params) {
+        Flux<Category> categories = ListQuery.from(params, FILTER_FIELDS)
+                .map(categoryRepository::findAll)
+                .orElseGet(categoryRepository::findAll);
+        return FluxMetrics.countElements("categories.stream", categories.limitRate(WebFluxConfig.STREAM_BATCH_SIZE));
+    }
+
+    @GetMapping(params = "size")
+    Mono<ResponseEntity<List<Category>>> page(@RequestParam(required = false) Integer size,
+                                              @RequestParam(required = false) String cursor,
+                                              ServerWebExchange exchange) {
+        int pageSize = PageCursor.pageSize(size);
+        String after = cursor == null ? null : PageCursor.decode(cursor);
+        Mono<ResponseEntity<List<Category>>> page = Mono.defer(() -> PageCursor.toPage(after == null
+                ? categoryRepository.findAllBy(PageCursor.pageable(pageSize))
+                : categoryRepository.findByIdGreaterThan(after, PageCursor.pageable(pageSize)), pageSize));
+
+        List<String> ifNoneMatch = exchange.getRequest().getHeaders().getIfNoneMatch();
+        if (ifNoneMatch.isEmpty()) {
+            return page;
+        }
+        Flux<Category> versions = after == null
+                ? categoryRepository.findVersionsBy(PageCursor.pageable(pageSize))
+                : categoryRepository.findVersionsByIdGreaterThan(after, PageCursor.pageable(pageSize));
+        return PageCursor.<Category, List<Category>>notModified(versions, pageSize, ifNoneMatch)
+                .switchIfEmpty(page);
+    }
+
+    /**
+     * A cursor without a size pages at the default size.
+     */
+    @GetMapping(params = {"cursor", "!size"})
+    Mono<ResponseEntity<List<Category>>> pageAfter(@RequestParam String cursor, ServerWebExchange exchange) {
+        return page(null, cursor, exchange);
+    }
+
+    @GetMapping(params = MultiGet.IDS_PARAM)
+    Mono<MultiGetResult<Category>> getByIds(@RequestParam List<String> ids) {
+        return MultiGet.lookup(categoryCache, ids);
+    }
+
+    @PostMapping(MultiGet.PATH)
+    Mono<MultiGetResult<Category>> multiGet(@RequestBody MultiGetRequest request) {
+        return MultiGet.lookup(categoryCache, request.getIds());
     }
 
     @GetMapping("{id}")
-    Mono<Category> getById(@PathVariable String id) {
-        return categoryRepository.findById(id);
+    Mono<ResponseEntity<Category>> getById(@PathVariable String id, ServerWebExchange exchange) {
+        List<String> ifNoneMatch = exchange.getRequest().getHeaders().getIfNoneMatch();
+        Mono<ResponseEntity<Category>> found = ifNoneMatch.isEmpty()
+                ? categoryCache.get(id).map(ETags::ok)
+                : categoryRepository.findVersionById(id)
+                        .flatMap(current -> ETags.matches(ifNoneMatch, ETags.of(current))
+                                ? Mono.just(ETags.<Category>notModified(ETags.of(current)))
+                                : ETags.cachedAt(categoryCache, id, current.getVersion()).map(ETags::ok));
+        return found.defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
     @PostMapping
@@ -35,28 +123,30 @@ public class CategoryController {
     //    return categoryRepository.saveAll(categoryStream).then();
     //}
     Flux<Category> create(@RequestBody Publisher<Category> categoryStream) {
-        return categoryRepository.saveAll(categoryStream);
+        return FluxMetrics.countElements("categories.create", categoryRepository.saveAll(categoryStream)
+                .doOnNext(saved -> categoryCache.put(saved.getId(), saved)));
+    }
+
+    @PostMapping(path = "_bulk", consumes = {MediaType.APPLICATION_STREAM_JSON_VALUE, WebFluxConfig.APPLICATION_NDJSON_VALUE,
+            WebFluxConfig.APPLICATION_SMILE_VALUE, WebFluxConfig.APPLICATION_STREAM_SMILE_VALUE})
+    Mono<BulkInsertResult> bulkCreate(@RequestBody Flux<Category> categories) {
+        return bulkInsertService.insert(categories, Category.class);
     }
 
 
     @PutMapping("{id}")
-    @ResponseStatus(HttpStatus.OK)
-    Mono<Category> update(@PathVariable String id, @RequestBody Category category) {
-        category.setId(id);
-        return categoryRepository.save(category);
+    Mono<ResponseEntity<Category>> update(@PathVariable String id, @RequestBody Category category, ServerWebExchange exchange) {
+        return ConditionalUpdate.replace(id, category, exchange.getRequest().getHeaders().getIfMatch(), updateProperties,
+                categoryRepository::findVersionById, categoryRepository::save)
+                .doOnNext(saved -> categoryCache.put(saved.getId(), saved))
+                .map(ETags::ok);
     }
 
     @PatchMapping("{id}")
-    @ResponseStatus(HttpStatus.OK)
-    Mono<Category> patch(@PathVariable String id, @RequestBody Category category) {
-        return categoryRepository.findById(id)
-                .flatMap(cat -> {
-                    if (category.getDescription() != null && !category.getDescription().equals(cat.getDescription())) {
-                        cat.setDescription(category.getDescription());
-                        return categoryRepository.save(cat);
-                    }
-                    return Mono.just(cat);
-                }).switchIfEmpty(Mono.error(new RuntimeException("Not Found id: " + id)));
-
+    Mono<ResponseEntity<Category>> patch(@PathVariable String id, @RequestBody Category category, ServerWebExchange exchange) {
+        return ConditionalUpdate.patch(patchService, id, category, Category.class,
+                exchange.getRequest().getHeaders().getIfMatch(), updateProperties)
+                .doOnNext(patched -> categoryCache.put(patched.getId(), patched))
+                .map(ETags::ok);
     }
 }
@@ -0,0 +1,92 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.EntityChange;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.services.ChangeStreamService;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonSerializationException;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Pushes inserts, updates and deletes as server-sent events. Each event id is the
+ * change's resume token, base64url encoded, so an {@code EventSource} reconnecting with
+ * {@code Last-Event-ID} picks up right after the last change it received. An
+ * {@code invalidate} event means changes were missed and the client should list again.
+ */
+@RestController
+@ConditionalOnProperty(name = "app.api.mode", havingValue = "annotated", matchIfMissing = true)
+public class ChangeController {
+    public static final String STREAM_PATH = "/stream";
+    public static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    /**
+     * Comments sent while nothing changes, so idle connections survive proxies and
+     * disconnected clients are noticed.
+     */
+    public static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+
+    private final ChangeStreamService changeStreamService;
+
+    public ChangeController(ChangeStreamService changeStreamService) {
+        this.changeStreamService = changeStreamService;
+    }
+
+    @GetMapping(path = VendorController.BASE_URL + STREAM_PATH, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    Flux<ServerSentEvent<EntityChange<Vendor>>> vendors(
+            @RequestHeader(name = LAST_EVENT_ID, required = false) String lastEventId) {
+        return changes(changeStreamService, Vendor.class, lastEventId);
+    }
+
+    @GetMapping(path = CategoryController.BASE_URL + STREAM_PATH, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    Flux<ServerSentEvent<EntityChange<Category>>> categories(
+            @RequestHeader(name = LAST_EVENT_ID, required = false) String lastEventId) {
+        return changes(changeStreamService, Category.class, lastEventId);
+    }
+
+    public static <T> Flux<ServerSentEvent<EntityChange<T>>> changes(ChangeStreamService changeStreamService,
+                                                                  Class<T> type, String lastEventId) {
+        BsonDocument resumeAfter = lastEventId == null || lastEventId.isEmpty() ? null : decodeToken(lastEventId);
+        return changeStreamService.subscribe(type, resumeAfter)
+                .map(change -> ServerSentEvent.builder(change)
+                        // an invalidate event has no token and clears the client's Last-Event-ID
+                        .id(change.getResumeToken() == null ? "" : encodeToken(change.getResumeToken()))
+                        .event(change.getOperation())
+                        .build())
+                .mergeWith(Flux.interval(HEARTBEAT_INTERVAL)
+                        .map(tick -> ServerSentEvent.<EntityChange<T>>builder().comment("heartbeat").build()));
+    }
+
+    public static String encodeToken(BsonDocument token) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        new BsonDocumentCodec().encode(new BsonBinaryWriter(buffer), token, EncoderContext.builder().build());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.toByteArray());
+    }
+
+    public static BsonDocument decodeToken(String token) {
+        try {
+            return new BsonDocumentCodec().decode(new BsonBinaryReader(ByteBuffer.wrap(Base64.getUrlDecoder().decode(token))),
+                    DecoderContext.builder().build());
+        } catch (IllegalArgumentException | BsonSerializationException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid resume token: " + token);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.config.UpdateProperties;
+import guru.springframework.spring5webfluxrest.domain.Versioned;
+import guru.springframework.spring5webfluxrest.services.PatchService;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Optimistic concurrency for PUT and PATCH. {@code If-Match} names the version
+ * (the ETag) a write is based on: the write applies only while the document is still at
+ * that version, and answers 412 once another writer has moved it on, so concurrent
+ * editors need no lock around the service. {@code If-Match: *} only asks for the
+ * document to exist. Without the header the last writer wins.
+ */
+public final class ConditionalUpdate {
+
+    public static final String ANY = "*";
+
+    /**
+     * Unconditional PUTs re-read the version and try again this many times when another
+     * write gets in between.
+     */
+    static final int RETRIES = 3;
+
+    private ConditionalUpdate() {
+    }
+
+    /**
+     * Replaces the document with the given id by the entity. With If-Match the save is
+     * conditional on the version; without it the entity takes the current version, and
+     * an unknown id is inserted unless upserts are disabled.
+     *
+     * @param findVersion loads the id and version only
+     * @return the saved document; 404, 412 or 428 as a {@link ResponseStatusException}
+     */
+    public static <T extends Versioned> Mono<T> replace(String id, T entity, List<String> ifMatch,
+                                                         UpdateProperties properties,
+                                                         Function<String, Mono<T>> findVersion,
+                                                         Function<T, Mono<T>> save) {
+        return Mono.defer(() -> {
+            entity.setId(id);
+            Set<Long> expected = expectedVersions(ifMatch, properties);
+
+            Mono<T> saved = findVersion.apply(id)
+                    .flatMap(current -> {
+                        if (expected != null && !expected.isEmpty() && !expected.contains(current.getVersion())) {
+                            return Mono.error(preconditionFailed(id));
+                        }
+                        entity.setVersion(current.getVersion());
+                        return save.apply(entity);
+                    })
+                    .switchIfEmpty(Mono.defer(() -> {
+                        if (expected != null || !properties.isUpsert()) {
+                            return Mono.error(notFound(id));
+                        }
+                        entity.setVersion(null);
+                        return save.apply(entity);
+                    }));
+
+            return expected == null
+                    // a write between reading the version and saving, or a concurrent insert
+                    ? saved.retry(RETRIES, e -> e instanceof OptimisticLockingFailureException
+                            || e instanceof DuplicateKeyException)
+                    : saved.onErrorMap(OptimisticLockingFailureException.class, e -> preconditionFailed(id));
+        });
+    }
+
+    /**
+     * Versions named by If-Match, empty for {@code *} and null without the header. The
+     * header uses the strong comparison, so weak tags never match.
+     *
+     * @throws ResponseStatusException 428 when the header is required but missing, 412
+     * when no tag names a version
+     */
+    public static Set<Long> expectedVersions(List<String> ifMatch, UpdateProperties properties) {
+        if (ifMatch == null || ifMatch.isEmpty()) {
+            if (properties.isRequireIfMatch()) {
+                throw new ResponseStatusException(HttpStatus.PRECONDITION_REQUIRED, "If-Match is required");
+            }
+            return null;
+        }
+        Set<Long> versions = new LinkedHashSet<>();
+        for (String tag : ifMatch) {
+            if (ANY.equals(tag)) {
+                return new LinkedHashSet<>();
+            }
+            if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                try {
+                    versions.add(Long.valueOf(tag.substring(1, tag.length() - 1)));
+                } catch (NumberFormatException e) {
+                    // not one of our tags, so it cannot match
+                }
+            }
+        }
+        if (versions.isEmpty()) {
+            throw preconditionFailed(null);
+        }
+        return versions;
+    }
+
+    /**
+     * Patches the document with the given id, at one of the If-Match versions when the
+     * header names any.
+     *
+     * @return the patched document; 404, 412 or 428 as a {@link ResponseStatusException}
+     */
+    public static <T> Mono<T> patch(PatchService patchService, String id, T patch, Class<T> type,
+                                     List<String> ifMatch, UpdateProperties properties) {
+        return Mono.defer(() -> {
+            Set<Long> expected = expectedVersions(ifMatch, properties);
+            return expected == null || expected.isEmpty()
+                    ? patchService.patch(id, patch, type)
+                    : patchService.patch(id, patch, type, expected);
+        })
+                .onErrorMap(OptimisticLockingFailureException.class, e -> preconditionFailed(id))
+                .switchIfEmpty(Mono.error(notFound(id)));
+    }
+
+    private static ResponseStatusException notFound(String id) {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "Not Found id: " + id);
+    }
+
+    private static ResponseStatusException preconditionFailed(String id) {
+        return new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+                id == null ? "If-Match names no version" : "Version of " + id + " does not match If-Match");
+    }
+}
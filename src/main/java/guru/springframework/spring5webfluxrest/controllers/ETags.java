@@ -0,0 +1,68 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.domain.Versioned;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Strong ETags derived from document versions rather than from the serialized body.
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    public static String of(Versioned entity) {
+        return "\"" + entity.getVersion() + "\"";
+    }
+
+    public static String of(List<? extends Versioned> entities) {
+        StringBuilder key = new StringBuilder();
+        for (Versioned entity : entities) {
+            key.append(entity.getId()).append(':').append(entity.getVersion()).append(';');
+        }
+        return "\"" + DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * If-None-Match uses the weak comparison, so a {@code W/} prefix on the client tag is ignored.
+     */
+    public static boolean matches(List<String> ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch) {
+            String tag = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+            if ("*".equals(tag) || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The cached entity if it is at the version just read from Mongo, otherwise the entity
+     * loaded again, so a stale cache entry is never answered after a version check.
+     */
+    public static <T extends Versioned> Mono<T> cachedAt(EntityCache<T> cache, String id, Long version) {
+        return cache.get(id)
+                .flatMap(cached -> Objects.equals(cached.getVersion(), version)
+                        ? Mono.just(cached)
+                        : Mono.defer(() -> {
+                            cache.evict(id);
+                            return cache.get(id);
+                        }));
+    }
+
+    public static <T extends Versioned> ResponseEntity<T> ok(T entity) {
+        return ResponseEntity.ok().eTag(of(entity)).body(entity);
+    }
+
+    public static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+}
@@ -0,0 +1,65 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.services.ExportService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Serves the latest snapshot written by {@link ExportService}. A file resource is written
+ * with zero-copy transfer, and the file time doubles as ETag so unchanged snapshots are
+ * answered with 304.
+ */
+@RestController
+@ConditionalOnProperty(name = "app.api.mode", havingValue = "annotated", matchIfMissing = true)
+@RequestMapping(path = ExportController.BASE_URL)
+public class ExportController {
+    public static final String BASE_URL = "/api/v1/export";
+    public static final MediaType APPLICATION_GZIP = MediaType.valueOf("application/gzip");
+
+    private final ExportService exportService;
+
+    public ExportController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    @GetMapping("{collection}")
+    ResponseEntity<Resource> export(@PathVariable String collection) {
+        return export(exportService, collection);
+    }
+
+    public static ResponseEntity<Resource> export(ExportService exportService, String collection) {
+        if (!ExportService.exists(collection)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown collection: " + collection);
+        }
+        Path file = exportService.current(collection)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "No export of " + collection + " yet"));
+        long lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ResponseEntity.ok()
+                .contentType(APPLICATION_GZIP)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getFileName() + "\"")
+                .eTag("\"" + Long.toHexString(lastModified) + "\"")
+                .lastModified(lastModified)
+                .body(new FileSystemResource(file.toFile()));
+    }
+}
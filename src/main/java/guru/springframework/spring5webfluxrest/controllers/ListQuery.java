@@ -0,0 +1,98 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Turns list query parameters into a Mongo query. Filters only apply to the given fields,
+ * which are expected to be indexed; other parameters are ignored.
+ * <ul>
+ * <li>{@code lastName=Buck} matches exactly, {@code fistName=Jo*} matches the prefix</li>
+ * <li>{@code sort=lastName,-fistName} sorts ascending, or descending with {@code -}</li>
+ * <li>{@code fields=fistName,lastName} returns only those fields and the id</li>
+ * </ul>
+ */
+public final class ListQuery {
+
+    public static final String SORT_PARAM = "sort";
+    public static final String FIELDS_PARAM = "fields";
+
+    private static final String PREFIX_WILDCARD = "*";
+
+    private ListQuery() {
+    }
+
+    /**
+     * Empty when no filter, sort or projection was requested, so callers can keep the plain findAll.
+     */
+    public static Optional<Query> from(Map<String, String> params, List<String> filterFields) {
+        Query query = new Query();
+        boolean constrained = false;
+        for (String field : filterFields) {
+            String value = params.get(field);
+            if (value != null) {
+                query.addCriteria(criteria(field, value));
+                constrained = true;
+            }
+        }
+        String sort = params.get(SORT_PARAM);
+        if (sort != null) {
+            query.with(sort(sort, filterFields));
+            constrained = true;
+        }
+        String fields = params.get(FIELDS_PARAM);
+        if (fields != null) {
+            for (String field : split(fields)) {
+                if (!filterFields.contains(field) && !"version".equals(field) && !"id".equals(field)) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown field: " + field);
+                }
+                query.fields().include(field);
+            }
+            constrained = true;
+        }
+        return constrained ? Optional.of(query) : Optional.empty();
+    }
+
+    /**
+     * Prefix matches become an anchored, case-sensitive regex, which Mongo answers from the index.
+     */
+    static Criteria criteria(String field, String value) {
+        if (value.endsWith(PREFIX_WILDCARD)) {
+            String prefix = value.substring(0, value.length() - PREFIX_WILDCARD.length());
+            return Criteria.where(field).regex("^" + Pattern.quote(prefix));
+        }
+        return Criteria.where(field).is(value);
+    }
+
+    static Sort sort(String sort, List<String> sortFields) {
+        List<Sort.Order> orders = new ArrayList<>();
+        for (String field : split(sort)) {
+            boolean descending = field.startsWith("-");
+            String property = descending ? field.substring(1) : field;
+            if (!sortFields.contains(property) && !"id".equals(property)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cannot sort by: " + property);
+            }
+            orders.add(descending ? Sort.Order.desc(property) : Sort.Order.asc(property));
+        }
+        return Sort.by(orders);
+    }
+
+    private static List<String> split(String value) {
+        List<String> parts = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.trim().isEmpty()) {
+                parts.add(part.trim());
+            }
+        }
+        return parts;
+    }
+}
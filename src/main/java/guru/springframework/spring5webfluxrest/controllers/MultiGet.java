@@ -0,0 +1,58 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.domain.MultiGetResult;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Looks up many ids at once through the entity cache: hits are served from memory and
+ * all misses are loaded with a single {@code $in} query. Ids may be given comma separated,
+ * and repeated ids are answered once.
+ */
+public final class MultiGet {
+
+    public static final String IDS_PARAM = "ids";
+    public static final String PATH = "/_mget";
+    public static final int MAX_IDS = 1000;
+
+    private MultiGet() {
+    }
+
+    public static <T> Mono<MultiGetResult<T>> lookup(EntityCache<T> cache, List<String> requested) {
+        Set<String> ids = new LinkedHashSet<>();
+        if (requested != null) {
+            for (String value : requested) {
+                for (String id : StringUtils.commaDelimitedListToStringArray(value)) {
+                    if (!id.trim().isEmpty()) {
+                        ids.add(id.trim());
+                    }
+                }
+            }
+        }
+        if (ids.size() > MAX_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_IDS + " ids per request");
+        }
+        return cache.getAll(ids)
+                .map(found -> {
+                    List<T> items = new ArrayList<>(found.size());
+                    List<String> missing = new ArrayList<>();
+                    for (String id : ids) {
+                        T item = found.get(id);
+                        if (item == null) {
+                            missing.add(id);
+                        } else {
+                            items.add(item);
+                        }
+                    }
+                    return new MultiGetResult<>(items, missing);
+                });
+    }
+}
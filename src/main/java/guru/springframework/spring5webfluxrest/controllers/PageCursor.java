@@ -0,0 +1,85 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.domain.Versioned;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Keyset pagination over the {@code _id} index. The cursor handed to clients is the
+ * last id of the previous page, base64url encoded so it stays opaque.
+ */
+public final class PageCursor {
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private PageCursor() {
+    }
+
+    public static String encode(String lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(lastId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decode(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+        }
+    }
+
+    public static int pageSize(Integer requested) {
+        if (requested == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (requested < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page size must be positive");
+        }
+        return Math.min(requested, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * One extra element is requested so we know whether a next page exists
+     * without issuing a count.
+     */
+    public static Pageable pageable(int size) {
+        return PageRequest.of(0, size + 1, Sort.by("id"));
+    }
+
+    public static <T extends Versioned> Mono<ResponseEntity<List<T>>> toPage(Flux<T> fetched, int size) {
+        return fetched.collectList()
+                .map(items -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (items.size() > size) {
+                        items = items.subList(0, size);
+                        response.header(NEXT_CURSOR_HEADER, encode(items.get(size - 1).getId()));
+                    }
+                    return response.eTag(ETags.of(items)).body(items);
+                });
+    }
+
+    /**
+     * Compares the ETag of a page fetched as id+version projection with If-None-Match.
+     * Emits a 304 response on a match and completes empty otherwise.
+     */
+    public static <T extends Versioned, R> Mono<ResponseEntity<R>> notModified(Flux<T> versions, int size,
+                                                                               List<String> ifNoneMatch) {
+        return versions.take(size)
+                .collectList()
+                .map(ETags::of)
+                .filter(etag -> ETags.matches(ifNoneMatch, etag))
+                .map(ETags::notModified);
+    }
+}
@@ -0,0 +1,61 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.domain.SearchHit;
+import guru.springframework.spring5webfluxrest.services.SearchService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+/**
+ * {@code mode=text} (the default) ranks by Mongo text score,
+ * {@code mode=prefix} answers typeahead from memory.
+ */
+@RestController
+@ConditionalOnProperty(name = "app.api.mode", havingValue = "annotated", matchIfMissing = true)
+@RequestMapping(path = SearchController.BASE_URL)
+public class SearchController {
+    public static final String BASE_URL = "/api/v1/search";
+    public static final String MODE_TEXT = "text";
+    public static final String MODE_PREFIX = "prefix";
+    public static final int DEFAULT_LIMIT = 10;
+    public static final int MAX_LIMIT = 100;
+
+    private final SearchService searchService;
+
+    public SearchController(SearchService searchService) {
+        this.searchService = searchService;
+    }
+
+    @GetMapping
+    Flux<SearchHit> search(@RequestParam String q,
+                           @RequestParam(defaultValue = MODE_TEXT) String mode,
+                           @RequestParam(required = false) Integer limit) {
+        return search(searchService, q, mode, limit);
+    }
+
+    public static Flux<SearchHit> search(SearchService searchService, String q, String mode, Integer limit) {
+        int max = limit(limit);
+        if (MODE_PREFIX.equals(mode)) {
+            return searchService.prefix(q, max);
+        }
+        if (MODE_TEXT.equals(mode)) {
+            return searchService.text(q, max);
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown search mode: " + mode);
+    }
+
+    static int limit(Integer requested) {
+        if (requested == null) {
+            return DEFAULT_LIMIT;
+        }
+        if (requested < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit must be positive");
+        }
+        return Math.min(requested, MAX_LIMIT);
+    }
+}
@@ -0,0 +1,30 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.domain.Stats;
+import guru.springframework.spring5webfluxrest.services.StatsService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * Collection statistics read from the counters of {@link StatsService}.
+ */
+@RestController
+@ConditionalOnProperty(name = "app.api.mode", havingValue = "annotated", matchIfMissing = true)
+@RequestMapping(path = StatsController.BASE_URL)
+public class StatsController {
+    public static final String BASE_URL = "/api/v1/stats";
+
+    private final StatsService statsService;
+
+    public StatsController(StatsService statsService) {
+        this.statsService = statsService;
+    }
+
+    @GetMapping
+    Mono<Stats> stats() {
+        return Mono.fromSupplier(statsService::snapshot);
+    }
+}
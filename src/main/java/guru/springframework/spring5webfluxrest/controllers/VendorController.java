@@ -1,33 +1,121 @@
 package guru.springframework.spring5webfluxrest.controllers;
 
+import guru.springframework.spring5webfluxrest.config.UpdateProperties;
+import guru.springframework.spring5webfluxrest.config.WebFluxConfig;
+import guru.springframework.spring5webfluxrest.domain.BulkInsertResult;
 import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.MultiGetRequest;
+import guru.springframework.spring5webfluxrest.domain.MultiGetResult;
 import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.metrics.FluxMetrics;
 import guru.springframework.spring5webfluxrest.repository.VendorRepository;
+import guru.springframework.spring5webfluxrest.services.BulkInsertService;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import guru.springframework.spring5webfluxrest.services.PatchService;
 import org.reactivestreams.Publisher;
 import org.springframework.http.HttpRange;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 @RestController
+@ConditionalOnProperty(name = "app.api.mode", havingValue = "annotated", matchIfMissing = true)
 @RequestMapping(path = VendorController.BASE_URL)
 public class VendorController {
     public static final String BASE_URL = "/api/v1/vendors";
+    public static final List<String> FILTER_FIELDS = Arrays.asList("fistName", "lastName");
     private final VendorRepository vendorRepository;
+    private final EntityCache<Vendor> vendorCache;
+    private final BulkInsertService bulkInsertService;
+    private final PatchService patchService;
+    private final UpdateProperties updateProperties;
 
-    public VendorController(VendorRepository vendorRepository) {
+    public VendorController(VendorRepository vendorRepository, EntityCache<Vendor> vendorCache,
+                            BulkInsertService bulkInsertService, PatchService patchService,
+                            UpdateProperties updateProperties) {
         this.vendorRepository = vendorRepository;
+        this.vendorCache = vendorCache;
+        this.bulkInsertService = bulkInsertService;
+        this.patchService = patchService;
+        this.updateProperties = updateProperties;
     }
 
     @GetMapping
-    Flux<Vendor> list() {
-        return vendorRepository.findAll();
+    Flux<Vendor> list(@RequestParam Map<String, String> params) {
+        Flux<Vendor> vendors = ListQuery.from(params, FILTER_FIELDS)
+                .map(vendorRepository::findAll)
+                .orElseGet(vendorRepository::findAll);
+        return FluxMetrics.countElements("vendors.list", vendors);
+    }
+
+    @GetMapping(produces = {MediaType.APPLICATION_STREAM_JSON_VALUE,
+            WebFluxConfig.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE,
+            WebFluxConfig.APPLICATION_STREAM_SMILE_VALUE})
+    Flux<Vendor> stream(@RequestParam Map<String, String> params) {
+        Flux<Vendor> vendors = ListQuery.from(params, FILTER_FIELDS)
+                .map(vendorRepository::findAll)
+                .orElseGet(vendorRepository::findAll);
+        return FluxMetrics.countElements("vendors.stream", vendors.limitRate(WebFluxConfig.STREAM_BATCH_SIZE));
+    }
+
+    @GetMapping(params = "size")
+    Mono<ResponseEntity<List<Vendor>>> page(@RequestParam(required = false) Integer size,
+                                            @RequestParam(required = false) String cursor,
+                                            ServerWebExchange exchange) {
+        int pageSize = PageCursor.pageSize(size);
+        String after = cursor == null ? null : PageCursor.decode(cursor);
+        Mono<ResponseEntity<List<Vendor>>> page = Mono.defer(() -> PageCursor.toPage(after == null
+                ? vendorRepository.findAllBy(PageCursor.pageable(pageSize))
+                : vendorRepository.findByIdGreaterThan(after, PageCursor.pageable(pageSize)), pageSize));
+
+        List<String> ifNoneMatch = exchange.getRequest().getHeaders().getIfNoneMatch();
+        if (ifNoneMatch.isEmpty()) {
+            return page;
+        }
+        Flux<Vendor> versions = after == null
+                ? vendorRepository.findVersionsBy(PageCursor.pageable(pageSize))
+                : vendorRepository.findVersionsByIdGreaterThan(after, PageCursor.pageable(pageSize));
+        return PageCursor.<Vendor, List<Vendor>>notModified(versions, pageSize, ifNoneMatch)
+                .switchIfEmpty(page);
+    }
+
+    /**
+     * A cursor without a size pages at the default size.
+     */
+    @GetMapping(params = {"cursor", "!size"})
+    Mono<ResponseEntity<List<Vendor>>> pageAfter(@RequestParam String cursor, ServerWebExchange exchange) {
+        return page(null, cursor, exchange);
+    }
+
+    @GetMapping(params = MultiGet.IDS_PARAM)
+    Mono<MultiGetResult<Vendor>> getByIds(@RequestParam List<String> ids) {
+        return MultiGet.lookup(vendorCache, ids);
+    }
+
+    @PostMapping(MultiGet.PATH)
+    Mono<MultiGetResult<Vendor>> multiGet(@RequestBody MultiGetRequest request) {
+        return MultiGet.lookup(vendorCache, request.getIds());
     }
 
     @GetMapping("{id}")
-    Mono<Vendor> getById(@PathVariable String id) {
-        return vendorRepository.findById(id);
+    Mono<ResponseEntity<Vendor>> getById(@PathVariable String id, ServerWebExchange exchange) {
+        List<String> ifNoneMatch = exchange.getRequest().getHeaders().getIfNoneMatch();
+        Mono<ResponseEntity<Vendor>> found = ifNoneMatch.isEmpty()
+                ? vendorCache.get(id).map(ETags::ok)
+                : vendorRepository.findVersionById(id)
+                        .flatMap(current -> ETags.matches(ifNoneMatch, ETags.of(current))
+                                ? Mono.just(ETags.<Vendor>notModified(ETags.of(current)))
+                                : ETags.cachedAt(vendorCache, id, current.getVersion()).map(ETags::ok));
+        return found.defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
     @PostMapping
@@ -36,7 +124,14 @@ public class VendorController {
 //        return vendorRepository.saveAll(vendorStream).then();
 //    }
     Flux<Vendor> createVendor(@RequestBody Publisher<Vendor> vendorStream) {
-        return vendorRepository.saveAll(vendorStream);
+        return FluxMetrics.countElements("vendors.create", vendorRepository.saveAll(vendorStream)
+                .doOnNext(saved -> vendorCache.put(saved.getId(), saved)));
+    }
+
+    @PostMapping(path = "_bulk", consumes = {MediaType.APPLICATION_STREAM_JSON_VALUE, WebFluxConfig.APPLICATION_NDJSON_VALUE,
+            WebFluxConfig.APPLICATION_SMILE_VALUE, WebFluxConfig.APPLICATION_STREAM_SMILE_VALUE})
+    Mono<BulkInsertResult> bulkCreate(@RequestBody Flux<Vendor> vendors) {
+        return bulkInsertService.insert(vendors, Vendor.class);
     }
 
 
@@ -47,33 +142,18 @@ public class VendorController {
 //    }
 
     @PutMapping("{id}")
-    @ResponseStatus(HttpStatus.OK)
-    Mono<Vendor> update(@PathVariable String id, @RequestBody Vendor vendor) {
-        vendor.setId(id);
-        return vendorRepository.save(vendor);
+    Mono<ResponseEntity<Vendor>> update(@PathVariable String id, @RequestBody Vendor vendor, ServerWebExchange exchange) {
+        return ConditionalUpdate.replace(id, vendor, exchange.getRequest().getHeaders().getIfMatch(), updateProperties,
+                vendorRepository::findVersionById, vendorRepository::save)
+                .doOnNext(saved -> vendorCache.put(saved.getId(), saved))
+                .map(ETags::ok);
     }
 
     @PatchMapping("{id}")
-    @ResponseStatus(HttpStatus.OK)
-    Mono<Vendor> patch(@PathVariable String id, @RequestBody Vendor vendor) {
-        return vendorRepository.findById(id)
-                .flatMap(vend -> {
-                    boolean changed = false;
-                    if (vendor.getFistName() != null && !vendor.getFistName().equals(vend.getFistName())) {
-                        vend.setFistName(vendor.getFistName());
-                        changed = true;
-                    }
-                    if (vendor.getLastName() != null && !vendor.getLastName().equals(vend.getLastName())) {
-                        vend.setLastName(vendor.getLastName());
-                        changed = true;
-                    }
-
-                    if (changed) {
-                        return vendorRepository.save(vend);
-                    }
-                    return Mono.just(vend);
-
-                }).switchIfEmpty(Mono.error(new RuntimeException("Not Found id: " + id)));
+    Mono<ResponseEntity<Vendor>> patch(@PathVariable String id, @RequestBody Vendor vendor, ServerWebExchange exchange) {
+        return ConditionalUpdate.patch(patchService, id, vendor, Vendor.class,
+                exchange.getRequest().getHeaders().getIfMatch(), updateProperties)
+                .doOnNext(patched -> vendorCache.put(patched.getId(), patched))
+                .map(ETags::ok);
     }
-
 }
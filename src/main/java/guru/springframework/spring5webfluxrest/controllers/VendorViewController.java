@@ -0,0 +1,58 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.domain.VendorView;
+import guru.springframework.spring5webfluxrest.metrics.FluxMetrics;
+import guru.springframework.spring5webfluxrest.repository.VendorViewRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Vendors with their categories embedded, read from the
+ * {@link guru.springframework.spring5webfluxrest.services.VendorViewProjector} read model.
+ */
+@RestController
+@ConditionalOnProperty(name = "app.api.mode", havingValue = "annotated", matchIfMissing = true)
+@RequestMapping(path = VendorViewController.BASE_URL)
+public class VendorViewController {
+    public static final String BASE_URL = "/api/v1/vendor-views";
+    public static final String CATEGORY_PARAM = "categoryId";
+
+    private final VendorViewRepository vendorViewRepository;
+
+    public VendorViewController(VendorViewRepository vendorViewRepository) {
+        this.vendorViewRepository = vendorViewRepository;
+    }
+
+    @GetMapping(params = CATEGORY_PARAM)
+    Flux<VendorView> byCategory(@RequestParam(CATEGORY_PARAM) String categoryId) {
+        return FluxMetrics.countElements("vendorViews.byCategory", vendorViewRepository.findByCategoriesId(categoryId));
+    }
+
+    @GetMapping("{id}")
+    Mono<ResponseEntity<VendorView>> getById(@PathVariable String id, ServerWebExchange exchange) {
+        return getById(vendorViewRepository, id, exchange.getRequest().getHeaders().getIfNoneMatch());
+    }
+
+    /**
+     * The view is one small document, so a conditional request is answered from it
+     * rather than from a version-only query first.
+     */
+    public static Mono<ResponseEntity<VendorView>> getById(VendorViewRepository vendorViewRepository, String id,
+                                                           List<String> ifNoneMatch) {
+        return vendorViewRepository.findById(id)
+                .map(view -> ETags.matches(ifNoneMatch, ETags.of(view))
+                        ? ETags.<VendorView>notModified(ETags.of(view))
+                        : ETags.ok(view))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,21 @@
+package guru.springframework.spring5webfluxrest.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkInsertResult {
+
+    private long inserted;
+    private long failed;
+    private long durationMillis;
+
+    public BulkInsertResult plus(BulkInsertResult other) {
+        return new BulkInsertResult(inserted + other.inserted, failed + other.failed, durationMillis);
+    }
+}
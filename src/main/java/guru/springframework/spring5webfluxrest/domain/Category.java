@@ -2,6 +2,9 @@ package guru.springframework.spring5webfluxrest.domain;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Data
@@ -9,10 +12,15 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-public class Category {
+public class Category implements Versioned {
 
     @Id
     private String id;
 
+    @Indexed
+    @TextIndexed
     private String description;
+
+    @Version
+    private Long version;
 }
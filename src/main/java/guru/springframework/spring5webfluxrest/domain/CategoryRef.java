@@ -0,0 +1,21 @@
+package guru.springframework.spring5webfluxrest.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A category as embedded in a {@link VendorView}. The version is the category's, so a
+ * stale description never overwrites a newer one.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategoryRef {
+
+    private String id;
+    private String description;
+    private Long version;
+}
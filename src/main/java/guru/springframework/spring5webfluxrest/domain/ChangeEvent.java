@@ -0,0 +1,59 @@
+package guru.springframework.spring5webfluxrest.domain;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeEvent {
+
+    private OperationType operation;
+    private String id;
+
+    /**
+     * Current version of the document, absent for deletes.
+     */
+    private Document document;
+
+    private BsonDocument resumeToken;
+
+    /**
+     * Tells listeners that changes may have been missed, so whatever they keep must be
+     * rebuilt from the collection.
+     */
+    public static ChangeEvent invalidated() {
+        return ChangeEvent.builder().operation(OperationType.INVALIDATE).build();
+    }
+
+    public static ChangeEvent from(ChangeStreamDocument<Document> change) {
+        return ChangeEvent.builder()
+                .operation(change.getOperationType())
+                .id(idOf(change.getDocumentKey()))
+                .document(change.getFullDocument())
+                .resumeToken(change.getResumeToken())
+                .build();
+    }
+
+    private static String idOf(BsonDocument documentKey) {
+        if (documentKey == null || !documentKey.containsKey("_id")) {
+            return null;
+        }
+        BsonValue id = documentKey.get("_id");
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        if (id.isString()) {
+            return id.asString().getValue();
+        }
+        return id.toString();
+    }
+}
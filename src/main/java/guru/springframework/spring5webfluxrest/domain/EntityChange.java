@@ -0,0 +1,30 @@
+package guru.springframework.spring5webfluxrest.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.BsonDocument;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EntityChange<T> {
+
+    /**
+     * Change stream operation: insert, update, replace or delete, or invalidate when
+     * changes were missed and the client should list again.
+     */
+    private String operation;
+    private String id;
+
+    /**
+     * Current state of the entity, absent for deletes.
+     */
+    private T entity;
+
+    @JsonIgnore
+    private BsonDocument resumeToken;
+}
@@ -0,0 +1,25 @@
+package guru.springframework.spring5webfluxrest.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MultiGetResult<T> {
+
+    /**
+     * Found entities, in the order their ids were requested.
+     */
+    private List<T> items;
+
+    /**
+     * Requested ids with no entity, in request order.
+     */
+    private List<String> missing;
+}
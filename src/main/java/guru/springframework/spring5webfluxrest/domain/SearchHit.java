@@ -0,0 +1,55 @@
+package guru.springframework.spring5webfluxrest.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.StringJoiner;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchHit {
+
+    public static final String VENDOR = "vendor";
+    public static final String CATEGORY = "category";
+
+    private String type;
+    private String id;
+    private String text;
+
+    /**
+     * Text search relevance, absent for typeahead hits.
+     */
+    private Double score;
+
+    public static SearchHit of(Vendor vendor) {
+        StringJoiner text = new StringJoiner(" ");
+        if (vendor.getFistName() != null) {
+            text.add(vendor.getFistName());
+        }
+        if (vendor.getLastName() != null) {
+            text.add(vendor.getLastName());
+        }
+        return SearchHit.builder().type(VENDOR).id(vendor.getId()).text(text.toString()).build();
+    }
+
+    public static SearchHit of(Category category) {
+        return SearchHit.builder().type(CATEGORY).id(category.getId()).text(category.getDescription()).build();
+    }
+
+    /**
+     * @return the hit for a vendor or category, or null for any other object
+     */
+    public static SearchHit of(Object entity) {
+        if (entity instanceof Vendor) {
+            return of((Vendor) entity);
+        }
+        if (entity instanceof Category) {
+            return of((Category) entity);
+        }
+        return null;
+    }
+}
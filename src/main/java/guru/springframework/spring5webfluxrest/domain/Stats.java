@@ -0,0 +1,35 @@
+package guru.springframework.spring5webfluxrest.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Stats {
+
+    private long vendors;
+    private long categories;
+
+    /**
+     * Vendor counts by the upper-cased first letter of the last name, {@code #} for
+     * anything else.
+     */
+    private Map<String, Long> vendorsByInitial;
+
+    /**
+     * Vendor counts by creation month (UTC, {@code yyyy-MM}), taken from the ObjectId;
+     * {@code unknown} for ids that are not ObjectIds.
+     */
+    private Map<String, Long> vendorsByCreated;
+
+    /**
+     * Vendor counts by category id.
+     */
+    private Map<String, Long> vendorsByCategory;
+}
@@ -2,18 +2,39 @@ package guru.springframework.spring5webfluxrest.domain;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.List;
+
 @Data
 @Document
+@CompoundIndex(name = "lastName_fistName", def = "{ 'lastName': 1, 'fistName': 1 }")
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-public class Vendor {
+public class Vendor implements Versioned {
 
     @Id
     private String id;
 
+    @Indexed
+    @TextIndexed
     private String fistName;
+
+    @TextIndexed
     private String lastName;
+
+    /**
+     * Ids of the categories the vendor belongs to, embedded with their descriptions in
+     * its {@link VendorView}.
+     */
+    @Indexed
+    private List<String> categoryIds;
+
+    @Version
+    private Long version;
 }
@@ -0,0 +1,39 @@
+package guru.springframework.spring5webfluxrest.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.List;
+
+/**
+ * Read model of a vendor with its categories embedded, maintained by
+ * {@link guru.springframework.spring5webfluxrest.services.VendorViewProjector}. The
+ * version is the vendor's, not a lock on the view, so it doubles as the ETag.
+ */
+@Data
+@Document
+@CompoundIndex(name = "categories_id", def = "{ 'categories._id': 1 }")
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VendorView implements Versioned {
+
+    @Id
+    private String id;
+
+    private String fistName;
+
+    private String lastName;
+
+    /**
+     * In the order of the vendor's category ids; ids without a category are left out.
+     */
+    private List<CategoryRef> categories;
+
+    private Long version;
+}
@@ -0,0 +1,15 @@
+package guru.springframework.spring5webfluxrest.domain;
+
+/**
+ * Documents carrying an optimistic locking version, used to derive ETags.
+ */
+public interface Versioned {
+
+    String getId();
+
+    void setId(String id);
+
+    Long getVersion();
+
+    void setVersion(Long version);
+}
@@ -0,0 +1,145 @@
+package guru.springframework.spring5webfluxrest.handlers;
+
+import guru.springframework.spring5webfluxrest.config.UpdateProperties;
+import guru.springframework.spring5webfluxrest.config.WebFluxConfig;
+import guru.springframework.spring5webfluxrest.controllers.ConditionalUpdate;
+import guru.springframework.spring5webfluxrest.controllers.CategoryController;
+import guru.springframework.spring5webfluxrest.controllers.ETags;
+import guru.springframework.spring5webfluxrest.controllers.ListQuery;
+import guru.springframework.spring5webfluxrest.controllers.MultiGet;
+import guru.springframework.spring5webfluxrest.controllers.PageCursor;
+import guru.springframework.spring5webfluxrest.domain.BulkInsertResult;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.MultiGetRequest;
+import guru.springframework.spring5webfluxrest.domain.MultiGetResult;
+import guru.springframework.spring5webfluxrest.metrics.FluxMetrics;
+import guru.springframework.spring5webfluxrest.repository.CategoryRepository;
+import guru.springframework.spring5webfluxrest.services.BulkInsertService;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import guru.springframework.spring5webfluxrest.services.PatchService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Functional counterpart of {@link guru.springframework.spring5webfluxrest.controllers.CategoryController}.
+ */
+public class CategoryHandler {
+
+    private final CategoryRepository categoryRepository;
+    private final EntityCache<Category> categoryCache;
+    private final BulkInsertService bulkInsertService;
+    private final PatchService patchService;
+    private final UpdateProperties updateProperties;
+
+    public CategoryHandler(CategoryRepository categoryRepository, EntityCache<Category> categoryCache,
+                         BulkInsertService bulkInsertService, PatchService patchService,
+                         UpdateProperties updateProperties) {
+        this.categoryRepository = categoryRepository;
+        this.categoryCache = categoryCache;
+        this.bulkInsertService = bulkInsertService;
+        this.patchService = patchService;
+        this.updateProperties = updateProperties;
+    }
+
+    public Mono<ServerResponse> list(ServerRequest request) {
+        return Mono.defer(() -> {
+            Flux<Category> categories = ListQuery.from(request.queryParams().toSingleValueMap(), CategoryController.FILTER_FIELDS)
+                    .map(categoryRepository::findAll)
+                    .orElseGet(categoryRepository::findAll);
+            return ServerResponse.ok().contentType(ServerResponses.bodyType(request))
+                    .body(FluxMetrics.countElements("categories.list", categories), Category.class);
+        });
+    }
+
+    public Mono<ServerResponse> stream(ServerRequest request) {
+        return Mono.defer(() -> {
+            Flux<Category> categories = ListQuery.from(request.queryParams().toSingleValueMap(), CategoryController.FILTER_FIELDS)
+                    .map(categoryRepository::findAll)
+                    .orElseGet(categoryRepository::findAll);
+            return ServerResponse.ok().contentType(ServerResponses.streamType(request))
+                    .body(FluxMetrics.countElements("categories.stream",
+                            categories.limitRate(WebFluxConfig.STREAM_BATCH_SIZE)), Category.class);
+        });
+    }
+
+    public Mono<ServerResponse> page(ServerRequest request) {
+        return Mono.defer(() -> {
+            int pageSize = PageCursor.pageSize(request.queryParam("size").map(Integer::valueOf).orElse(null));
+            String after = request.queryParam("cursor").map(PageCursor::decode).orElse(null);
+            Mono<ResponseEntity<List<Category>>> page = Mono.defer(() -> PageCursor.toPage(after == null
+                    ? categoryRepository.findAllBy(PageCursor.pageable(pageSize))
+                    : categoryRepository.findByIdGreaterThan(after, PageCursor.pageable(pageSize)), pageSize));
+
+            List<String> ifNoneMatch = request.headers().asHttpHeaders().getIfNoneMatch();
+            if (ifNoneMatch.isEmpty()) {
+                return page;
+            }
+            Flux<Category> versions = after == null
+                    ? categoryRepository.findVersionsBy(PageCursor.pageable(pageSize))
+                    : categoryRepository.findVersionsByIdGreaterThan(after, PageCursor.pageable(pageSize));
+            return PageCursor.<Category, List<Category>>notModified(versions, pageSize, ifNoneMatch)
+                    .switchIfEmpty(page);
+        }).flatMap(entity -> ServerResponses.from(entity, ServerResponses.bodyType(request)));
+    }
+
+    public Mono<ServerResponse> getByIds(ServerRequest request) {
+        return ServerResponse.ok().contentType(ServerResponses.bodyType(request))
+                .body(Mono.defer(() -> MultiGet.lookup(categoryCache, request.queryParams().get(MultiGet.IDS_PARAM))),
+                        MultiGetResult.class);
+    }
+
+    public Mono<ServerResponse> multiGet(ServerRequest request) {
+        return request.bodyToMono(MultiGetRequest.class)
+                .flatMap(body -> MultiGet.lookup(categoryCache, body.getIds()))
+                .flatMap(result -> ServerResponse.ok().contentType(ServerResponses.bodyType(request)).syncBody(result));
+    }
+
+    public Mono<ServerResponse> getById(ServerRequest request) {
+        String id = request.pathVariable("id");
+        List<String> ifNoneMatch = request.headers().asHttpHeaders().getIfNoneMatch();
+        Mono<ResponseEntity<Category>> found = ifNoneMatch.isEmpty()
+                ? categoryCache.get(id).map(ETags::ok)
+                : categoryRepository.findVersionById(id)
+                        .flatMap(current -> ETags.matches(ifNoneMatch, ETags.of(current))
+                                ? Mono.just(ETags.<Category>notModified(ETags.of(current)))
+                                : ETags.cachedAt(categoryCache, id, current.getVersion()).map(ETags::ok));
+        return found.flatMap(entity -> ServerResponses.from(entity, ServerResponses.bodyType(request)))
+                .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    public Mono<ServerResponse> create(ServerRequest request) {
+        Flux<Category> saved = categoryRepository.saveAll(request.bodyToFlux(Category.class))
+                .doOnNext(category -> categoryCache.put(category.getId(), category));
+        return ServerResponse.status(HttpStatus.CREATED).contentType(ServerResponses.bodyType(request))
+                .body(FluxMetrics.countElements("categories.create", saved), Category.class);
+    }
+
+    public Mono<ServerResponse> bulkCreate(ServerRequest request) {
+        return ServerResponse.ok().contentType(ServerResponses.bodyType(request))
+                .body(bulkInsertService.insert(request.bodyToFlux(Category.class), Category.class), BulkInsertResult.class);
+    }
+
+    public Mono<ServerResponse> update(ServerRequest request) {
+        String id = request.pathVariable("id");
+        return request.bodyToMono(Category.class)
+                .flatMap(category -> ConditionalUpdate.replace(id, category, request.headers().asHttpHeaders().getIfMatch(),
+                        updateProperties, categoryRepository::findVersionById, categoryRepository::save))
+                .doOnNext(saved -> categoryCache.put(saved.getId(), saved))
+                .flatMap(saved -> ServerResponses.from(ETags.ok(saved), ServerResponses.bodyType(request)));
+    }
+
+    public Mono<ServerResponse> patch(ServerRequest request) {
+        String id = request.pathVariable("id");
+        return request.bodyToMono(Category.class)
+                .flatMap(category -> ConditionalUpdate.patch(patchService, id, category, Category.class,
+                        request.headers().asHttpHeaders().getIfMatch(), updateProperties))
+                .doOnNext(patched -> categoryCache.put(patched.getId(), patched))
+                .flatMap(patched -> ServerResponses.from(ETags.ok(patched), ServerResponses.bodyType(request)));
+    }
+}
@@ -0,0 +1,37 @@
+package guru.springframework.spring5webfluxrest.handlers;
+
+import guru.springframework.spring5webfluxrest.controllers.ChangeController;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.services.ChangeStreamService;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Functional counterpart of {@link ChangeController}.
+ */
+public class ChangeHandler {
+
+    private final ChangeStreamService changeStreamService;
+
+    public ChangeHandler(ChangeStreamService changeStreamService) {
+        this.changeStreamService = changeStreamService;
+    }
+
+    public Mono<ServerResponse> vendors(ServerRequest request) {
+        return changes(request, Vendor.class);
+    }
+
+    public Mono<ServerResponse> categories(ServerRequest request) {
+        return changes(request, Category.class);
+    }
+
+    private <T> Mono<ServerResponse> changes(ServerRequest request, Class<T> type) {
+        return Mono.defer(() -> ServerResponse.ok().contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(BodyInserters.fromServerSentEvents(ChangeController.changes(changeStreamService, type,
+                        request.headers().asHttpHeaders().getFirst(ChangeController.LAST_EVENT_ID)))));
+    }
+}
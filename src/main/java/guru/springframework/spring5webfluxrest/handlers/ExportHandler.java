@@ -0,0 +1,30 @@
+package guru.springframework.spring5webfluxrest.handlers;
+
+import guru.springframework.spring5webfluxrest.controllers.ETags;
+import guru.springframework.spring5webfluxrest.controllers.ExportController;
+import guru.springframework.spring5webfluxrest.services.ExportService;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Functional counterpart of {@link ExportController}. Unlike the annotated controller the
+ * functional response does not evaluate conditional headers itself, so If-None-Match is
+ * checked here.
+ */
+public class ExportHandler {
+
+    private final ExportService exportService;
+
+    public ExportHandler(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    public Mono<ServerResponse> export(ServerRequest request) {
+        return Mono.fromCallable(() -> ExportController.export(exportService, request.pathVariable("collection")))
+                .map(entity -> ETags.matches(request.headers().asHttpHeaders().getIfNoneMatch(), entity.getHeaders().getETag())
+                        ? ETags.notModified(entity.getHeaders().getETag())
+                        : entity)
+                .flatMap(entity -> ServerResponses.from(entity, ExportController.APPLICATION_GZIP));
+    }
+}
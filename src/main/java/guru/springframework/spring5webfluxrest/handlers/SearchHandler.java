@@ -0,0 +1,33 @@
+package guru.springframework.spring5webfluxrest.handlers;
+
+import guru.springframework.spring5webfluxrest.controllers.SearchController;
+import guru.springframework.spring5webfluxrest.domain.SearchHit;
+import guru.springframework.spring5webfluxrest.services.SearchService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Functional counterpart of {@link SearchController}.
+ */
+public class SearchHandler {
+
+    private final SearchService searchService;
+
+    public SearchHandler(SearchService searchService) {
+        this.searchService = searchService;
+    }
+
+    public Mono<ServerResponse> search(ServerRequest request) {
+        return Mono.defer(() -> {
+            String q = request.queryParam("q")
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing parameter: q"));
+            return ServerResponse.ok().contentType(ServerResponses.bodyType(request))
+                    .body(SearchController.search(searchService, q,
+                            request.queryParam("mode").orElse(SearchController.MODE_TEXT),
+                            request.queryParam("limit").map(Integer::valueOf).orElse(null)), SearchHit.class);
+        });
+    }
+}
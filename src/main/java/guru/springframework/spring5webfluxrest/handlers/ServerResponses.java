@@ -0,0 +1,70 @@
+package guru.springframework.spring5webfluxrest.handlers;
+
+import guru.springframework.spring5webfluxrest.config.WebFluxConfig;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.server.RequestPredicate;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Glue between the functional handlers and the helpers shared with the annotated controllers.
+ */
+public final class ServerResponses {
+
+    static final List<MediaType> STREAM_TYPES = Arrays.asList(MediaType.APPLICATION_STREAM_JSON,
+            WebFluxConfig.APPLICATION_NDJSON, MediaType.TEXT_EVENT_STREAM, WebFluxConfig.APPLICATION_STREAM_SMILE);
+
+    static final List<MediaType> BODY_TYPES = Arrays.asList(MediaType.APPLICATION_JSON,
+            WebFluxConfig.APPLICATION_CBOR, WebFluxConfig.APPLICATION_SMILE);
+
+    private ServerResponses() {
+    }
+
+    /**
+     * Matches only when a streaming type is asked for explicitly, so {@code *}{@code /*}
+     * keeps getting the JSON array like the annotated endpoints.
+     */
+    public static RequestPredicate acceptsStream() {
+        return request -> streamType(request) != null;
+    }
+
+    static MediaType streamType(ServerRequest request) {
+        return firstAccepted(request, STREAM_TYPES);
+    }
+
+    /**
+     * The body format picked from Accept, JSON unless CBOR or Smile is asked for.
+     */
+    static MediaType bodyType(ServerRequest request) {
+        MediaType accepted = firstAccepted(request, BODY_TYPES);
+        return accepted == null ? MediaType.APPLICATION_JSON : accepted;
+    }
+
+    static Mono<ServerResponse> from(ResponseEntity<?> entity, MediaType contentType) {
+        ServerResponse.BodyBuilder response = ServerResponse.status(entity.getStatusCode())
+                .headers(headers -> headers.putAll(entity.getHeaders()));
+        return entity.getBody() == null ? response.build() : response.contentType(contentType).syncBody(entity.getBody());
+    }
+
+    private static MediaType firstAccepted(ServerRequest request, List<MediaType> candidates) {
+        List<MediaType> accept = new ArrayList<>(request.headers().accept());
+        MediaType.sortBySpecificityAndQuality(accept);
+        for (MediaType accepted : accept) {
+            if (accepted.isWildcardType() || accepted.isWildcardSubtype()) {
+                continue;
+            }
+            for (MediaType candidate : candidates) {
+                if (candidate.isCompatibleWith(accepted)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,25 @@
+package guru.springframework.spring5webfluxrest.handlers;
+
+import guru.springframework.spring5webfluxrest.controllers.StatsController;
+import guru.springframework.spring5webfluxrest.domain.Stats;
+import guru.springframework.spring5webfluxrest.services.StatsService;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Functional counterpart of {@link StatsController}.
+ */
+public class StatsHandler {
+
+    private final StatsService statsService;
+
+    public StatsHandler(StatsService statsService) {
+        this.statsService = statsService;
+    }
+
+    public Mono<ServerResponse> stats(ServerRequest request) {
+        return ServerResponse.ok().contentType(ServerResponses.bodyType(request))
+                .body(Mono.fromSupplier(statsService::snapshot), Stats.class);
+    }
+}
@@ -0,0 +1,145 @@
+package guru.springframework.spring5webfluxrest.handlers;
+
+import guru.springframework.spring5webfluxrest.config.UpdateProperties;
+import guru.springframework.spring5webfluxrest.config.WebFluxConfig;
+import guru.springframework.spring5webfluxrest.controllers.ConditionalUpdate;
+import guru.springframework.spring5webfluxrest.controllers.VendorController;
+import guru.springframework.spring5webfluxrest.controllers.ETags;
+import guru.springframework.spring5webfluxrest.controllers.ListQuery;
+import guru.springframework.spring5webfluxrest.controllers.MultiGet;
+import guru.springframework.spring5webfluxrest.controllers.PageCursor;
+import guru.springframework.spring5webfluxrest.domain.BulkInsertResult;
+import guru.springframework.spring5webfluxrest.domain.MultiGetRequest;
+import guru.springframework.spring5webfluxrest.domain.MultiGetResult;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.metrics.FluxMetrics;
+import guru.springframework.spring5webfluxrest.repository.VendorRepository;
+import guru.springframework.spring5webfluxrest.services.BulkInsertService;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import guru.springframework.spring5webfluxrest.services.PatchService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Functional counterpart of {@link guru.springframework.spring5webfluxrest.controllers.VendorController}.
+ */
+public class VendorHandler {
+
+    private final VendorRepository vendorRepository;
+    private final EntityCache<Vendor> vendorCache;
+    private final BulkInsertService bulkInsertService;
+    private final PatchService patchService;
+    private final UpdateProperties updateProperties;
+
+    public VendorHandler(VendorRepository vendorRepository, EntityCache<Vendor> vendorCache,
+                         BulkInsertService bulkInsertService, PatchService patchService,
+                         UpdateProperties updateProperties) {
+        this.vendorRepository = vendorRepository;
+        this.vendorCache = vendorCache;
+        this.bulkInsertService = bulkInsertService;
+        this.patchService = patchService;
+        this.updateProperties = updateProperties;
+    }
+
+    public Mono<ServerResponse> list(ServerRequest request) {
+        return Mono.defer(() -> {
+            Flux<Vendor> vendors = ListQuery.from(request.queryParams().toSingleValueMap(), VendorController.FILTER_FIELDS)
+                    .map(vendorRepository::findAll)
+                    .orElseGet(vendorRepository::findAll);
+            return ServerResponse.ok().contentType(ServerResponses.bodyType(request))
+                    .body(FluxMetrics.countElements("vendors.list", vendors), Vendor.class);
+        });
+    }
+
+    public Mono<ServerResponse> stream(ServerRequest request) {
+        return Mono.defer(() -> {
+            Flux<Vendor> vendors = ListQuery.from(request.queryParams().toSingleValueMap(), VendorController.FILTER_FIELDS)
+                    .map(vendorRepository::findAll)
+                    .orElseGet(vendorRepository::findAll);
+            return ServerResponse.ok().contentType(ServerResponses.streamType(request))
+                    .body(FluxMetrics.countElements("vendors.stream",
+                            vendors.limitRate(WebFluxConfig.STREAM_BATCH_SIZE)), Vendor.class);
+        });
+    }
+
+    public Mono<ServerResponse> page(ServerRequest request) {
+        return Mono.defer(() -> {
+            int pageSize = PageCursor.pageSize(request.queryParam("size").map(Integer::valueOf).orElse(null));
+            String after = request.queryParam("cursor").map(PageCursor::decode).orElse(null);
+            Mono<ResponseEntity<List<Vendor>>> page = Mono.defer(() -> PageCursor.toPage(after == null
+                    ? vendorRepository.findAllBy(PageCursor.pageable(pageSize))
+                    : vendorRepository.findByIdGreaterThan(after, PageCursor.pageable(pageSize)), pageSize));
+
+            List<String> ifNoneMatch = request.headers().asHttpHeaders().getIfNoneMatch();
+            if (ifNoneMatch.isEmpty()) {
+                return page;
+            }
+            Flux<Vendor> versions = after == null
+                    ? vendorRepository.findVersionsBy(PageCursor.pageable(pageSize))
+                    : vendorRepository.findVersionsByIdGreaterThan(after, PageCursor.pageable(pageSize));
+            return PageCursor.<Vendor, List<Vendor>>notModified(versions, pageSize, ifNoneMatch)
+                    .switchIfEmpty(page);
+        }).flatMap(entity -> ServerResponses.from(entity, ServerResponses.bodyType(request)));
+    }
+
+    public Mono<ServerResponse> getByIds(ServerRequest request) {
+        return ServerResponse.ok().contentType(ServerResponses.bodyType(request))
+                .body(Mono.defer(() -> MultiGet.lookup(vendorCache, request.queryParams().get(MultiGet.IDS_PARAM))),
+                        MultiGetResult.class);
+    }
+
+    public Mono<ServerResponse> multiGet(ServerRequest request) {
+        return request.bodyToMono(MultiGetRequest.class)
+                .flatMap(body -> MultiGet.lookup(vendorCache, body.getIds()))
+                .flatMap(result -> ServerResponse.ok().contentType(ServerResponses.bodyType(request)).syncBody(result));
+    }
+
+    public Mono<ServerResponse> getById(ServerRequest request) {
+        String id = request.pathVariable("id");
+        List<String> ifNoneMatch = request.headers().asHttpHeaders().getIfNoneMatch();
+        Mono<ResponseEntity<Vendor>> found = ifNoneMatch.isEmpty()
+                ? vendorCache.get(id).map(ETags::ok)
+                : vendorRepository.findVersionById(id)
+                        .flatMap(current -> ETags.matches(ifNoneMatch, ETags.of(current))
+                                ? Mono.just(ETags.<Vendor>notModified(ETags.of(current)))
+                                : ETags.cachedAt(vendorCache, id, current.getVersion()).map(ETags::ok));
+        return found.flatMap(entity -> ServerResponses.from(entity, ServerResponses.bodyType(request)))
+                .switchIfEmpty(ServerResponse.notFound().build());
+    }
+
+    public Mono<ServerResponse> create(ServerRequest request) {
+        Flux<Vendor> saved = vendorRepository.saveAll(request.bodyToFlux(Vendor.class))
+                .doOnNext(vendor -> vendorCache.put(vendor.getId(), vendor));
+        return ServerResponse.status(HttpStatus.CREATED).contentType(ServerResponses.bodyType(request))
+                .body(FluxMetrics.countElements("vendors.create", saved), Vendor.class);
+    }
+
+    public Mono<ServerResponse> bulkCreate(ServerRequest request) {
+        return ServerResponse.ok().contentType(ServerResponses.bodyType(request))
+                .body(bulkInsertService.insert(request.bodyToFlux(Vendor.class), Vendor.class), BulkInsertResult.class);
+    }
+
+    public Mono<ServerResponse> update(ServerRequest request) {
+        String id = request.pathVariable("id");
+        return request.bodyToMono(Vendor.class)
+                .flatMap(vendor -> ConditionalUpdate.replace(id, vendor, request.headers().asHttpHeaders().getIfMatch(),
+                        updateProperties, vendorRepository::findVersionById, vendorRepository::save))
+                .doOnNext(saved -> vendorCache.put(saved.getId(), saved))
+                .flatMap(saved -> ServerResponses.from(ETags.ok(saved), ServerResponses.bodyType(request)));
+    }
+
+    public Mono<ServerResponse> patch(ServerRequest request) {
+        String id = request.pathVariable("id");
+        return request.bodyToMono(Vendor.class)
+                .flatMap(vendor -> ConditionalUpdate.patch(patchService, id, vendor, Vendor.class,
+                        request.headers().asHttpHeaders().getIfMatch(), updateProperties))
+                .doOnNext(patched -> vendorCache.put(patched.getId(), patched))
+                .flatMap(patched -> ServerResponses.from(ETags.ok(patched), ServerResponses.bodyType(request)));
+    }
+}
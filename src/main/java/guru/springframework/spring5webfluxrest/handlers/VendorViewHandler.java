@@ -0,0 +1,34 @@
+package guru.springframework.spring5webfluxrest.handlers;
+
+import guru.springframework.spring5webfluxrest.controllers.VendorViewController;
+import guru.springframework.spring5webfluxrest.domain.VendorView;
+import guru.springframework.spring5webfluxrest.metrics.FluxMetrics;
+import guru.springframework.spring5webfluxrest.repository.VendorViewRepository;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Functional counterpart of {@link VendorViewController}.
+ */
+public class VendorViewHandler {
+
+    private final VendorViewRepository vendorViewRepository;
+
+    public VendorViewHandler(VendorViewRepository vendorViewRepository) {
+        this.vendorViewRepository = vendorViewRepository;
+    }
+
+    public Mono<ServerResponse> byCategory(ServerRequest request) {
+        String categoryId = request.queryParam(VendorViewController.CATEGORY_PARAM).orElse("");
+        return ServerResponse.ok().contentType(ServerResponses.bodyType(request))
+                .body(FluxMetrics.countElements("vendorViews.byCategory",
+                        vendorViewRepository.findByCategoriesId(categoryId)), VendorView.class);
+    }
+
+    public Mono<ServerResponse> getById(ServerRequest request) {
+        return VendorViewController.getById(vendorViewRepository, request.pathVariable("id"),
+                request.headers().asHttpHeaders().getIfNoneMatch())
+                .flatMap(entity -> ServerResponses.from(entity, ServerResponses.bodyType(request)));
+    }
+}
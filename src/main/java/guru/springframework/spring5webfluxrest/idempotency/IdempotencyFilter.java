@@ -0,0 +1,310 @@
+package guru.springframework.spring5webfluxrest.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import guru.springframework.spring5webfluxrest.config.IdempotencyProperties;
+import guru.springframework.spring5webfluxrest.config.RateLimitProperties;
+import guru.springframework.spring5webfluxrest.controllers.CategoryController;
+import guru.springframework.spring5webfluxrest.controllers.VendorController;
+import guru.springframework.spring5webfluxrest.ratelimit.RateLimitFilter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs a vendor or category create, replace or patch carrying an idempotency key only once: the response
+ * of the first execution is kept for the key and replayed to every retry, and retries
+ * arriving while it is still running wait for it instead of writing again. A request
+ * reusing a key with a different body is answered with 422. The body is read up front
+ * to compare it, so it is capped and larger ones are answered with 413; bulk inserts and
+ * multi-gets stream their bodies and are not covered. Responses
+ * live in a bounded Caffeine cache and, with a {@link MongoIdempotencyStore}, also in
+ * Mongo for retries that reach another instance.
+ * <p>
+ * Failed executions, server errors and responses too large to keep are forgotten, so
+ * their retries run again.
+ */
+@Slf4j
+public class IdempotencyFilter implements WebFilter, Ordered {
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    public static final String REPLAYED = "api.requests.replayed";
+
+    private static final List<String> PATHS = Arrays.asList(VendorController.BASE_URL, CategoryController.BASE_URL);
+
+    private static final DataBufferFactory BUFFER_FACTORY = new DefaultDataBufferFactory();
+
+    private final IdempotencyProperties properties;
+    private final RateLimitProperties rateLimitProperties;
+    private final MongoIdempotencyStore store;
+    private final Cache<String, Execution> responses;
+
+    public IdempotencyFilter(IdempotencyProperties properties, RateLimitProperties rateLimitProperties,
+                             MongoIdempotencyStore store) {
+        this.properties = properties;
+        this.rateLimitProperties = rateLimitProperties;
+        this.store = store;
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .build();
+    }
+
+    /**
+     * After rate limiting, so retries still draw from the client's write bucket.
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 20;
+    }
+
+    /**
+     * Keys are scoped to the client as identified by {@link RateLimitFilter#clientKey}, so
+     * two clients choosing the same key never see each other's responses.
+     */
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String idempotencyKey = request.getHeaders().getFirst(properties.getHeader());
+        String path = request.getPath().pathWithinApplication().value();
+        if (idempotencyKey == null || !isWrite(request.getMethod(), path)) {
+            return chain.filter(exchange);
+        }
+        if (request.getHeaders().getContentLength() > properties.getMaxRequestSize()) {
+            return Mono.error(tooLarge());
+        }
+        String key = request.getMethodValue() + " " + path + " "
+                + RateLimitFilter.clientKey(request, rateLimitProperties) + " " + idempotencyKey;
+
+        return read(request.getBody(), properties.getMaxRequestSize())
+                .flatMap(body -> filter(exchange.mutate().request(new BufferedRequest(request, body)).build(),
+                        chain, key, hash(body)));
+    }
+
+    /**
+     * {@code POST} to a collection, {@code PUT} or {@code PATCH} to one of its documents.
+     */
+    static boolean isWrite(HttpMethod method, String path) {
+        for (String base : PATHS) {
+            if (method == HttpMethod.POST && path.equals(base)) {
+                return true;
+            }
+            if ((method == HttpMethod.PUT || method == HttpMethod.PATCH) && path.startsWith(base + "/")
+                    && path.indexOf('/', base.length() + 1) < 0 && path.length() > base.length() + 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain, String key, String requestHash) {
+        Execution pending = new Execution(requestHash);
+        Execution first = responses.asMap().putIfAbsent(key, pending);
+        if (first != null) {
+            if (!first.requestHash.equals(requestHash)) {
+                return Mono.error(reusedKey());
+            }
+            // completes empty when the first execution failed, and then this one takes over
+            return Mono.fromFuture(first.response)
+                    .flatMap(stored -> replay(exchange, stored).then(Mono.just(true)))
+                    .switchIfEmpty(Mono.defer(() -> filter(exchange, chain, key, requestHash).then(Mono.just(true))))
+                    .then();
+        }
+        Mono<StoredResponse> earlier = store == null ? Mono.empty() : store.claim(key, requestHash)
+                .onErrorResume(e -> forget(key, pending).then(Mono.error(e)))
+                .doOnCancel(() -> forget(key, pending));
+        return earlier
+                .doOnNext(pending.response::complete)
+                .flatMap(stored -> replay(exchange, stored).then(Mono.just(true)))
+                .switchIfEmpty(Mono.defer(() -> execute(exchange, chain, key, pending).then(Mono.just(true))))
+                .then();
+    }
+
+    private Mono<Void> execute(ServerWebExchange exchange, WebFilterChain chain, String key, Execution pending) {
+        CapturingResponse response = new CapturingResponse(exchange.getResponse(), properties.getMaxResponseSize());
+        return chain.filter(exchange.mutate().response(response).build())
+                .then(Mono.defer(() -> {
+                    StoredResponse stored = response.toStoredResponse();
+                    if (stored == null) {
+                        return release(key, pending);
+                    }
+                    pending.response.complete(stored);
+                    return store == null ? Mono.empty() : store.complete(key, stored)
+                            .onErrorResume(e -> {
+                                log.warn("Could not record idempotency key {}: {}", key, e.getMessage());
+                                return Mono.empty();
+                            });
+                }))
+                .onErrorResume(e -> release(key, pending).then(Mono.error(e)))
+                .doOnCancel(() -> release(key, pending).subscribe());
+    }
+
+    /**
+     * Drops the key here and in the store, so the next request with it runs again.
+     */
+    private Mono<Void> release(String key, Execution pending) {
+        return forget(key, pending).then(store == null ? Mono.empty() : store.release(key));
+    }
+
+    private Mono<Void> forget(String key, Execution pending) {
+        responses.asMap().remove(key, pending);
+        pending.response.complete(null);
+        return Mono.empty();
+    }
+
+    static ResponseStatusException reusedKey() {
+        return new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                "The idempotency key was used for a request with a different body");
+    }
+
+    static ResponseStatusException tooLarge() {
+        return new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                "The body of a request with an idempotency key is too large");
+    }
+
+    /**
+     * Copies the body, failing as soon as it grows past the limit, whatever Content-Length said.
+     */
+    private static Mono<byte[]> read(Flux<DataBuffer> body, int maxSize) {
+        return body.reduceWith(ByteArrayOutputStream::new, (bytes, buffer) -> {
+            try {
+                if (bytes.size() + buffer.readableByteCount() > maxSize) {
+                    throw tooLarge();
+                }
+                byte[] chunk = new byte[buffer.readableByteCount()];
+                buffer.read(chunk);
+                bytes.write(chunk, 0, chunk.length);
+                return bytes;
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        }).map(ByteArrayOutputStream::toByteArray)
+                .defaultIfEmpty(new byte[0]);
+    }
+
+    private static String hash(byte[] body) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Mono<Void> replay(ServerWebExchange exchange, StoredResponse stored) {
+        Metrics.counter(REPLAYED).increment();
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.valueOf(stored.getStatus()));
+        response.getHeaders().putAll(stored.getHeaders());
+        response.getHeaders().set(REPLAYED_HEADER, "true");
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(stored.getBody())));
+    }
+
+    /**
+     * One execution of a request with a key, and the body it was made with.
+     */
+    private static final class Execution {
+
+        private final String requestHash;
+        private final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+
+        private Execution(String requestHash) {
+            this.requestHash = requestHash;
+        }
+    }
+
+    /**
+     * The request with its body read up front, for hashing, and handed out again.
+     */
+    private static class BufferedRequest extends ServerHttpRequestDecorator {
+
+        private final byte[] body;
+
+        BufferedRequest(ServerHttpRequest delegate, byte[] body) {
+            super(delegate);
+            this.body = body;
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            return Flux.defer(() -> Flux.just(BUFFER_FACTORY.wrap(body)));
+        }
+    }
+
+    /**
+     * Copies the response body as it is written, up to a limit. Streamed responses are
+     * not kept.
+     */
+    private static class CapturingResponse extends ServerHttpResponseDecorator {
+
+        private final int maxSize;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private boolean storable = true;
+
+        CapturingResponse(ServerHttpResponse delegate, int maxSize) {
+            super(delegate);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return super.writeWith(Flux.from(body).doOnNext(this::capture));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            storable = false;
+            return super.writeAndFlushWith(body);
+        }
+
+        private void capture(DataBuffer buffer) {
+            if (!storable) {
+                return;
+            }
+            if (body.size() + buffer.readableByteCount() > maxSize) {
+                storable = false;
+                return;
+            }
+            ByteBuffer bytes = buffer.asByteBuffer();
+            byte[] copy = new byte[bytes.remaining()];
+            bytes.get(copy);
+            body.write(copy, 0, copy.length);
+        }
+
+        StoredResponse toStoredResponse() {
+            HttpStatus status = getStatusCode() == null ? HttpStatus.OK : getStatusCode();
+            if (!storable || status.is5xxServerError()) {
+                return null;
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(getHeaders());
+            return new StoredResponse(status.value(), headers, body.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package guru.springframework.spring5webfluxrest.idempotency;
+
+import guru.springframework.spring5webfluxrest.config.IdempotencyProperties;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Idempotency keys shared between instances, one document per key in a collection
+ * whose TTL index removes them after {@code app.idempotency.ttl}. A key is claimed by
+ * inserting its document, so only one instance runs the request; the response is added
+ * to the document once it is known. A claim lasts {@code app.idempotency.mongo.claim-timeout},
+ * after which a retry may take the key over.
+ */
+public class MongoIdempotencyStore {
+
+    static final String CREATED_AT = "createdAt";
+    static final String CLAIMED_UNTIL = "claimedUntil";
+    static final String REQUEST_HASH = "requestHash";
+    static final String STATUS = "status";
+    static final String HEADERS = "headers";
+    static final String BODY = "body";
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final IdempotencyProperties properties;
+
+    public MongoIdempotencyStore(ReactiveMongoOperations mongoOperations, IdempotencyProperties properties) {
+        this.mongoOperations = mongoOperations;
+        this.properties = properties;
+    }
+
+    public Mono<String> ensureIndex() {
+        return mongoOperations.indexOps(collection()).ensureIndex(new Index()
+                .on(CREATED_AT, Sort.Direction.ASC)
+                .expire(properties.getTtl().getSeconds(), TimeUnit.SECONDS));
+    }
+
+    /**
+     * @param requestHash fingerprint of the request body
+     * @return the stored response when the key was already used, empty when the caller
+     * now owns the key, a 409 error while another request with the key is running, or a
+     * 422 error when the key was used with another body
+     */
+    public Mono<StoredResponse> claim(String key, String requestHash) {
+        Date now = new Date();
+        return mongoOperations.insert(new Document("_id", key).append(CREATED_AT, now)
+                        .append(CLAIMED_UNTIL, claimedUntil(now))
+                        .append(REQUEST_HASH, requestHash), collection())
+                .then(Mono.<StoredResponse>empty())
+                .onErrorResume(DuplicateKeyException.class, e -> mongoOperations
+                        .findById(key, Document.class, collection())
+                        .map(document -> {
+                            if (document.containsKey(REQUEST_HASH) && !requestHash.equals(document.getString(REQUEST_HASH))) {
+                                return Mono.<StoredResponse>error(IdempotencyFilter.reusedKey());
+                            }
+                            return document.containsKey(STATUS)
+                                    ? Mono.just(toStoredResponse(document))
+                                    : takeOver(key, requestHash, now);
+                        })
+                        // expired between the insert and the read
+                        .defaultIfEmpty(Mono.defer(() -> claim(key, requestHash)))
+                        .flatMap(claimed -> claimed));
+    }
+
+    /**
+     * Claims the key from a request whose claim ran out without a response, such as one
+     * on an instance that died while running it. Of several requests taking over, one
+     * wins and the others see its claim.
+     */
+    private Mono<StoredResponse> takeOver(String key, String requestHash, Date now) {
+        Query expired = query(where("_id").is(key).and(STATUS).exists(false)
+                .orOperator(where(CLAIMED_UNTIL).lt(now), where(CLAIMED_UNTIL).exists(false)));
+        return mongoOperations.updateFirst(expired, new Update()
+                        .set(CREATED_AT, now)
+                        .set(CLAIMED_UNTIL, claimedUntil(now))
+                        .set(REQUEST_HASH, requestHash), collection())
+                .flatMap(result -> result.getModifiedCount() > 0
+                        ? Mono.<StoredResponse>empty()
+                        : Mono.error(new ResponseStatusException(HttpStatus.CONFLICT,
+                                "A request with this idempotency key is still in progress")));
+    }
+
+    private Date claimedUntil(Date now) {
+        return new Date(now.getTime() + properties.getMongo().getClaimTimeout().toMillis());
+    }
+
+    public Mono<Void> complete(String key, StoredResponse response) {
+        return mongoOperations.updateFirst(query(where("_id").is(key)), new Update()
+                        .set(STATUS, response.getStatus())
+                        .set(HEADERS, new Document(new LinkedHashMap<String, Object>(response.getHeaders())))
+                        .set(BODY, new Binary(response.getBody())), collection())
+                .then();
+    }
+
+    public Mono<Void> release(String key) {
+        return mongoOperations.remove(query(where("_id").is(key)), collection()).then();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static StoredResponse toStoredResponse(Document document) {
+        HttpHeaders headers = new HttpHeaders();
+        for (Map.Entry<String, Object> header : document.get(HEADERS, Document.class).entrySet()) {
+            headers.put(header.getKey(), (List<String>) header.getValue());
+        }
+        return new StoredResponse(document.getInteger(STATUS), headers, document.get(BODY, Binary.class).getData());
+    }
+
+    private String collection() {
+        return properties.getMongo().getCollection();
+    }
+}
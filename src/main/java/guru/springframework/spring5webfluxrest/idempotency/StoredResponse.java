@@ -0,0 +1,18 @@
+package guru.springframework.spring5webfluxrest.idempotency;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.HttpHeaders;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredResponse {
+
+    private int status;
+    private HttpHeaders headers;
+    private byte[] body;
+}
@@ -0,0 +1,38 @@
+package guru.springframework.spring5webfluxrest.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import reactor.ipc.netty.resources.LoopResources;
+
+/**
+ * Pending task count of every Netty event loop serving HTTP. A growing queue here means
+ * handlers are blocking or serializing on the event loop rather than waiting on Mongo.
+ */
+public class EventLoopMetrics implements MeterBinder {
+
+    public static final String PENDING_TASKS = "reactor.netty.eventloop.pending.tasks";
+
+    private final LoopResources loopResources;
+
+    public EventLoopMetrics(LoopResources loopResources) {
+        this.loopResources = loopResources;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        EventLoopGroup loops = loopResources.onServer(loopResources.preferNative());
+        int index = 0;
+        for (EventExecutor executor : loops) {
+            if (executor instanceof SingleThreadEventExecutor) {
+                Gauge.builder(PENDING_TASKS, (SingleThreadEventExecutor) executor,
+                        SingleThreadEventExecutor::pendingTasks)
+                        .tag("loop", String.valueOf(index++))
+                        .register(registry);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package guru.springframework.spring5webfluxrest.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records how many elements a streamed response emitted. Uses the global registry,
+ * which Boot populates with the Prometheus registry, so handlers need no extra wiring.
+ */
+public final class FluxMetrics {
+
+    public static final String RESPONSE_ELEMENTS = "api.response.elements";
+
+    private FluxMetrics() {
+    }
+
+    public static <T> Flux<T> countElements(String endpoint, Flux<T> flux) {
+        return Flux.defer(() -> {
+            AtomicLong count = new AtomicLong();
+            return flux.doOnNext(element -> count.incrementAndGet())
+                    .doFinally(signal -> DistributionSummary.builder(RESPONSE_ELEMENTS)
+                            .tag("endpoint", endpoint)
+                            .tag("signal", signal.name())
+                            .register(Metrics.globalRegistry)
+                            .record(count.get()));
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package guru.springframework.spring5webfluxrest.metrics;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonValue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every command the driver sends. The collection is only present on the started
+ * event, so it is remembered by request id until the command completes.
+ */
+public class MongoCommandMetrics implements CommandListener {
+
+    public static final String COMMANDS = "mongodb.driver.commands";
+
+    private final MeterRegistry registry;
+    private final Map<Integer, String> collections = new ConcurrentHashMap<>();
+
+    public MongoCommandMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        BsonValue target = event.getCommand().get(event.getCommandName());
+        collections.put(event.getRequestId(), target != null && target.isString()
+                ? target.asString().getValue() : "none");
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        record(event.getRequestId(), event.getCommandName(), "SUCCESS",
+                event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        record(event.getRequestId(), event.getCommandName(), "FAILED",
+                event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    private void record(int requestId, String command, String status, long nanos) {
+        String collection = collections.remove(requestId);
+        Timer.builder(COMMANDS)
+                .tag("command", command)
+                .tag("collection", collection == null ? "none" : collection)
+                .tag("status", status)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,85 @@
+package guru.springframework.spring5webfluxrest.metrics;
+
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.*;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool size, checked out connections and wait queue depth per server, as gauges.
+ */
+public class MongoConnectionPoolMetrics extends ConnectionPoolListenerAdapter {
+
+    private final MeterRegistry registry;
+    private final Map<ServerId, AtomicInteger> sizes = new ConcurrentHashMap<>();
+    private final Map<ServerId, AtomicInteger> checkedOut = new ConcurrentHashMap<>();
+    private final Map<ServerId, AtomicInteger> waitQueue = new ConcurrentHashMap<>();
+
+    public MongoConnectionPoolMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void connectionPoolOpened(ConnectionPoolOpenedEvent event) {
+        ServerId server = event.getServerId();
+        gauge("mongodb.driver.pool.size", server, sizes);
+        gauge("mongodb.driver.pool.checkedout", server, checkedOut);
+        gauge("mongodb.driver.pool.waitqueuesize", server, waitQueue);
+    }
+
+    @Override
+    public void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+        sizes.remove(event.getServerId());
+        checkedOut.remove(event.getServerId());
+        waitQueue.remove(event.getServerId());
+    }
+
+    @Override
+    public void connectionAdded(ConnectionAddedEvent event) {
+        adjust(sizes, event.getConnectionId().getServerId(), 1);
+    }
+
+    @Override
+    public void connectionRemoved(ConnectionRemovedEvent event) {
+        adjust(sizes, event.getConnectionId().getServerId(), -1);
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        adjust(checkedOut, event.getConnectionId().getServerId(), 1);
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        adjust(checkedOut, event.getConnectionId().getServerId(), -1);
+    }
+
+    @Override
+    public void waitQueueEntered(ConnectionPoolWaitQueueEnteredEvent event) {
+        adjust(waitQueue, event.getServerId(), 1);
+    }
+
+    @Override
+    public void waitQueueExited(ConnectionPoolWaitQueueExitedEvent event) {
+        adjust(waitQueue, event.getServerId(), -1);
+    }
+
+    private void gauge(String name, ServerId server, Map<ServerId, AtomicInteger> values) {
+        AtomicInteger value = values.computeIfAbsent(server, id -> new AtomicInteger());
+        Gauge.builder(name, value, AtomicInteger::get)
+                .tag("cluster.id", server.getClusterId().getValue())
+                .tag("server.address", server.getAddress().toString())
+                .register(registry);
+    }
+
+    private static void adjust(Map<ServerId, AtomicInteger> values, ServerId server, int delta) {
+        AtomicInteger value = values.get(server);
+        if (value != null) {
+            value.addAndGet(delta);
+        }
+    }
+}
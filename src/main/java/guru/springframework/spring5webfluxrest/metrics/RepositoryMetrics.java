@@ -0,0 +1,70 @@
+package guru.springframework.spring5webfluxrest.metrics;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps reactive repositories so every call is timed from subscription to termination,
+ * which is when the query actually runs.
+ */
+public class RepositoryMetrics implements BeanPostProcessor {
+
+    public static final String INVOCATIONS = "repository.invocations";
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof ReactiveCrudRepository)) {
+            return bean;
+        }
+        ProxyFactory proxy = new ProxyFactory(bean);
+        proxy.addAdvice(new TimingInterceptor(beanName));
+        return proxy.getProxy();
+    }
+
+    static class TimingInterceptor implements MethodInterceptor {
+
+        private final String repository;
+
+        TimingInterceptor(String repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Object result = invocation.proceed();
+            String method = invocation.getMethod().getName();
+            if (result instanceof Mono) {
+                return Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return ((Mono<?>) result).doFinally(signal -> record(method, signal, start));
+                });
+            }
+            if (result instanceof Flux) {
+                return Flux.defer(() -> {
+                    long start = System.nanoTime();
+                    return ((Flux<?>) result).doFinally(signal -> record(method, signal, start));
+                });
+            }
+            return result;
+        }
+
+        private void record(String method, SignalType signal, long start) {
+            Timer.builder(INVOCATIONS)
+                    .tag("repository", repository)
+                    .tag("method", method)
+                    .tag("signal", signal.name())
+                    .register(Metrics.globalRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package guru.springframework.spring5webfluxrest.ratelimit;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import guru.springframework.spring5webfluxrest.config.RateLimitProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts Mongo commands in flight against a limit that adapts to their latency: each
+ * command slower than the target shrinks it multiplicatively, each faster one grows it
+ * by roughly one per limit's worth of commands.
+ * <p>
+ * getMore is left out because change stream cursors hold one open for up to the await
+ * time, which says nothing about load.
+ */
+public class MongoConcurrencyLimit implements CommandListener, MeterBinder {
+
+    private static final double BACKOFF = 0.9;
+    private static final String GET_MORE = "getMore";
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong limitBits;
+
+    public MongoConcurrencyLimit(RateLimitProperties.Mongo properties) {
+        this.minLimit = properties.getMinLimit();
+        this.maxLimit = properties.getMaxLimit();
+        this.targetNanos = properties.getTargetLatency().toNanos();
+        this.limitBits = new AtomicLong(Double.doubleToLongBits(properties.getInitialLimit()));
+    }
+
+    public boolean isOverloaded() {
+        return inFlight.get() >= getLimit();
+    }
+
+    public int getLimit() {
+        return (int) Double.longBitsToDouble(limitBits.get());
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (!GET_MORE.equals(event.getCommandName())) {
+            inFlight.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        if (!GET_MORE.equals(event.getCommandName())) {
+            inFlight.decrementAndGet();
+            adjust(event.getElapsedTime(TimeUnit.NANOSECONDS) > targetNanos);
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        if (!GET_MORE.equals(event.getCommandName())) {
+            inFlight.decrementAndGet();
+            adjust(event.getElapsedTime(TimeUnit.NANOSECONDS) > targetNanos);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("mongodb.driver.commands.limit", this, MongoConcurrencyLimit::getLimit).register(registry);
+        Gauge.builder("mongodb.driver.commands.active", this, MongoConcurrencyLimit::getInFlight).register(registry);
+    }
+
+    private void adjust(boolean slow) {
+        while (true) {
+            long bits = limitBits.get();
+            double limit = Double.longBitsToDouble(bits);
+            double next = slow ? Math.max(minLimit, limit * BACKOFF) : Math.min(maxLimit, limit + 1 / limit);
+            if (next == limit || limitBits.compareAndSet(bits, Double.doubleToLongBits(next))) {
+                return;
+            }
+        }
+    }
+}
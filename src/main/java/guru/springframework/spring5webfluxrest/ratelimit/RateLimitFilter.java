@@ -0,0 +1,104 @@
+package guru.springframework.spring5webfluxrest.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import guru.springframework.spring5webfluxrest.config.RateLimitProperties;
+import guru.springframework.spring5webfluxrest.controllers.CategoryController;
+import guru.springframework.spring5webfluxrest.controllers.VendorController;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sheds vendor and category requests before they reach a handler: with 503 while Mongo
+ * is over its {@link MongoConcurrencyLimit}, and with 429 once the client's read or write
+ * {@link TokenBucket} is empty. Buckets live in a bounded Caffeine cache keyed by
+ * {@link #clientKey}.
+ * <p>
+ * Runs after Boot's metrics filter so rejected requests still show up in
+ * {@code http.server.requests}.
+ */
+public class RateLimitFilter implements WebFilter, Ordered {
+
+    public static final String REJECTED = "api.requests.rejected";
+
+    private static final List<String> LIMITED_PATHS = Arrays.asList(VendorController.BASE_URL, CategoryController.BASE_URL);
+    private static final List<HttpMethod> READ_METHODS = Arrays.asList(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS);
+
+    private final RateLimitProperties properties;
+    private final MongoConcurrencyLimit mongoLimit;
+    private final Cache<String, TokenBucket> buckets;
+
+    public RateLimitFilter(RateLimitProperties properties, MongoConcurrencyLimit mongoLimit) {
+        this.properties = properties;
+        this.mongoLimit = mongoLimit;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxClients())
+                .expireAfterAccess(properties.getIdleTimeout())
+                .build();
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 10;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().pathWithinApplication().value();
+        if (LIMITED_PATHS.stream().noneMatch(path::startsWith)) {
+            return chain.filter(exchange);
+        }
+        if (mongoLimit.isOverloaded()) {
+            return reject(exchange, HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1), "overload");
+        }
+
+        boolean read = READ_METHODS.contains(request.getMethod());
+        RateLimitProperties.Bucket spec = read ? properties.getRead() : properties.getWrite();
+        TokenBucket bucket = buckets.get(clientKey(request, properties) + (read ? "|read" : "|write"),
+                key -> new TokenBucket(spec.getCapacity(), spec.getPerSecond()));
+        long waitNanos = bucket.tryAcquire(System.nanoTime());
+        if (waitNanos > 0) {
+            return reject(exchange, HttpStatus.TOO_MANY_REQUESTS, waitNanos, "rate_limit");
+        }
+        return chain.filter(exchange);
+    }
+
+    /**
+     * Identifies the client of a request: by API key when the key is one of
+     * {@code app.rate-limit.api-keys}, otherwise by remote address, so a client cannot
+     * get fresh buckets by sending made-up keys.
+     */
+    public static String clientKey(ServerHttpRequest request, RateLimitProperties properties) {
+        String apiKey = request.getHeaders().getFirst(properties.getApiKeyHeader());
+        if (apiKey != null && properties.getApiKeys().contains(apiKey)) {
+            return "key:" + apiKey;
+        }
+        InetSocketAddress remote = request.getRemoteAddress();
+        return "ip:" + (remote == null ? "unknown" : remote.getAddress() == null
+                ? remote.getHostString() : remote.getAddress().getHostAddress());
+    }
+
+    private static Mono<Void> reject(ServerWebExchange exchange, HttpStatus status, long retryAfterNanos, String reason) {
+        Metrics.counter(REJECTED, "reason", reason).increment();
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+                String.valueOf(Math.max(1, (retryAfterNanos + 999_999_999) / 1_000_000_000)));
+        return response.setComplete();
+    }
+}
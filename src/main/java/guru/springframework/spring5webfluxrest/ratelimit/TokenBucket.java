@@ -0,0 +1,37 @@
+package guru.springframework.spring5webfluxrest.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket kept as a single theoretical arrival time (GCRA), so acquiring is one
+ * compare-and-set and needs no lock or refill timer.
+ */
+public class TokenBucket {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+    public TokenBucket(int capacity, double perSecond) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+        this.burstNanos = intervalNanos * capacity;
+    }
+
+    /**
+     * @return 0 if a token was taken, otherwise the nanos until one is available
+     */
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            long ahead = next - nowNanos;
+            if (ahead > burstNanos) {
+                return ahead - burstNanos;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
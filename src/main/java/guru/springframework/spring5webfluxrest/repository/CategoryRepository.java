@@ -1,7 +1,24 @@
 package guru.springframework.spring5webfluxrest.repository;
 
 import guru.springframework.spring5webfluxrest.domain.Category;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-public interface CategoryRepository extends ReactiveMongoRepository<Category, String> {
+public interface CategoryRepository extends ReactiveMongoRepository<Category, String>, CategoryRepositoryCustom {
+
+    Flux<Category> findAllBy(Pageable pageable);
+
+    Flux<Category> findByIdGreaterThan(String id, Pageable pageable);
+
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'version': 1 }")
+    Mono<Category> findVersionById(String id);
+
+    @Query(value = "{}", fields = "{ 'version': 1 }")
+    Flux<Category> findVersionsBy(Pageable pageable);
+
+    @Query(value = "{ '_id': { '$gt': ?0 } }", fields = "{ 'version': 1 }")
+    Flux<Category> findVersionsByIdGreaterThan(String id, Pageable pageable);
 }
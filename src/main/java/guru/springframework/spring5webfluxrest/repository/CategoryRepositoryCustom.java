@@ -0,0 +1,10 @@
+package guru.springframework.spring5webfluxrest.repository;
+
+import guru.springframework.spring5webfluxrest.domain.Category;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+
+public interface CategoryRepositoryCustom {
+
+    Flux<Category> findAll(Query query);
+}
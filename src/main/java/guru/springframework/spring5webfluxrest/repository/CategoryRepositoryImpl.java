@@ -0,0 +1,20 @@
+package guru.springframework.spring5webfluxrest.repository;
+
+import guru.springframework.spring5webfluxrest.domain.Category;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+
+class CategoryRepositoryImpl implements CategoryRepositoryCustom {
+
+    private final ReactiveMongoOperations mongoOperations;
+
+    CategoryRepositoryImpl(ReactiveMongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public Flux<Category> findAll(Query query) {
+        return mongoOperations.find(query, Category.class);
+    }
+}
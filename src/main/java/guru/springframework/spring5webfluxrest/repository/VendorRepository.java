@@ -1,7 +1,24 @@
 package guru.springframework.spring5webfluxrest.repository;
 
 import guru.springframework.spring5webfluxrest.domain.Vendor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-public interface VendorRepository extends ReactiveMongoRepository<Vendor, String> {
+public interface VendorRepository extends ReactiveMongoRepository<Vendor, String>, VendorRepositoryCustom {
+
+    Flux<Vendor> findAllBy(Pageable pageable);
+
+    Flux<Vendor> findByIdGreaterThan(String id, Pageable pageable);
+
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'version': 1 }")
+    Mono<Vendor> findVersionById(String id);
+
+    @Query(value = "{}", fields = "{ 'version': 1 }")
+    Flux<Vendor> findVersionsBy(Pageable pageable);
+
+    @Query(value = "{ '_id': { '$gt': ?0 } }", fields = "{ 'version': 1 }")
+    Flux<Vendor> findVersionsByIdGreaterThan(String id, Pageable pageable);
 }
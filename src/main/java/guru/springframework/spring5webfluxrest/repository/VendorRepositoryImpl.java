@@ -0,0 +1,20 @@
+package guru.springframework.spring5webfluxrest.repository;
+
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+
+class VendorRepositoryImpl implements VendorRepositoryCustom {
+
+    private final ReactiveMongoOperations mongoOperations;
+
+    VendorRepositoryImpl(ReactiveMongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public Flux<Vendor> findAll(Query query) {
+        return mongoOperations.find(query, Vendor.class);
+    }
+}
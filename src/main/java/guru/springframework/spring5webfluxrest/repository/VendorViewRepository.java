@@ -0,0 +1,10 @@
+package guru.springframework.spring5webfluxrest.repository;
+
+import guru.springframework.spring5webfluxrest.domain.VendorView;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+public interface VendorViewRepository extends ReactiveMongoRepository<VendorView, String> {
+
+    Flux<VendorView> findByCategoriesId(String categoryId);
+}
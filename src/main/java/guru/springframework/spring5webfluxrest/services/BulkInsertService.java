@@ -0,0 +1,118 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import guru.springframework.spring5webfluxrest.config.BulkProperties;
+import guru.springframework.spring5webfluxrest.config.WorkSchedulers;
+import guru.springframework.spring5webfluxrest.domain.BulkInsertResult;
+import org.bson.Document;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a stream of entities with unordered insertMany calls, batched by count and time window.
+ * A failing document does not stop the rest of its batch. Inserted documents are
+ * published as {@link AfterSaveEvent}s, which insertMany itself does not do. Entities are
+ * converted to documents on the CPU scheduler rather than the event loop reading the request.
+ */
+@Service
+public class BulkInsertService implements ApplicationEventPublisherAware {
+
+    private static final InsertManyOptions UNORDERED = new InsertManyOptions().ordered(false);
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final BulkProperties bulkProperties;
+    private final WorkSchedulers workSchedulers;
+    private ApplicationEventPublisher eventPublisher;
+
+    public BulkInsertService(ReactiveMongoOperations mongoOperations, BulkProperties bulkProperties,
+                             WorkSchedulers workSchedulers) {
+        this.mongoOperations = mongoOperations;
+        this.bulkProperties = bulkProperties;
+        this.workSchedulers = workSchedulers;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    public <T> Mono<BulkInsertResult> insert(Flux<T> entities, Class<T> type) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            MongoPersistentProperty version = mongoOperations.getConverter().getMappingContext()
+                    .getRequiredPersistentEntity(type)
+                    .getVersionProperty();
+
+            return entities.publishOn(workSchedulers.cpu())
+                    .map(entity -> toDocument(entity, version))
+                    .bufferTimeout(bulkProperties.getBatchSize(), bulkProperties.getWindow())
+                    .flatMap(batch -> insertBatch(type, batch), bulkProperties.getConcurrency())
+                    .reduce(new BulkInsertResult(), BulkInsertResult::plus)
+                    .map(result -> {
+                        result.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        return result;
+                    });
+        });
+    }
+
+    private Document toDocument(Object entity, MongoPersistentProperty version) {
+        Document document = new Document();
+        mongoOperations.getConverter().write(entity, document);
+        if (version != null) {
+            document.putIfAbsent(version.getFieldName(), 0L);
+        }
+        return document;
+    }
+
+    private Mono<BulkInsertResult> insertBatch(Class<?> type, List<Document> batch) {
+        return mongoOperations.execute(type, collection -> collection.insertMany(batch, UNORDERED))
+                .then(Mono.fromSupplier(() -> {
+                    publishInserted(type, batch, new HashSet<>());
+                    return BulkInsertResult.builder().inserted(batch.size()).build();
+                }))
+                .onErrorResume(e -> bulkWriteException(e) != null, e -> {
+                    Set<Integer> failed = new HashSet<>();
+                    for (BulkWriteError error : bulkWriteException(e).getWriteErrors()) {
+                        failed.add(error.getIndex());
+                    }
+                    publishInserted(type, batch, failed);
+                    return Mono.just(BulkInsertResult.builder()
+                            .inserted(batch.size() - failed.size())
+                            .failed(failed.size())
+                            .build());
+                });
+    }
+
+    private void publishInserted(Class<?> type, List<Document> batch, Set<Integer> failed) {
+        if (eventPublisher == null) {
+            return;
+        }
+        String collection = mongoOperations.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(type).getCollection();
+        for (int i = 0; i < batch.size(); i++) {
+            if (!failed.contains(i)) {
+                eventPublisher.publishEvent(new AfterSaveEvent<>(batch.get(i), batch.get(i), collection));
+            }
+        }
+    }
+
+    private static MongoBulkWriteException bulkWriteException(Throwable e) {
+        while (e != null && !(e instanceof MongoBulkWriteException)) {
+            e = e.getCause();
+        }
+        return (MongoBulkWriteException) e;
+    }
+}
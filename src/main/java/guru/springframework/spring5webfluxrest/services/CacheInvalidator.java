@@ -0,0 +1,58 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.mongodb.client.model.changestream.OperationType;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Evicts cache entries for documents written by other instances, and everything once
+ * changes may have been missed, including when a change stream fails.
+ */
+@Slf4j
+@Component
+public class CacheInvalidator {
+
+    private final ChangeStreamService changeStreamService;
+    private final EntityCache<Vendor> vendorCache;
+    private final EntityCache<Category> categoryCache;
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    public CacheInvalidator(ChangeStreamService changeStreamService,
+                            EntityCache<Vendor> vendorCache, EntityCache<Category> categoryCache) {
+        this.changeStreamService = changeStreamService;
+        this.vendorCache = vendorCache;
+        this.categoryCache = categoryCache;
+    }
+
+    @PostConstruct
+    public void start() {
+        subscriptions.add(evictOnChange(Vendor.class, vendorCache));
+        subscriptions.add(evictOnChange(Category.class, categoryCache));
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.dispose();
+    }
+
+    private Disposable evictOnChange(Class<?> type, EntityCache<?> cache) {
+        return changeStreamService.changes(type)
+                .subscribe(event -> {
+                    if (event.getOperation() == OperationType.INVALIDATE) {
+                        cache.evictAll();
+                    } else {
+                        cache.evict(event.getId());
+                    }
+                }, e -> {
+                    log.warn("Stopped evicting {} entries on change: {}", type.getSimpleName(), e.getMessage());
+                    cache.evictAll();
+                });
+    }
+}
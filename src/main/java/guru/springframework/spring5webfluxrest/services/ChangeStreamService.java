@@ -0,0 +1,244 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.mongodb.MongoServerException;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.reactivestreams.client.ChangeStreamPublisher;
+import guru.springframework.spring5webfluxrest.config.ChangeStreamProperties;
+import guru.springframework.spring5webfluxrest.domain.ChangeEvent;
+import guru.springframework.spring5webfluxrest.domain.EntityChange;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.UnicastProcessor;
+import reactor.util.concurrent.Queues;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands out one shared change stream per collection, so every listener in this
+ * instance is served by a single Mongo cursor. A broken stream is reopened after
+ * the last seen resume token, so no change is skipped across reconnects. Once the
+ * token can no longer be resumed from, for instance after the oplog rolled past it,
+ * the stream is reopened from now and starts with an {@link OperationType#INVALIDATE}
+ * event, telling listeners to rebuild what they keep.
+ */
+@Slf4j
+@Service
+public class ChangeStreamService {
+
+    /**
+     * Host unreachable, network timeout, shutdown, interruption, not master and node
+     * recovering codes, plus cursor not found.
+     */
+    private static final Set<Integer> RESUMABLE_CODES = new HashSet<>(Arrays.asList(
+            6, 7, 43, 63, 89, 91, 133, 150, 189, 234, 262, 9001, 10107, 11600, 11602, 13388, 13435, 13436));
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final ChangeStreamProperties changeStreamProperties;
+    private final Map<Class<?>, Flux<ChangeEvent>> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger resumeStreams = new AtomicInteger();
+    private final Map<Class<?>, History> histories = new ConcurrentHashMap<>();
+
+    public ChangeStreamService(ReactiveMongoOperations mongoOperations, ChangeStreamProperties changeStreamProperties) {
+        this.mongoOperations = mongoOperations;
+        this.changeStreamProperties = changeStreamProperties;
+    }
+
+    /**
+     * @return whether {@link #changes} delivers the writes of every instance, this one included
+     */
+    public boolean isEnabled() {
+        return changeStreamProperties.isEnabled();
+    }
+
+    public Flux<ChangeEvent> changes(Class<?> type) {
+        if (!changeStreamProperties.isEnabled()) {
+            return Flux.never();
+        }
+        return streams.computeIfAbsent(type, this::share);
+    }
+
+    /**
+     * Changes for an API subscriber, each behind its own bounded buffer so a slow client
+     * never holds up the shared stream. With a resume token the changes after it are
+     * replayed first, from memory when still in the history and otherwise from a change
+     * stream opened for this subscriber alone.
+     */
+    public <T> Flux<EntityChange<T>> subscribe(Class<T> type, BsonDocument resumeAfter) {
+        Flux<ChangeEvent> events = resumeAfter == null || !changeStreamProperties.isEnabled()
+                ? changes(type)
+                : Flux.defer(() -> resume(type, resumeAfter));
+        return withBuffer(events)
+                .map(event -> EntityChange.<T>builder()
+                        .operation(event.getOperation().getValue())
+                        .id(event.getId())
+                        .entity(event.getDocument() == null
+                                ? null : mongoOperations.getConverter().read(type, event.getDocument()))
+                        .resumeToken(event.getResumeToken())
+                        .build());
+    }
+
+    private Flux<ChangeEvent> share(Class<?> type) {
+        History history = histories.computeIfAbsent(type, key -> new History(changeStreamProperties.getHistorySize()));
+        AtomicReference<BsonDocument> resumeToken = new AtomicReference<>();
+        AtomicBoolean missed = new AtomicBoolean();
+
+        return Flux.defer(() -> missed.getAndSet(false)
+                        ? open(type, resumeToken).startWith(ChangeEvent.invalidated())
+                        : open(type, resumeToken))
+                .doOnError(e -> !isResumable(e) && resumeToken.get() != null, e -> {
+                    log.warn("Change stream on {} cannot resume, reopening from now: {}",
+                            type.getSimpleName(), e.getMessage());
+                    resumeToken.set(null);
+                    history.clear();
+                    missed.set(true);
+                })
+                .retryWhen(errors -> errors
+                        .doOnNext(e -> log.warn("Change stream on {} failed, reopening in {}: {}",
+                                type.getSimpleName(), changeStreamProperties.getRetryDelay(), e.getMessage()))
+                        .delayElements(changeStreamProperties.getRetryDelay()))
+                .doOnNext(history::add)
+                .publish()
+                .refCount();
+    }
+
+    /**
+     * A change stream for one subscriber resuming from a token no longer in the history.
+     * At most {@code max-resume-streams} are open at once; past that, and once the token
+     * cannot be resumed from, the subscriber gets an invalidate event and the subscription
+     * ends, so it lists again and follows the shared stream from then on.
+     */
+    private Flux<ChangeEvent> watch(Class<?> type, BsonDocument startAfter) {
+        if (resumeStreams.incrementAndGet() > changeStreamProperties.getMaxResumeStreams()) {
+            resumeStreams.decrementAndGet();
+            log.debug("Too many resuming subscribers, invalidating a {} subscription", type.getSimpleName());
+            return Flux.just(ChangeEvent.invalidated());
+        }
+        AtomicReference<BsonDocument> resumeToken = new AtomicReference<>(startAfter);
+
+        return open(type, resumeToken)
+                .retryWhen(errors -> errors
+                        .concatMap(e -> isResumable(e) ? Mono.just(e) : Mono.error(e))
+                        .doOnNext(e -> log.warn("Change stream on {} failed, reopening in {}: {}",
+                                type.getSimpleName(), changeStreamProperties.getRetryDelay(), e.getMessage()))
+                        .delayElements(changeStreamProperties.getRetryDelay()))
+                .onErrorResume(e -> !isResumable(e), e -> {
+                    log.debug("Cannot resume {} subscription: {}", type.getSimpleName(), e.getMessage());
+                    return Flux.just(ChangeEvent.invalidated());
+                })
+                .doFinally(signal -> resumeStreams.decrementAndGet());
+    }
+
+    /**
+     * Opens a change stream after the token, or from now without one, and moves the token
+     * along with the changes.
+     */
+    private Flux<ChangeEvent> open(Class<?> type, AtomicReference<BsonDocument> resumeToken) {
+        return Flux.defer(() -> mongoOperations.execute(type, collection -> {
+                    ChangeStreamPublisher<Document> publisher = collection.watch()
+                            .fullDocument(FullDocument.UPDATE_LOOKUP);
+                    BsonDocument token = resumeToken.get();
+                    return token == null ? publisher : publisher.resumeAfter(token);
+                }))
+                .doOnNext(change -> resumeToken.set(change.getResumeToken()))
+                .map(ChangeEvent::from);
+    }
+
+    /**
+     * Whether a change stream failing with the error can be resumed with its token: any
+     * failure to reach the server, and the server errors the driver resumes after.
+     * Other server errors, such as a token older than the oplog, fail every attempt.
+     */
+    static boolean isResumable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoServerException) {
+                return RESUMABLE_CODES.contains(((MongoServerException) cause).getCode());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Joins the shared stream before reading the history, so nothing falls between the
+     * two; changes seen in both are only passed on once.
+     */
+    private Flux<ChangeEvent> resume(Class<?> type, BsonDocument resumeAfter) {
+        UnicastProcessor<ChangeEvent> live = UnicastProcessor.create(Queues.<ChangeEvent>unbounded().get());
+        Disposable subscription = changes(type).subscribe(live::onNext, live::onError, live::onComplete);
+
+        List<ChangeEvent> recent = histories.get(type).snapshot();
+        int position = -1;
+        for (int i = 0; i < recent.size(); i++) {
+            if (resumeAfter.equals(recent.get(i).getResumeToken())) {
+                position = i;
+            }
+        }
+        if (position < 0) {
+            subscription.dispose();
+            log.debug("Resume token for {} not in history, opening a dedicated change stream", type.getSimpleName());
+            return watch(type, resumeAfter);
+        }
+        Set<ChangeEvent> replayed = Collections.newSetFromMap(new IdentityHashMap<>());
+        replayed.addAll(recent);
+        return Flux.fromIterable(recent.subList(position + 1, recent.size()))
+                .concatWith(live.filter(event -> !replayed.contains(event)))
+                .doFinally(signal -> subscription.dispose());
+    }
+
+    private <T> Flux<T> withBuffer(Flux<T> events) {
+        boolean disconnect = changeStreamProperties.getSlowSubscriberPolicy()
+                == ChangeStreamProperties.SlowSubscriberPolicy.DISCONNECT;
+        return events.onBackpressureBuffer(changeStreamProperties.getSubscriberBufferSize(),
+                dropped -> log.debug("Subscriber buffer full, {}", disconnect ? "disconnecting" : "dropping oldest change"),
+                disconnect ? BufferOverflowStrategy.ERROR : BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    private static class History {
+
+        private final int size;
+        private final Deque<ChangeEvent> events;
+
+        History(int size) {
+            this.size = size;
+            this.events = new ArrayDeque<>(size);
+        }
+
+        synchronized void add(ChangeEvent event) {
+            if (size == 0 || event.getResumeToken() == null) {
+                return;
+            }
+            if (events.size() == size) {
+                events.removeFirst();
+            }
+            events.addLast(event);
+        }
+
+        synchronized void clear() {
+            events.clear();
+        }
+
+        synchronized List<ChangeEvent> snapshot() {
+            return new ArrayList<>(events);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import guru.springframework.spring5webfluxrest.config.CacheProperties;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Read-through cache for lookups by id. Concurrent misses for the same id share one load,
+ * and ids that are not found are not cached. With a bulk loader, the misses of a
+ * {@link #getAll} are loaded together in one query.
+ */
+public class EntityCache<T> {
+
+    private final AsyncLoadingCache<String, T> cache;
+
+    public EntityCache(Function<String, Mono<T>> loader, CacheProperties.Spec spec) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(spec.getMaximumSize())
+                .expireAfterWrite(spec.getTtl())
+                .buildAsync((id, executor) -> loader.apply(id).toFuture());
+    }
+
+    public EntityCache(Function<String, Mono<T>> loader, Function<List<String>, Flux<T>> bulkLoader,
+                       Function<T, String> idOf, CacheProperties.Spec spec) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(spec.getMaximumSize())
+                .expireAfterWrite(spec.getTtl())
+                .buildAsync(new AsyncCacheLoader<String, T>() {
+                    @Override
+                    public CompletableFuture<T> asyncLoad(String id, Executor executor) {
+                        return loader.apply(id).toFuture();
+                    }
+
+                    @Override
+                    public CompletableFuture<Map<String, T>> asyncLoadAll(Iterable<? extends String> ids,
+                                                                         Executor executor) {
+                        List<String> misses = new ArrayList<>();
+                        ids.forEach(misses::add);
+                        return bulkLoader.apply(misses).collectMap(idOf).toFuture();
+                    }
+                });
+    }
+
+    public Mono<T> get(String id) {
+        return Mono.fromFuture(cache.get(id));
+    }
+
+    /**
+     * @return the entities found, keyed by id; ids that are not found have no entry
+     */
+    public Mono<Map<String, T>> getAll(Collection<String> ids) {
+        return Mono.fromFuture(cache.getAll(ids));
+    }
+
+    public void put(String id, T value) {
+        if (id != null) {
+            cache.put(id, CompletableFuture.completedFuture(value));
+        }
+    }
+
+    public void evict(String id) {
+        if (id != null) {
+            cache.synchronous().invalidate(id);
+        }
+    }
+
+    public void evictAll() {
+        cache.synchronous().invalidateAll();
+    }
+}
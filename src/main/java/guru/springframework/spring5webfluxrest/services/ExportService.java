@@ -0,0 +1,170 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import guru.springframework.spring5webfluxrest.config.ExportProperties;
+import guru.springframework.spring5webfluxrest.config.WorkSchedulers;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Periodically writes each collection to a gzipped NDJSON file so downloads are served
+ * from disk rather than a collection scan. A snapshot is written to a temporary file and
+ * moved over the previous one, so readers always see a complete file; downloads already
+ * in progress keep reading the file they opened.
+ */
+@Slf4j
+@Service
+public class ExportService {
+
+    public static final String VENDORS = "vendors";
+    public static final String CATEGORIES = "categories";
+    public static final String FILE_SUFFIX = ".ndjson.gz";
+
+    private static final Map<String, Class<?>> TYPES = new LinkedHashMap<>();
+
+    static {
+        TYPES.put(VENDORS, Vendor.class);
+        TYPES.put(CATEGORIES, Category.class);
+    }
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final ObjectMapper objectMapper;
+    private final ExportProperties exportProperties;
+    private final WorkSchedulers workSchedulers;
+    private Disposable schedule;
+
+    public ExportService(ReactiveMongoOperations mongoOperations, ObjectMapper objectMapper,
+                         ExportProperties exportProperties, WorkSchedulers workSchedulers) {
+        this.mongoOperations = mongoOperations;
+        this.objectMapper = objectMapper;
+        this.exportProperties = exportProperties;
+        this.workSchedulers = workSchedulers;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (exportProperties.isEnabled()) {
+            schedule = Flux.interval(exportProperties.getInitialDelay(), exportProperties.getInterval())
+                    .onBackpressureDrop()
+                    .concatMap(tick -> snapshotAll()
+                            .onErrorResume(e -> {
+                                log.warn("Export failed", e);
+                                return Mono.empty();
+                            }))
+                    .subscribe();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+        }
+    }
+
+    public static boolean exists(String name) {
+        return TYPES.containsKey(name);
+    }
+
+    public Mono<Void> snapshotAll() {
+        return Flux.fromIterable(TYPES.keySet())
+                .concatMap(this::snapshot)
+                .then();
+    }
+
+    public Mono<Path> snapshot(String name) {
+        Class<?> type = TYPES.get(name);
+        ObjectWriter writer = objectMapper.writerFor(type);
+        return Mono.defer(() -> {
+            Path temp = createTempFile(name);
+            return Mono.using(() -> new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))),
+                    out -> mongoOperations.findAll(type)
+                            .publishOn(workSchedulers.blocking())
+                            .doOnNext(entity -> writeLine(writer, out, entity))
+                            .count(),
+                    ExportService::close)
+                    .map(count -> {
+                        Path target = file(name);
+                        move(temp, target);
+                        log.info("Exported {} {} to {}", count, name, target);
+                        return target;
+                    })
+                    .doOnError(e -> delete(temp));
+        });
+    }
+
+    /**
+     * @return the latest complete snapshot, empty before the first one is written
+     */
+    public Optional<Path> current(String name) {
+        Path file = file(name);
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    private Path file(String name) {
+        return exportProperties.getDirectory().toPath().resolve(name + FILE_SUFFIX);
+    }
+
+    private Path createTempFile(String name) {
+        try {
+            Path directory = Files.createDirectories(exportProperties.getDirectory().toPath());
+            return Files.createTempFile(directory, name, ".tmp");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeLine(ObjectWriter writer, OutputStream out, Object entity) {
+        try {
+            out.write(writer.writeValueAsBytes(entity));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void move(Path source, Path target) {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void close(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete {}", file, e);
+        }
+    }
+}
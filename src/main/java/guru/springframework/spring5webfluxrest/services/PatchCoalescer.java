@@ -0,0 +1,347 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import guru.springframework.spring5webfluxrest.config.PatchCoalescingProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Write-behind for unconditional patches, enabled with {@code app.patch-coalescing.enabled}.
+ * Patches to the same document within a short window are merged field by field, later
+ * values winning as they would one findAndModify after the other, and the merged updates
+ * are sent as one unordered bulkWrite. A document patched hundreds of times a second then
+ * costs one write per window. Every patch in a batch answers with the document as read back
+ * after it, so they share a single version bump.
+ * <p>
+ * Batches are written one at a time in the order their documents were first patched, so a
+ * patch never overtakes an earlier one to the same document. While too many documents are
+ * pending, patches to other documents are written directly, and whatever is pending is
+ * written on shutdown.
+ */
+@Slf4j
+@Service
+public class PatchCoalescer implements ApplicationEventPublisherAware {
+
+    static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final PatchCoalescingProperties properties;
+    private final QueryMapper queryMapper;
+    private final UpdateMapper updateMapper;
+    private final LongAdder patches = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+    private ApplicationEventPublisher eventPublisher;
+
+    // guarded by this
+    private final Map<Key, Pending> pending = new LinkedHashMap<>();
+    private MonoProcessor<Void> inFlight;
+    private boolean scheduled;
+    private boolean closed;
+
+    public PatchCoalescer(ReactiveMongoOperations mongoOperations, PatchCoalescingProperties properties) {
+        this.mongoOperations = mongoOperations;
+        this.properties = properties;
+        this.queryMapper = new QueryMapper(mongoOperations.getConverter());
+        this.updateMapper = new UpdateMapper(mongoOperations.getConverter());
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Queues the changed fields of a patch to the document with the given id.
+     *
+     * @param fields the fields to $set, in their stored form
+     * @param direct writes the patch on its own, used while too many documents are pending
+     * @return the document after the batch with the patch was written, or empty when no
+     * document has the given id
+     */
+    public <T> Mono<T> patch(String id, Document fields, Class<T> type, Mono<T> direct) {
+        return Mono.defer(() -> {
+            Pending entry;
+            boolean full;
+            synchronized (this) {
+                entry = pending.get(new Key(type, id));
+                if (entry == null) {
+                    if (closed || pending.size() >= properties.getMaxPending()) {
+                        bypassed.increment();
+                        return direct;
+                    }
+                    entry = new Pending(type, id);
+                    pending.put(new Key(type, id), entry);
+                }
+                entry.fields.putAll(fields);
+                entry.patches++;
+
+                full = pending.size() >= properties.getBatchSize();
+                if (!full) {
+                    schedule();
+                }
+            }
+            if (full) {
+                flush();
+            }
+            return entry.result.cast(type);
+        });
+    }
+
+    /**
+     * Writes everything pending, waiting for at most {@link #SHUTDOWN_TIMEOUT}. Later
+     * patches are written directly.
+     */
+    @PreDestroy
+    public void close() {
+        long deadline = System.nanoTime() + SHUTDOWN_TIMEOUT.toNanos();
+        while (true) {
+            MonoProcessor<Void> current;
+            synchronized (this) {
+                closed = true;
+                if (inFlight == null && pending.isEmpty()) {
+                    return;
+                }
+                current = inFlight;
+            }
+            if (current == null) {
+                flush();
+                continue;
+            }
+            try {
+                current.block(Duration.ofNanos(Math.max(deadline - System.nanoTime(), 0)));
+            } catch (IllegalStateException e) {
+                synchronized (this) {
+                    log.warn("Gave up writing {} pending patches", pending.size());
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Registered globally: as a MeterBinder this would be needed by the registry before the
+     * Mongo client, whose command metrics need the registry.
+     */
+    @PostConstruct
+    public void bindMetrics() {
+        bindTo(Metrics.globalRegistry);
+    }
+
+    void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("patch.coalescing.patches", patches, LongAdder::sum)
+                .description("Patches written in batches").register(registry);
+        FunctionCounter.builder("patch.coalescing.writes", writes, LongAdder::sum)
+                .description("Document updates the batched patches were merged into").register(registry);
+        FunctionCounter.builder("patch.coalescing.batches", batches, LongAdder::sum)
+                .description("bulkWrites sent").register(registry);
+        FunctionCounter.builder("patch.coalescing.bypassed", bypassed, LongAdder::sum)
+                .description("Patches written directly while too many documents were pending").register(registry);
+        Gauge.builder("patch.coalescing.ratio", this, PatchCoalescer::ratio)
+                .description("Patches per document update").register(registry);
+        Gauge.builder("patch.coalescing.pending", this, PatchCoalescer::pendingCount)
+                .description("Documents with patches waiting to be written").register(registry);
+    }
+
+    private double ratio() {
+        long written = writes.sum();
+        return written == 0 ? Double.NaN : (double) patches.sum() / written;
+    }
+
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Starts the window unless one is running; a flush in progress starts it when done.
+     */
+    private void schedule() {
+        if (scheduled || inFlight != null) {
+            return;
+        }
+        scheduled = true;
+        Mono.delay(properties.getWindow()).subscribe(tick -> {
+            synchronized (this) {
+                scheduled = false;
+            }
+            flush();
+        });
+    }
+
+    private void flush() {
+        List<Pending> batch = new ArrayList<>();
+        MonoProcessor<Void> done = MonoProcessor.create();
+        synchronized (this) {
+            if (inFlight != null) {
+                return;
+            }
+            Iterator<Pending> entries = pending.values().iterator();
+            while (entries.hasNext() && batch.size() < properties.getBatchSize()) {
+                batch.add(entries.next());
+                entries.remove();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            inFlight = done;
+        }
+        write(batch).doFinally(signal -> flushed(done)).subscribe();
+    }
+
+    private void flushed(MonoProcessor<Void> done) {
+        boolean full;
+        synchronized (this) {
+            inFlight = null;
+            full = pending.size() >= properties.getBatchSize();
+            if (!full && !pending.isEmpty()) {
+                schedule();
+            }
+        }
+        done.onComplete();
+        if (full) {
+            flush();
+        }
+    }
+
+    private Mono<Void> write(List<Pending> batch) {
+        batches.increment();
+        writes.add(batch.size());
+        patches.add(batch.stream().mapToLong(entry -> entry.patches).sum());
+
+        Map<Class<?>, List<Pending>> byType = batch.stream()
+                .collect(Collectors.groupingBy(entry -> entry.type, LinkedHashMap::new, Collectors.toList()));
+        return Flux.fromIterable(byType.entrySet())
+                .concatMap(group -> write(group.getKey(), group.getValue()))
+                .then();
+    }
+
+    private Mono<Void> write(Class<?> type, List<Pending> entries) {
+        MongoPersistentEntity<?> entity = mongoOperations.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(type);
+        List<WriteModel<Document>> updates = entries.stream()
+                .map(entry -> new UpdateOneModel<Document>(
+                        queryMapper.getMappedObject(PatchService.changedQuery(entry.id, entry.fields).getQueryObject(), entity),
+                        updateMapper.getMappedObject(PatchService.update(entry.fields, entity).getUpdateObject(), entity)))
+                .collect(Collectors.toList());
+
+        return mongoOperations.execute(type, collection -> collection.bulkWrite(updates, UNORDERED))
+                .then(Mono.just(Collections.<Integer, BulkWriteError>emptyMap()))
+                .onErrorResume(e -> bulkWriteException(e) != null, e -> Mono.just(
+                        bulkWriteException(e).getWriteErrors().stream()
+                                .collect(Collectors.toMap(BulkWriteError::getIndex, error -> error))))
+                .flatMap(failed -> readBack(type, entity, entries, failed))
+                .onErrorResume(e -> {
+                    log.warn("Could not write {} patched {} documents: {}", entries.size(), type.getSimpleName(),
+                            e.getMessage());
+                    entries.forEach(entry -> entry.result.onError(e));
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Answers the patches with their documents as stored now, which includes the update
+     * when the document exists and any field differed.
+     */
+    private Mono<Void> readBack(Class<?> type, MongoPersistentEntity<?> entity, List<Pending> entries,
+                                Map<Integer, BulkWriteError> failed) {
+        List<String> ids = entries.stream().map(entry -> entry.id).collect(Collectors.toList());
+        return mongoOperations.find(query(where("_id").in(ids)), type)
+                .collectMap(document -> String.valueOf(entity.getIdentifierAccessor(document).getIdentifier()))
+                .doOnNext(found -> {
+                    for (int i = 0; i < entries.size(); i++) {
+                        Pending entry = entries.get(i);
+                        Object document = found.get(entry.id);
+                        if (failed.containsKey(i)) {
+                            entry.result.onError(new DataIntegrityViolationException(failed.get(i).getMessage()));
+                        } else if (document == null) {
+                            entry.result.onComplete();
+                        } else {
+                            publishSaved(document, entity.getCollection());
+                            entry.result.onNext(document);
+                        }
+                    }
+                })
+                .then();
+    }
+
+    private void publishSaved(Object patched, String collection) {
+        if (eventPublisher == null) {
+            return;
+        }
+        Document document = new Document();
+        mongoOperations.getConverter().write(patched, document);
+        eventPublisher.publishEvent(new AfterSaveEvent<>(patched, document, collection));
+    }
+
+    private static MongoBulkWriteException bulkWriteException(Throwable e) {
+        while (e != null && !(e instanceof MongoBulkWriteException)) {
+            e = e.getCause();
+        }
+        return (MongoBulkWriteException) e;
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Key {
+
+        private final Class<?> type;
+        private final String id;
+    }
+
+    /**
+     * The merged fields of the patches to one document and the answer they wait for.
+     */
+    @RequiredArgsConstructor
+    private static final class Pending {
+
+        private final Class<?> type;
+        private final String id;
+        private final Document fields = new Document();
+        private final MonoProcessor<Object> result = MonoProcessor.create();
+        private int patches;
+    }
+}
@@ -0,0 +1,163 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import org.bson.Document;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Applies partial updates in a single findAndModify. Only the non-null fields of the
+ * patch are $set, and the write is skipped when none of them differs from the stored
+ * document, so unchanged documents keep their version. Given expected versions, the
+ * write only applies to a document at one of them. Without, the write goes through the
+ * {@link PatchCoalescer} when coalescing is enabled.
+ * <p>
+ * findAndModify does not publish mapping events, so an {@link AfterSaveEvent} is
+ * published for each patched document like the template does for saves.
+ */
+@Service
+public class PatchService implements ApplicationEventPublisherAware {
+
+    private static final FindAndModifyOptions RETURN_NEW = FindAndModifyOptions.options().returnNew(true);
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final PatchCoalescer patchCoalescer;
+    private ApplicationEventPublisher eventPublisher;
+
+    public PatchService(ReactiveMongoOperations mongoOperations, PatchCoalescer patchCoalescer) {
+        this.mongoOperations = mongoOperations;
+        this.patchCoalescer = patchCoalescer;
+    }
+
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * @return the patched document, or empty when no document has the given id
+     */
+    public <T> Mono<T> patch(String id, T patch, Class<T> type) {
+        return patch(id, patch, type, null);
+    }
+
+    /**
+     * @param expectedVersions the versions the patch may apply to, null for any
+     * @return the patched document, or empty when no document has the given id; an
+     * {@link OptimisticLockingFailureException} when it is at another version
+     */
+    public <T> Mono<T> patch(String id, T patch, Class<T> type, Collection<Long> expectedVersions) {
+        return Mono.defer(() -> {
+            String version = versionField(type);
+            Collection<Long> expected = version == null ? null : expectedVersions;
+            Document fields = changedFields(patch, type);
+            if (fields.isEmpty()) {
+                return current(id, type, expected);
+            }
+
+            if (expected == null && patchCoalescer.isEnabled()) {
+                return patchCoalescer.patch(id, fields, type, Mono.defer(() -> write(id, fields, type, null)));
+            }
+            return write(id, fields, type, expected);
+        });
+    }
+
+    private <T> Mono<T> write(String id, Document fields, Class<T> type, Collection<Long> expected) {
+        Query query = changedQuery(id, fields);
+        if (expected != null) {
+            query.addCriteria(where(versionField(type)).in(expected));
+        }
+        return mongoOperations.findAndModify(query, update(fields, type), RETURN_NEW, type)
+                .doOnNext(this::publishSaved)
+                // nothing matched: every field already had the patched value, the version
+                // differs or the id is unknown
+                .switchIfEmpty(Mono.defer(() -> current(id, type, expected)));
+    }
+
+    /**
+     * The non-null fields of a patch in their stored form, without id and version.
+     */
+    public Document changedFields(Object patch, Class<?> type) {
+        Document fields = new Document();
+        mongoOperations.getConverter().write(patch, fields);
+        fields.remove("_id");
+        fields.remove("_class");
+
+        String version = versionField(type);
+        if (version != null) {
+            fields.remove(version);
+        }
+        return fields;
+    }
+
+    public Update update(Document fields, Class<?> type) {
+        return update(fields, mongoOperations.getConverter().getMappingContext().getRequiredPersistentEntity(type));
+    }
+
+    static Update update(Document fields, MongoPersistentEntity<?> entity) {
+        Update update = new Update();
+        fields.forEach(update::set);
+
+        if (entity.hasVersionProperty()) {
+            update.inc(entity.getRequiredVersionProperty().getFieldName(), 1);
+        }
+        return update;
+    }
+
+    private <T> Mono<T> current(String id, Class<T> type, Collection<Long> expected) {
+        Mono<T> current = mongoOperations.findById(id, type);
+        if (expected == null) {
+            return current;
+        }
+        return current.flatMap(document -> expected.contains(versionOf(document))
+                ? Mono.just(document)
+                : Mono.error(new OptimisticLockingFailureException(
+                        "Expected " + type.getSimpleName() + " " + id + " at version " + expected)));
+    }
+
+    private Object versionOf(Object document) {
+        MongoPersistentEntity<?> entity = mongoOperations.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(document.getClass());
+        return entity.getPropertyAccessor(document).getProperty(entity.getRequiredVersionProperty());
+    }
+
+    private void publishSaved(Object patched) {
+        if (eventPublisher == null) {
+            return;
+        }
+        Document document = new Document();
+        mongoOperations.getConverter().write(patched, document);
+        String collection = mongoOperations.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(patched.getClass()).getCollection();
+        eventPublisher.publishEvent(new AfterSaveEvent<>(patched, document, collection));
+    }
+
+    static Query changedQuery(String id, Document fields) {
+        List<Criteria> differs = fields.entrySet().stream()
+                .map(field -> where(field.getKey()).ne(field.getValue()))
+                .collect(Collectors.toList());
+
+        return Query.query(where("_id").is(id).orOperator(differs.toArray(new Criteria[0])));
+    }
+
+    private String versionField(Class<?> type) {
+        MongoPersistentEntity<?> entity = mongoOperations.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(type);
+        return entity.hasVersionProperty() ? entity.getRequiredVersionProperty().getFieldName() : null;
+    }
+}
@@ -0,0 +1,134 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.mongodb.client.model.changestream.OperationType;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.ChangeEvent;
+import guru.springframework.spring5webfluxrest.domain.SearchHit;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.domain.Versioned;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the {@link TypeaheadIndex} in step with Mongo: local writes arrive as mapping
+ * events, writes from other instances through change streams, and {@link #load()}
+ * fills the index from the collections at startup and again when changes were missed.
+ */
+@Slf4j
+@Component
+public class SearchIndexer extends AbstractMongoEventListener<Object> {
+
+    private static final Class<?>[] TYPES = {Vendor.class, Category.class};
+
+    private final TypeaheadIndex typeaheadIndex;
+    private final ReactiveMongoOperations mongoOperations;
+    private final ChangeStreamService changeStreamService;
+    private final Map<String, Class<?>> typesByCollection = new HashMap<>();
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    public SearchIndexer(TypeaheadIndex typeaheadIndex, ReactiveMongoOperations mongoOperations,
+                         ChangeStreamService changeStreamService) {
+        this.typeaheadIndex = typeaheadIndex;
+        this.mongoOperations = mongoOperations;
+        this.changeStreamService = changeStreamService;
+        for (Class<?> type : TYPES) {
+            typesByCollection.put(mongoOperations.getConverter().getMappingContext()
+                    .getRequiredPersistentEntity(type).getCollection(), type);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        for (Class<?> type : TYPES) {
+            subscriptions.add(changeStreamService.changes(type)
+                    .subscribe(event -> apply(type, event)));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.dispose();
+    }
+
+    /**
+     * @return the number of documents indexed
+     */
+    public Mono<Long> load() {
+        return Flux.fromArray(TYPES)
+                .flatMap(mongoOperations::findAll)
+                .doOnNext(this::index)
+                .count();
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Object> event) {
+        Class<?> type = typesByCollection.get(event.getCollectionName());
+        if (type == null) {
+            return;
+        }
+        index(type.isInstance(event.getSource())
+                ? event.getSource()
+                : mongoOperations.getConverter().read(type, event.getDocument()));
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Object> event) {
+        Class<?> type = typesByCollection.get(event.getCollectionName());
+        Object id = event.getDocument() == null ? null : event.getDocument().get("_id");
+        if (type != null && (id instanceof String || id instanceof ObjectId)) {
+            typeaheadIndex.remove(typeOf(type), id.toString());
+        }
+    }
+
+    private void apply(Class<?> type, ChangeEvent event) {
+        if (event.getOperation() == OperationType.INVALIDATE) {
+            reindex(type);
+        } else if (event.getOperation() == OperationType.DELETE) {
+            typeaheadIndex.remove(typeOf(type), event.getId());
+        } else if (event.getDocument() != null) {
+            index(mongoOperations.getConverter().read(type, event.getDocument()));
+        }
+    }
+
+    /**
+     * Indexes the collection again and removes what was indexed before but is no longer
+     * there, having been deleted while changes were missed.
+     */
+    private void reindex(Class<?> type) {
+        Mono.defer(() -> {
+            Set<String> stale = typeaheadIndex.ids(typeOf(type));
+            return mongoOperations.findAll(type)
+                    .doOnNext(this::index)
+                    .doOnNext(entity -> stale.remove(((Versioned) entity).getId()))
+                    .count()
+                    .doOnNext(count -> stale.forEach(id -> typeaheadIndex.remove(typeOf(type), id)));
+        }).subscribe(count -> log.info("Reindexed {} {} documents for typeahead", count, type.getSimpleName()),
+                e -> log.warn("Could not reindex {} documents: {}", type.getSimpleName(), e.getMessage()));
+    }
+
+    private void index(Object entity) {
+        SearchHit hit = SearchHit.of(entity);
+        if (hit != null) {
+            typeaheadIndex.index(hit, ((Versioned) entity).getVersion());
+        }
+    }
+
+    private static String typeOf(Class<?> type) {
+        return Vendor.class.equals(type) ? SearchHit.VENDOR : SearchHit.CATEGORY;
+    }
+}
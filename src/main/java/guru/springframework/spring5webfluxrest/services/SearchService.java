@@ -0,0 +1,60 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.SearchHit;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.Comparator;
+
+/**
+ * Relevance ranked search over the text indexes of both collections, and typeahead
+ * answered from the in-memory {@link TypeaheadIndex}.
+ */
+@Service
+public class SearchService {
+
+    private static final String SCORE_FIELD = "score";
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final TypeaheadIndex typeaheadIndex;
+
+    public SearchService(ReactiveMongoOperations mongoOperations, TypeaheadIndex typeaheadIndex) {
+        this.mongoOperations = mongoOperations;
+        this.typeaheadIndex = typeaheadIndex;
+    }
+
+    public Flux<SearchHit> text(String terms, int limit) {
+        return Flux.merge(text(Vendor.class, terms, limit), text(Category.class, terms, limit))
+                .sort(Comparator.comparing(SearchHit::getScore).reversed())
+                .take(limit);
+    }
+
+    public Flux<SearchHit> prefix(String prefix, int limit) {
+        return Flux.defer(() -> Flux.fromIterable(typeaheadIndex.search(prefix, limit)));
+    }
+
+    /**
+     * Reads raw documents so the score can be taken without a score field on the entity.
+     */
+    private Flux<SearchHit> text(Class<?> type, String terms, int limit) {
+        TextQuery query = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(terms))
+                .includeScore(SCORE_FIELD)
+                .sortByScore();
+        query.limit(limit);
+        String collection = mongoOperations.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(type).getCollection();
+
+        return mongoOperations.find(query, Document.class, collection)
+                .map(document -> {
+                    SearchHit hit = SearchHit.of(mongoOperations.getConverter().read(type, document));
+                    hit.setScore(document.get(SCORE_FIELD, Number.class).doubleValue());
+                    return hit;
+                });
+    }
+}
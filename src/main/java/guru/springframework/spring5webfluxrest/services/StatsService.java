@@ -0,0 +1,396 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.mongodb.client.model.changestream.OperationType;
+import guru.springframework.spring5webfluxrest.config.StatsProperties;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.ChangeEvent;
+import guru.springframework.spring5webfluxrest.domain.Stats;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.UnicastProcessor;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Counters behind {@code /api/v1/stats}, so reading them never scans a collection.
+ * {@link #load()} fills them with one {@code $facet} aggregation grouped in Mongo, so only
+ * the groups leave the server, and inserts move them directly after that.
+ * <p>
+ * Update and delete events do not carry the previous last name or categories, and no
+ * per-vendor state is kept to look them up, so they only move the totals and have the
+ * aggregation run again after {@code app.stats.recount-delay}, once for a burst of writes.
+ * A recount during which events arrived runs once more, so the counters settle when the
+ * writes do. Events come from the change stream when it is enabled, as it delivers this
+ * instance's writes too, and from the mapping events otherwise, so each write counts once.
+ */
+@Slf4j
+@Component
+public class StatsService extends AbstractMongoEventListener<Object> {
+
+    public static final String OTHER_INITIAL = "#";
+    public static final String UNKNOWN_CREATED = "unknown";
+
+    private static final String COUNT = "count";
+    private static final String TOTAL = "total";
+    private static final String INITIALS = "initials";
+    private static final String CREATED = "created";
+    private static final String CATEGORIES = "categories";
+    private static final int OBJECT_ID_TYPE = 7;
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM").withZone(ZoneOffset.UTC);
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final ChangeStreamService changeStreamService;
+    private final StatsProperties statsProperties;
+    private final String vendorCollection;
+    private final String categoryCollection;
+    private volatile Counters counters = new Counters();
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicBoolean recountRequested = new AtomicBoolean();
+    private final UnicastProcessor<Boolean> recounts = UnicastProcessor.create();
+    private final FluxSink<Boolean> recountSink = recounts.sink();
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    public StatsService(ReactiveMongoOperations mongoOperations, ChangeStreamService changeStreamService,
+                        StatsProperties statsProperties) {
+        this.mongoOperations = mongoOperations;
+        this.changeStreamService = changeStreamService;
+        this.statsProperties = statsProperties;
+        this.vendorCollection = mongoOperations.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(Vendor.class).getCollection();
+        this.categoryCollection = mongoOperations.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(Category.class).getCollection();
+    }
+
+    @PostConstruct
+    public void start() {
+        subscriptions.add(recounts
+                .concatMap(request -> {
+                    Mono<Long> recount = Mono.defer(() -> {
+                        recountRequested.set(false);
+                        return recount();
+                    });
+                    return (statsProperties.getRecountDelay().isZero()
+                            ? recount
+                            : Mono.delay(statsProperties.getRecountDelay()).then(recount))
+                            .onErrorResume(e -> {
+                                log.warn("Could not recount stats: {}", e.getMessage());
+                                return Mono.empty();
+                            });
+                })
+                .subscribe(count -> log.debug("Recounted {} documents for stats", count)));
+        subscriptions.add(changeStreamService.changes(Vendor.class).subscribe(this::applyVendor));
+        subscriptions.add(changeStreamService.changes(Category.class).subscribe(this::applyCategory));
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.dispose();
+    }
+
+    /**
+     * @return the number of documents counted
+     */
+    public Mono<Long> load() {
+        return recount();
+    }
+
+    public Stats snapshot() {
+        Counters current = counters;
+        return Stats.builder()
+                .vendors(current.vendors.get())
+                .categories(current.categories.get())
+                .vendorsByInitial(new TreeMap<>(current.byInitial))
+                .vendorsByCreated(new TreeMap<>(current.byCreated))
+                .vendorsByCategory(new TreeMap<>(current.byCategory))
+                .build();
+    }
+
+    /**
+     * Inserts are told apart from updates by their version, which starts at 0.
+     */
+    @Override
+    public void onAfterSave(AfterSaveEvent<Object> event) {
+        if (changeStreamService.isEnabled()) {
+            return;
+        }
+        if (vendorCollection.equals(event.getCollectionName())) {
+            Vendor vendor = event.getSource() instanceof Vendor
+                    ? (Vendor) event.getSource()
+                    : mongoOperations.getConverter().read(Vendor.class, event.getDocument());
+            if (isInsert(vendor.getVersion())) {
+                vendorInserted(vendor.getId(), vendor.getLastName(), vendor.getCategoryIds());
+            } else {
+                vendorChanged();
+            }
+        } else if (categoryCollection.equals(event.getCollectionName())) {
+            Long version = event.getSource() instanceof Category
+                    ? ((Category) event.getSource()).getVersion()
+                    : event.getDocument() == null ? null : event.getDocument().getLong("version");
+            if (isInsert(version)) {
+                categoryInserted();
+            }
+        }
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Object> event) {
+        Object id = event.getDocument() == null ? null : event.getDocument().get("_id");
+        if (changeStreamService.isEnabled() || !(id instanceof String || id instanceof ObjectId)) {
+            return;
+        }
+        if (vendorCollection.equals(event.getCollectionName())) {
+            vendorDeleted();
+        } else if (categoryCollection.equals(event.getCollectionName())) {
+            categoryDeleted();
+        }
+    }
+
+    private void applyVendor(ChangeEvent event) {
+        if (event.getOperation() == OperationType.INVALIDATE) {
+            requestRecount();
+        } else if (event.getOperation() == OperationType.DELETE) {
+            vendorDeleted();
+        } else if (event.getOperation() == OperationType.INSERT && event.getDocument() != null) {
+            vendorInserted(event.getId(), event.getDocument().getString("lastName"),
+                    categoryIdsOf(event.getDocument()));
+        } else {
+            vendorChanged();
+        }
+    }
+
+    private void applyCategory(ChangeEvent event) {
+        if (event.getOperation() == OperationType.INVALIDATE) {
+            requestRecount();
+        } else if (event.getOperation() == OperationType.DELETE) {
+            categoryDeleted();
+        } else if (event.getOperation() == OperationType.INSERT) {
+            categoryInserted();
+        }
+    }
+
+    private void vendorInserted(String id, String lastName, List<String> categoryIds) {
+        if (id == null) {
+            return;
+        }
+        changes.incrementAndGet();
+        Counters current = counters;
+        current.vendors.incrementAndGet();
+        add(current.byInitial, initialOf(lastName), 1);
+        add(current.byCreated, createdOf(id), 1);
+        Set<String> categories = categoryIds == null ? Collections.emptySet() : new LinkedHashSet<>(categoryIds);
+        categories.remove(null);
+        categories.forEach(categoryId -> add(current.byCategory, categoryId, 1));
+    }
+
+    private void vendorChanged() {
+        changes.incrementAndGet();
+        requestRecount();
+    }
+
+    private void vendorDeleted() {
+        changes.incrementAndGet();
+        counters.vendors.decrementAndGet();
+        requestRecount();
+    }
+
+    private void categoryInserted() {
+        changes.incrementAndGet();
+        counters.categories.incrementAndGet();
+    }
+
+    private void categoryDeleted() {
+        changes.incrementAndGet();
+        counters.categories.decrementAndGet();
+        requestRecount();
+    }
+
+    /**
+     * Requests made while one is waiting are merged into it.
+     */
+    private void requestRecount() {
+        if (recountRequested.compareAndSet(false, true)) {
+            recountSink.next(true);
+        }
+    }
+
+    /**
+     * Replaces the counters with those counted in Mongo, and asks for another recount when
+     * events moved the old ones meanwhile, as the aggregation may have missed those writes.
+     */
+    private Mono<Long> recount() {
+        return Mono.defer(() -> {
+            long seen = changes.get();
+            return count().map(counted -> {
+                counters = counted;
+                if (changes.get() != seen) {
+                    requestRecount();
+                }
+                return counted.vendors.get() + counted.categories.get();
+            });
+        });
+    }
+
+    private Mono<Counters> count() {
+        Query earliest = query(where("_id").type(OBJECT_ID_TYPE)).with(Sort.by("_id")).limit(1);
+        earliest.fields().include("_id");
+
+        return mongoOperations.findOne(earliest, Document.class, vendorCollection)
+                .map(first -> Optional.of(first.getObjectId("_id")))
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(first -> Mono.zip(
+                        mongoOperations.aggregate(newAggregation(facet(first.orElse(null))), vendorCollection,
+                                Document.class).next().defaultIfEmpty(new Document()),
+                        mongoOperations.count(new Query(), categoryCollection)))
+                .map(counted -> counters(counted.getT1(), counted.getT2()));
+    }
+
+    /**
+     * Groups the vendors by initial, creation month and category in one pass. Months are
+     * buckets of ObjectIds starting at each month, from the oldest ObjectId on; other ids
+     * fall in the default bucket. Each category counts once per vendor.
+     */
+    static AggregationOperation facet(ObjectId earliest) {
+        Document created = earliest == null
+                ? group(UNKNOWN_CREATED)
+                : new Document("$bucket", new Document("groupBy", "$_id")
+                        .append("boundaries", monthsSince(earliest))
+                        .append("default", UNKNOWN_CREATED)
+                        .append("output", new Document(COUNT, new Document("$sum", 1))));
+        Document facets = new Document()
+                .append(TOTAL, Collections.singletonList(new Document("$count", COUNT)))
+                .append(INITIALS, Collections.singletonList(group(new Document("$toUpper", new Document("$substrCP",
+                        Arrays.asList(new Document("$ifNull", Arrays.asList("$lastName", "")), 0, 1))))))
+                .append(CREATED, Collections.singletonList(created))
+                .append(CATEGORIES, Arrays.asList(
+                        new Document("$unwind", "$categoryIds"),
+                        new Document("$group", new Document("_id",
+                                new Document("category", "$categoryIds").append("vendor", "$_id"))),
+                        group("$_id.category")));
+        return context -> new Document("$facet", facets);
+    }
+
+    private static Document group(Object key) {
+        return new Document("$group", new Document("_id", key).append(COUNT, new Document("$sum", 1)));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static List<ObjectId> monthsSince(ObjectId earliest) {
+        List<ObjectId> boundaries = new ArrayList<>();
+        YearMonth last = YearMonth.now(ZoneOffset.UTC).plusMonths(1);
+        for (YearMonth month = YearMonth.from(earliest.getDate().toInstant().atZone(ZoneOffset.UTC));
+             !month.isAfter(last); month = month.plusMonths(1)) {
+            boundaries.add(new ObjectId(Date.from(month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant()),
+                    0, (short) 0, 0));
+        }
+        return boundaries;
+    }
+
+    private static Counters counters(Document facets, long categories) {
+        Counters counted = new Counters();
+        counted.categories.set(categories);
+        for (Document row : rows(facets, TOTAL)) {
+            counted.vendors.set(countOf(row));
+        }
+        for (Document row : rows(facets, INITIALS)) {
+            add(counted.byInitial, initialOf(Objects.toString(row.get("_id"), null)), countOf(row));
+        }
+        for (Document row : rows(facets, CREATED)) {
+            Object month = row.get("_id");
+            add(counted.byCreated, month instanceof ObjectId
+                    ? MONTH.format(((ObjectId) month).getDate().toInstant())
+                    : UNKNOWN_CREATED, countOf(row));
+        }
+        for (Document row : rows(facets, CATEGORIES)) {
+            if (row.get("_id") != null) {
+                add(counted.byCategory, row.get("_id").toString(), countOf(row));
+            }
+        }
+        return counted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Document> rows(Document facets, String facet) {
+        Object rows = facets.get(facet);
+        return rows instanceof List ? (List<Document>) rows : Collections.emptyList();
+    }
+
+    private static long countOf(Document row) {
+        return ((Number) row.get(COUNT)).longValue();
+    }
+
+    private static void add(Map<String, Long> counts, String key, long delta) {
+        counts.merge(key, delta, (count, change) -> count + change == 0 ? null : count + change);
+    }
+
+    private static boolean isInsert(Long version) {
+        return version == null || version == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> categoryIdsOf(Document document) {
+        Object categoryIds = document.get("categoryIds");
+        return categoryIds instanceof List ? (List<String>) categoryIds : null;
+    }
+
+    static String initialOf(String lastName) {
+        if (lastName == null || lastName.isEmpty()) {
+            return OTHER_INITIAL;
+        }
+        int first = lastName.codePointAt(0);
+        return Character.isLetter(first)
+                ? new String(Character.toChars(Character.toUpperCase(first)))
+                : OTHER_INITIAL;
+    }
+
+    static String createdOf(String id) {
+        return ObjectId.isValid(id) ? MONTH.format(new ObjectId(id).getDate().toInstant()) : UNKNOWN_CREATED;
+    }
+
+    /**
+     * The figures, replaced as a whole by a recount.
+     */
+    private static final class Counters {
+
+        private final AtomicLong vendors = new AtomicLong();
+        private final AtomicLong categories = new AtomicLong();
+        private final Map<String, Long> byInitial = new ConcurrentHashMap<>();
+        private final Map<String, Long> byCreated = new ConcurrentHashMap<>();
+        private final Map<String, Long> byCategory = new ConcurrentHashMap<>();
+    }
+}
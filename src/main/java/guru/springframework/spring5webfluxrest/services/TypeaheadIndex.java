@@ -0,0 +1,145 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import guru.springframework.spring5webfluxrest.domain.SearchHit;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory prefix index for typeahead. Every word-boundary suffix of a hit's text is
+ * a key in a sorted map, so a prefix lookup is one range scan and never touches Mongo.
+ * <p>
+ * Entries carry the document version; an update older than the indexed one is ignored,
+ * so the startup load and concurrent write events can arrive in any order. A removal leaves
+ * a tombstone with the version removed for a while, so a load that read the document
+ * before it was deleted, or an insert event delivered late, does not bring it back.
+ */
+@Component
+public class TypeaheadIndex {
+
+    private static final char SEPARATOR = '\u0000';
+    private static final Duration TOMBSTONE_TTL = Duration.ofMinutes(10);
+
+    private final ConcurrentSkipListMap<String, SearchHit> terms = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Cache<String, Long> tombstones = Caffeine.newBuilder()
+            .expireAfterWrite(TOMBSTONE_TTL)
+            .build();
+
+    public void index(SearchHit hit, Long version) {
+        if (hit == null || hit.getId() == null) {
+            return;
+        }
+        entries.compute(key(hit.getType(), hit.getId()), (key, current) -> {
+            if (current != null && current.version != null && version != null && current.version > version) {
+                return current;
+            }
+            Long removed = tombstones.getIfPresent(key);
+            if (removed != null && (version == null || version <= removed)) {
+                return current;
+            }
+            tombstones.invalidate(key);
+            if (current != null) {
+                current.terms.forEach(terms::remove);
+            }
+            List<String> added = new ArrayList<>();
+            for (String term : suffixes(hit.getText())) {
+                String termKey = term + SEPARATOR + key;
+                terms.put(termKey, hit);
+                added.add(termKey);
+            }
+            return new Entry(version, added);
+        });
+    }
+
+    /**
+     * Versions up to the one removed are ignored from now on; when no version was indexed,
+     * every version is, until the tombstone expires.
+     */
+    public void remove(String type, String id) {
+        if (id == null) {
+            return;
+        }
+        entries.compute(key(type, id), (key, current) -> {
+            if (current != null) {
+                current.terms.forEach(terms::remove);
+            }
+            tombstones.put(key, current == null || current.version == null ? Long.MAX_VALUE : current.version);
+            return null;
+        });
+    }
+
+    public List<SearchHit> search(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        if (normalized.isEmpty()) {
+            return Collections.emptyList();
+        }
+        ConcurrentNavigableMap<String, SearchHit> matches =
+                terms.subMap(normalized, true, normalized + Character.MAX_VALUE, false);
+
+        Map<String, SearchHit> hits = new LinkedHashMap<>();
+        for (SearchHit hit : matches.values()) {
+            hits.putIfAbsent(key(hit.getType(), hit.getId()), hit);
+            if (hits.size() >= limit) {
+                break;
+            }
+        }
+        return new ArrayList<>(hits.values());
+    }
+
+    /**
+     * @return the ids of the indexed documents of the type, as a copy
+     */
+    public Set<String> ids(String type) {
+        String prefix = key(type, "");
+        Set<String> ids = new HashSet<>();
+        for (String key : entries.keySet()) {
+            if (key.startsWith(prefix)) {
+                ids.add(key.substring(prefix.length()));
+            }
+        }
+        return ids;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    static List<String> suffixes(String text) {
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String[] words = normalized.split("\\s+");
+        List<String> suffixes = new ArrayList<>(words.length);
+        for (int i = 0; i < words.length; i++) {
+            suffixes.add(String.join(" ", Arrays.asList(words).subList(i, words.length)));
+        }
+        return suffixes;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String key(String type, String id) {
+        return type + ':' + id;
+    }
+
+    private static final class Entry {
+
+        private final Long version;
+        private final List<String> terms;
+
+        private Entry(Long version, List<String> terms) {
+            this.version = version;
+            this.terms = terms;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.mongodb.client.model.changestream.OperationType;
+import guru.springframework.spring5webfluxrest.config.VendorViewProperties;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.CategoryRef;
+import guru.springframework.spring5webfluxrest.domain.ChangeEvent;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.domain.VendorView;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.publisher.Signal;
+import reactor.core.publisher.UnicastProcessor;
+import reactor.util.concurrent.Queues;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Keeps the {@link VendorView} read model current. A vendor write rebuilds its view with
+ * the descriptions of its categories, and a category write updates the description in
+ * every view embedding it, so reading a view is a single document fetch. A new category
+ * rebuilds the views of the vendors already referencing it, which left it out.
+ * <p>
+ * Writes come from the change stream when it is enabled, as it delivers this instance's
+ * writes too, and from the local mapping events otherwise, so each is applied once. They
+ * are applied off the request, one at a time in the order they arrive, so a vendor rebuilt
+ * while one of its categories is renamed ends up with the new description. Views only move
+ * forward in version, which keeps instances from undoing each other.
+ * <p>
+ * Each vendor has at most one queued task, which applies its latest write, and at most
+ * {@code app.vendor-views.max-pending} vendors are queued. Writes past that, such as those
+ * of a large seed, are left to a single pass over the vendor cursor queued behind them,
+ * like the one at startup. When the change stream reports missed changes, every view is
+ * rebuilt.
+ */
+@Slf4j
+@Component
+public class VendorViewProjector extends AbstractMongoEventListener<Object> {
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final ChangeStreamService changeStreamService;
+    private final VendorViewProperties vendorViewProperties;
+    private final String vendorCollection;
+    private final String categoryCollection;
+    private final UnicastProcessor<Mono<Void>> tasks = UnicastProcessor.create(Queues.<Mono<Void>>unbounded().get());
+    private final FluxSink<Mono<Void>> taskSink = tasks.sink();
+    private final Map<String, Mono<Void>> pendingVendors = new ConcurrentHashMap<>();
+    private final AtomicBoolean behind = new AtomicBoolean();
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    public VendorViewProjector(ReactiveMongoOperations mongoOperations, ChangeStreamService changeStreamService,
+                               VendorViewProperties vendorViewProperties) {
+        this.mongoOperations = mongoOperations;
+        this.changeStreamService = changeStreamService;
+        this.vendorViewProperties = vendorViewProperties;
+        this.vendorCollection = mongoOperations.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(Vendor.class).getCollection();
+        this.categoryCollection = mongoOperations.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(Category.class).getCollection();
+    }
+
+    @PostConstruct
+    public void start() {
+        subscriptions.add(tasks
+                .concatMap(VendorViewProjector::warnOnError)
+                .subscribe());
+        subscriptions.add(changeStreamService.changes(Vendor.class).subscribe(this::applyVendor));
+        subscriptions.add(changeStreamService.changes(Category.class).subscribe(this::applyCategory));
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.dispose();
+    }
+
+    /**
+     * Rebuilds every view that is missing or older than its vendor, such as those of
+     * vendors written before the read model existed, and removes those of deleted vendors.
+     *
+     * @return the number of views rebuilt, once they have been
+     */
+    public Mono<Long> load() {
+        return enqueue(catchUp());
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Object> event) {
+        if (changeStreamService.isEnabled()) {
+            return;
+        }
+        if (vendorCollection.equals(event.getCollectionName())) {
+            Vendor vendor = event.getSource() instanceof Vendor
+                    ? (Vendor) event.getSource()
+                    : mongoOperations.getConverter().read(Vendor.class, event.getDocument());
+            submitVendor(vendor.getId(), rebuild(vendor));
+        } else if (categoryCollection.equals(event.getCollectionName())) {
+            submit(describe(event.getSource() instanceof Category
+                    ? (Category) event.getSource()
+                    : mongoOperations.getConverter().read(Category.class, event.getDocument())));
+        }
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Object> event) {
+        Object id = event.getDocument() == null ? null : event.getDocument().get("_id");
+        if (changeStreamService.isEnabled() || !(id instanceof String || id instanceof ObjectId)) {
+            return;
+        }
+        if (vendorCollection.equals(event.getCollectionName())) {
+            submitVendor(id.toString(), removeVendor(id.toString()));
+        } else if (categoryCollection.equals(event.getCollectionName())) {
+            submit(removeCategory(id.toString()));
+        }
+    }
+
+    private void applyVendor(ChangeEvent event) {
+        if (event.getOperation() == OperationType.INVALIDATE) {
+            resync();
+        } else if (event.getOperation() == OperationType.DELETE) {
+            submitVendor(event.getId(), removeVendor(event.getId()));
+        } else if (event.getDocument() != null) {
+            Vendor vendor = mongoOperations.getConverter().read(Vendor.class, event.getDocument());
+            submitVendor(vendor.getId(), rebuild(vendor));
+        }
+    }
+
+    private void applyCategory(ChangeEvent event) {
+        if (event.getOperation() == OperationType.INVALIDATE) {
+            resync();
+        } else if (event.getOperation() == OperationType.DELETE) {
+            submit(removeCategory(event.getId()));
+        } else if (event.getDocument() != null) {
+            submit(describe(mongoOperations.getConverter().read(Category.class, event.getDocument())));
+        }
+    }
+
+    /**
+     * Rebuilds every view and removes those of vendors deleted since, as missed category
+     * changes leave the vendor versions as they were.
+     */
+    private void resync() {
+        Query ids = new Query();
+        ids.fields().include("_id");
+
+        enqueue(mongoOperations.find(ids, VendorView.class)
+                .map(VendorView::getId)
+                .collect(Collectors.toSet())
+                .flatMap(stale -> mongoOperations.findAll(Vendor.class)
+                        .doOnNext(vendor -> stale.remove(vendor.getId()))
+                        .concatMap(vendor -> warnOnError(rebuild(vendor)).thenReturn(vendor))
+                        .count()
+                        .flatMap(count -> Flux.fromIterable(stale)
+                                .concatMap(id -> warnOnError(removeVendor(id)))
+                                .then(Mono.just(count)))))
+                .subscribe(count -> log.info("Rebuilt {} vendor views", count),
+                        e -> log.warn("Could not resync vendor views: {}", e.getMessage()));
+    }
+
+    /**
+     * Walks the vendor cursor once, as a single task, rebuilding the views that are missing
+     * or outdated and then removing those left without a vendor.
+     */
+    private Mono<Long> catchUp() {
+        Query versions = new Query();
+        versions.fields().include("version");
+
+        return mongoOperations.find(versions, VendorView.class)
+                .collectMap(VendorView::getId, VendorView::getVersion, HashMap::new)
+                .flatMap(projected -> mongoOperations.findAll(Vendor.class)
+                        .filter(vendor -> !Objects.equals(projected.remove(vendor.getId()), versionOf(vendor.getVersion())))
+                        .concatMap(vendor -> warnOnError(rebuild(vendor)).thenReturn(vendor))
+                        .count()
+                        .flatMap(count -> Flux.fromIterable(projected.keySet())
+                                .concatMap(id -> warnOnError(removeVendor(id)))
+                                .then(Mono.just(count))));
+    }
+
+    /**
+     * Replaces the vendor's pending task, or queues one when there is none. Once too many
+     * vendors are pending the write is dropped and a catch-up pass is queued instead, unless
+     * one is already waiting.
+     */
+    private void submitVendor(String id, Mono<Void> task) {
+        if (id == null) {
+            return;
+        }
+        if (pendingVendors.size() >= vendorViewProperties.getMaxPending() && !pendingVendors.containsKey(id)) {
+            if (behind.compareAndSet(false, true)) {
+                submit(Mono.defer(() -> {
+                    behind.set(false);
+                    return catchUp();
+                }).doOnNext(count -> log.info("Caught up with {} vendor views", count)).then());
+            }
+            return;
+        }
+        if (pendingVendors.put(id, task) == null) {
+            submit(Mono.defer(() -> {
+                Mono<Void> latest = pendingVendors.remove(id);
+                return latest == null ? Mono.<Void>empty() : latest;
+            }));
+        }
+    }
+
+    private void submit(Mono<Void> task) {
+        taskSink.next(task);
+    }
+
+    /**
+     * Queues the task like any other and answers with its outcome once it has run.
+     */
+    private <T> Mono<T> enqueue(Mono<T> task) {
+        return Mono.defer(() -> {
+            MonoProcessor<Signal<T>> outcome = MonoProcessor.create();
+            submit(task.materialize().doOnNext(outcome::onNext).then());
+            return outcome.dematerialize();
+        });
+    }
+
+    private static Mono<Void> warnOnError(Mono<Void> task) {
+        return task.onErrorResume(e -> {
+            log.warn("Could not update vendor views: {}", e.getMessage());
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Replaces the view unless it already has a newer version of the vendor. The upsert
+     * then finds no match and its insert fails on the id, which is the expected outcome.
+     */
+    Mono<Void> rebuild(Vendor vendor) {
+        if (vendor.getId() == null) {
+            return Mono.empty();
+        }
+        List<String> categoryIds = vendor.getCategoryIds() == null
+                ? Collections.emptyList()
+                : vendor.getCategoryIds().stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        Mono<Map<String, Category>> categories = categoryIds.isEmpty()
+                ? Mono.just(Collections.emptyMap())
+                : mongoOperations.find(query(where("_id").in(categoryIds)), Category.class).collectMap(Category::getId);
+
+        return categories
+                .flatMap(found -> {
+                    long version = versionOf(vendor.getVersion());
+                    Update update = new Update()
+                            .set("fistName", vendor.getFistName())
+                            .set("lastName", vendor.getLastName())
+                            .set("categories", refs(categoryIds, found))
+                            .set("version", version);
+                    return mongoOperations.upsert(query(where("_id").is(vendor.getId()).and("version").lte(version)),
+                            update, VendorView.class);
+                })
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.empty())
+                .then();
+    }
+
+    /**
+     * A category at its first version has just been inserted, so no view embeds it yet.
+     */
+    Mono<Void> describe(Category category) {
+        if (category.getId() == null) {
+            return Mono.empty();
+        }
+        long version = versionOf(category.getVersion());
+        if (version == 0) {
+            return mongoOperations.find(query(where("categoryIds").is(category.getId())), Vendor.class)
+                    .concatMap(this::rebuild)
+                    .then();
+        }
+        Query stale = query(where("categories").elemMatch(where("id").is(category.getId()).and("version").lt(version)));
+        Update update = new Update()
+                .set("categories.$.description", category.getDescription())
+                .set("categories.$.version", version);
+        return mongoOperations.updateMulti(stale, update, VendorView.class).then();
+    }
+
+    Mono<Void> removeVendor(String id) {
+        return mongoOperations.remove(query(where("_id").is(id)), VendorView.class).then();
+    }
+
+    Mono<Void> removeCategory(String id) {
+        return mongoOperations.updateMulti(query(where("categories.id").is(id)),
+                new Update().pull("categories", new Document("id", id)), VendorView.class).then();
+    }
+
+    static List<CategoryRef> refs(List<String> categoryIds, Map<String, Category> found) {
+        return categoryIds.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .map(category -> CategoryRef.builder()
+                        .id(category.getId())
+                        .description(category.getDescription())
+                        .version(versionOf(category.getVersion()))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    private static long versionOf(Long version) {
+        return version == null ? 0 : version;
+    }
+}
@@ -0,0 +1,97 @@
+package guru.springframework.spring5webfluxrest.bootstrap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.springframework.spring5webfluxrest.config.ExecutionProperties;
+import guru.springframework.spring5webfluxrest.config.SeedProperties;
+import guru.springframework.spring5webfluxrest.config.WorkSchedulers;
+import guru.springframework.spring5webfluxrest.domain.BulkInsertResult;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.services.BulkInsertService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+
+public class SeedLoaderTest {
+
+    private ReactiveMongoOperations mongoOperations;
+    private BulkInsertService bulkInsertService;
+    private SeedProperties seedProperties;
+    private WorkSchedulers workSchedulers;
+    private SeedLoader seedLoader;
+
+    @Before
+    public void setUp() {
+        mongoOperations = Mockito.mock(ReactiveMongoOperations.class);
+        bulkInsertService = Mockito.mock(BulkInsertService.class);
+        seedProperties = new SeedProperties();
+        workSchedulers = new WorkSchedulers(new ExecutionProperties());
+        seedLoader = new SeedLoader(mongoOperations, bulkInsertService, seedProperties, new ObjectMapper(), workSchedulers);
+    }
+
+    @After
+    public void tearDown() {
+        workSchedulers.destroy();
+    }
+
+    @Test
+    public void readsNdjson() {
+        StepVerifier.create(seedLoader.read(resource("{\"fistName\":\"Joe\"}\n{\"fistName\":\"Bill\"}\n"), Vendor.class))
+                .expectNextMatches(vendor -> "Joe".equals(vendor.getFistName()))
+                .expectNextMatches(vendor -> "Bill".equals(vendor.getFistName()))
+                .verifyComplete();
+    }
+
+    @Test
+    public void readsJsonArray() {
+        StepVerifier.create(seedLoader.read(resource("[{\"description\":\"Nuts\"}, {\"description\":\"Eggs\"}]"), Category.class))
+                .expectNextMatches(category -> "Nuts".equals(category.getDescription()))
+                .expectNextMatches(category -> "Eggs".equals(category.getDescription()))
+                .verifyComplete();
+    }
+
+    @Test
+    public void seedsOnlyEmptyCollections() {
+        seedProperties.setCategories(resource("{\"description\":\"Nuts\"}"));
+        seedProperties.setVendors(resource("{\"fistName\":\"Joe\"}"));
+        given(mongoOperations.count(any(Query.class), eq(Category.class))).willReturn(Mono.just(0L));
+        given(mongoOperations.count(any(Query.class), eq(Vendor.class))).willReturn(Mono.just(5L));
+        given(bulkInsertService.insert(any(), eq(Category.class)))
+                .willAnswer(invocation -> invocation.<Flux<Category>>getArgument(0).count()
+                        .map(count -> BulkInsertResult.builder().inserted(count).build()));
+
+        StepVerifier.create(seedLoader.task()).verifyComplete();
+
+        assertEquals(1, seedLoader.getResults().get("Category").getInserted());
+        then(bulkInsertService).should(Mockito.never()).insert(any(), eq(Vendor.class));
+    }
+
+    @Test
+    public void malformedFileFails() {
+        seedProperties.setCategories(resource("{\"description\":"));
+        given(mongoOperations.count(any(Query.class), eq(Category.class))).willReturn(Mono.just(0L));
+        given(bulkInsertService.insert(any(), eq(Category.class)))
+                .willAnswer(invocation -> invocation.<Flux<Category>>getArgument(0).then(Mono.empty()));
+
+        StepVerifier.create(seedLoader.task()).verifyError();
+    }
+
+    private static ByteArrayResource resource(String content) {
+        return new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
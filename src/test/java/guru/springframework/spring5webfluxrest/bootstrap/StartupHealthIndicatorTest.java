@@ -0,0 +1,55 @@
+package guru.springframework.spring5webfluxrest.bootstrap;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class StartupHealthIndicatorTest {
+
+    @Test
+    public void outOfServiceUntilEveryTaskCompletes() throws Exception {
+        MonoProcessor<Void> slow = MonoProcessor.create();
+        StartupTask done = task("done", Mono.empty());
+        StartupTask running = task("running", slow);
+        StartupHealthIndicator indicator = new StartupHealthIndicator(Arrays.asList(done, running));
+        done.run();
+        running.run();
+
+        Health health = indicator.health();
+        assertEquals(Status.OUT_OF_SERVICE, health.getStatus());
+        assertEquals(StartupTask.State.COMPLETE, health.getDetails().get(done.getName()));
+
+        slow.onComplete();
+        assertEquals(Status.UP, indicator.health().getStatus());
+    }
+
+    @Test
+    public void downOnceATaskFails() throws Exception {
+        StartupTask failing = task("failing", Mono.error(new IllegalStateException("no Mongo")));
+        failing.run();
+
+        Health health = new StartupHealthIndicator(Arrays.asList(failing, task("running", Mono.never()))).health();
+        assertEquals(Status.DOWN, health.getStatus());
+        assertEquals("FAILED: no Mongo", health.getDetails().get(failing.getName()));
+    }
+
+    private static StartupTask task(String name, Mono<Void> work) {
+        return new StartupTask() {
+            @Override
+            protected Mono<?> task() {
+                return work;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package guru.springframework.spring5webfluxrest.bootstrap;
+
+import com.mongodb.client.result.UpdateResult;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+public class VersionBackfillTest {
+
+    private ReactiveMongoOperations mongoOperations;
+    private VersionBackfill versionBackfill;
+
+    @Before
+    public void setUp() {
+        mongoOperations = Mockito.mock(ReactiveMongoOperations.class);
+        given(mongoOperations.updateMulti(any(Query.class), any(Update.class), any(Class.class)))
+                .willReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+        given(mongoOperations.save(any(Document.class), eq(VersionBackfill.MIGRATIONS)))
+                .willAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        versionBackfill = new VersionBackfill(mongoOperations);
+    }
+
+    @Test
+    public void backfillsOnceAndLeavesAMarker() {
+        given(mongoOperations.exists(any(Query.class), eq(VersionBackfill.MIGRATIONS))).willReturn(Mono.just(false));
+
+        StepVerifier.create(versionBackfill.task().then()).verifyComplete();
+
+        then(mongoOperations).should().updateMulti(any(Query.class), any(Update.class), eq(Vendor.class));
+        then(mongoOperations).should().updateMulti(any(Query.class), any(Update.class), eq(Category.class));
+        then(mongoOperations).should().save(any(Document.class), eq(VersionBackfill.MIGRATIONS));
+    }
+
+    @Test
+    public void skippedOnceMarked() {
+        given(mongoOperations.exists(any(Query.class), eq(VersionBackfill.MIGRATIONS))).willReturn(Mono.just(true));
+
+        StepVerifier.create(versionBackfill.task().then()).verifyComplete();
+
+        then(mongoOperations).should(never()).updateMulti(any(Query.class), any(Update.class), any(Class.class));
+    }
+}
@@ -0,0 +1,99 @@
+package guru.springframework.spring5webfluxrest.codec;
+
+import guru.springframework.spring5webfluxrest.config.CompressionProperties;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCompressionHandlerTest {
+
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel(new ResponseCompressionHandler(new CompressionProperties().getRules()));
+    }
+
+    @Test
+    public void compressesStreamedJson() {
+        request("gzip, deflate");
+
+        HttpResponse response = respond("application/x-ndjson", -1);
+        channel.writeOutbound(Unpooled.wrappedBuffer("{\"fistName\":\"Joe\"}\n".getBytes()));
+        channel.writeOutbound(LastHttpContent.EMPTY_LAST_CONTENT);
+
+        assertEquals("gzip", response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void skipsSmallResponses() {
+        request("gzip");
+
+        HttpResponse response = respond("application/json", 100);
+
+        assertNull(response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void skipsTypesWithoutRule() {
+        request("gzip");
+
+        HttpResponse response = respond("application/gzip", 1_000_000);
+
+        assertNull(response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void prefersDeflateWhenAskedFor() {
+        request("deflate");
+
+        HttpResponse response = respond("application/json", 1_000_000);
+
+        assertEquals("deflate", response.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+    }
+
+    @Test
+    public void fileRegionsPassThrough() throws Exception {
+        request("gzip");
+        respond("application/gzip", 0);
+
+        File file = File.createTempFile("export", ".gz");
+        file.deleteOnExit();
+        channel.writeOutbound(new DefaultFileRegion(file, 0, 0));
+
+        assertTrue(channel.readOutbound() instanceof DefaultFileRegion);
+    }
+
+    private void request(String acceptEncoding) {
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/api/v1/vendors");
+        request.headers().set(HttpHeaderNames.ACCEPT_ENCODING, acceptEncoding);
+        channel.writeInbound(request);
+        channel.readInbound();
+    }
+
+    private HttpResponse respond(String contentType, long contentLength) {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+        if (contentLength >= 0) {
+            response.headers().set(HttpHeaderNames.CONTENT_LENGTH, contentLength);
+        }
+        channel.writeOutbound(response);
+        return (HttpResponse) channel.readOutbound();
+    }
+}
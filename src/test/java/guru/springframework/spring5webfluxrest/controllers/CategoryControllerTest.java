@@ -1,19 +1,40 @@
 package guru.springframework.spring5webfluxrest.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.springframework.spring5webfluxrest.config.CacheProperties;
+import guru.springframework.spring5webfluxrest.config.UpdateProperties;
+import guru.springframework.spring5webfluxrest.config.WebFluxConfig;
+import guru.springframework.spring5webfluxrest.domain.BulkInsertResult;
 import guru.springframework.spring5webfluxrest.domain.Category;
 import guru.springframework.spring5webfluxrest.repository.CategoryRepository;
+import guru.springframework.spring5webfluxrest.services.BulkInsertService;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import guru.springframework.spring5webfluxrest.services.PatchService;
 import org.junit.Before;
 import org.junit.Test;
+import org.bson.Document;
+import org.mockito.ArgumentCaptor;
 import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 import org.reactivestreams.Publisher;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.never;
@@ -24,13 +45,23 @@ public class CategoryControllerTest {
 
     WebTestClient webTestClient;
     CategoryRepository categoryRepository;
+    BulkInsertService bulkInsertService;
+    PatchService patchService;
+    UpdateProperties updateProperties;
     CategoryController categoryController;
 
     @Before
     public void setUp() throws Exception {
         categoryRepository = Mockito.mock(CategoryRepository.class);
-        categoryController = new CategoryController(categoryRepository);
-        webTestClient = WebTestClient.bindToController(categoryController).build();
+        bulkInsertService = Mockito.mock(BulkInsertService.class);
+        patchService = Mockito.mock(PatchService.class);
+        updateProperties = new UpdateProperties();
+        categoryController = new CategoryController(categoryRepository,
+                new EntityCache<>(categoryRepository::findById, new CacheProperties().getCategories()), bulkInsertService, patchService,
+                updateProperties);
+        webTestClient = WebTestClient.bindToController(categoryController)
+                .httpMessageCodecs(new WebFluxConfig(new ObjectMapper(), Collections.emptyList())::configureHttpMessageCodecs)
+                .build();
     }
 
     @Test
@@ -46,6 +77,120 @@ public class CategoryControllerTest {
                 .hasSize(2);
     }
 
+    @Test
+    public void listByDescriptionPrefix() {
+        given(categoryRepository.findAll(any(Query.class)))
+                .willReturn(Flux.just(Category.builder().description("Fruits").build()));
+
+        webTestClient.get().uri(CategoryController.BASE_URL + "?description=Fr*&sort=description")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Category.class)
+                .hasSize(1);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        then(categoryRepository).should().findAll(query.capture());
+        assertTrue(query.getValue().getQueryObject().get("description") instanceof Pattern);
+        assertEquals(new Document("description", 1), query.getValue().getSortObject());
+    }
+
+    @Test
+    public void listUnknownField() {
+        webTestClient.get().uri(CategoryController.BASE_URL + "?fields=secret")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void pageNotModified() {
+        given(categoryRepository.findVersionsBy(any(Pageable.class)))
+                .willReturn(Flux.just(Category.builder().id("a").version(1L).build(),
+                        Category.builder().id("b").version(2L).build()));
+
+        String etag = ETags.of(Arrays.asList(Category.builder().id("a").version(1L).build(),
+                Category.builder().id("b").version(2L).build()));
+
+        webTestClient.get().uri(CategoryController.BASE_URL + "?size=2")
+                .ifNoneMatch(etag)
+                .exchange()
+                .expectStatus().isNotModified();
+
+        verify(categoryRepository, never()).findAllBy(any(Pageable.class));
+    }
+
+    @Test
+    public void pageModified() {
+        given(categoryRepository.findVersionsBy(any(Pageable.class)))
+                .willReturn(Flux.just(Category.builder().id("a").version(2L).build()));
+        given(categoryRepository.findAllBy(any(Pageable.class)))
+                .willReturn(Flux.just(Category.builder().id("a").version(2L).description("Cat1").build()));
+
+        webTestClient.get().uri(CategoryController.BASE_URL + "?size=2")
+                .ifNoneMatch("\"stale\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG,
+                        ETags.of(Collections.singletonList(Category.builder().id("a").version(2L).build())))
+                .expectBodyList(Category.class)
+                .hasSize(1);
+    }
+
+    @Test
+    public void streamJson() {
+        given(categoryRepository.findAll())
+                .willReturn(Flux.just(Category.builder().description("Cat1").build(),
+                        Category.builder().description("Cat2").build()));
+
+        Flux<Category> categories = webTestClient.get().uri(CategoryController.BASE_URL)
+                .accept(MediaType.APPLICATION_STREAM_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_STREAM_JSON)
+                .returnResult(Category.class)
+                .getResponseBody();
+
+        StepVerifier.create(categories)
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
+    @Test
+    public void firstPage() {
+        given(categoryRepository.findAllBy(any(Pageable.class)))
+                .willReturn(Flux.just(Category.builder().id("a").build(),
+                        Category.builder().id("b").build(),
+                        Category.builder().id("c").build()));
+
+        webTestClient.get().uri(CategoryController.BASE_URL + "?size=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(PageCursor.NEXT_CURSOR_HEADER, PageCursor.encode("b"))
+                .expectBodyList(Category.class)
+                .hasSize(2);
+    }
+
+    @Test
+    public void nextPage() {
+        given(categoryRepository.findByIdGreaterThan(anyString(), any(Pageable.class)))
+                .willReturn(Flux.just(Category.builder().id("c").build()));
+
+        webTestClient.get().uri(CategoryController.BASE_URL + "?size=2&cursor=" + PageCursor.encode("b"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(PageCursor.NEXT_CURSOR_HEADER)
+                .expectBodyList(Category.class)
+                .hasSize(1);
+
+        then(categoryRepository).should().findByIdGreaterThan("b", PageCursor.pageable(2));
+    }
+
+    @Test
+    public void invalidCursor() {
+        webTestClient.get().uri(CategoryController.BASE_URL + "?size=2&cursor=***")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
     @Test
     public void getById() {
         given(categoryRepository.findById("someid"))
@@ -57,6 +202,70 @@ public class CategoryControllerTest {
                 .expectBody(Category.class);
     }
 
+    @Test
+    public void getByIdIsCached() {
+        given(categoryRepository.findById("someid"))
+                .willReturn(Mono.just(Category.builder().id("someid").description("Cat1").build()));
+
+        webTestClient.get().uri(CategoryController.BASE_URL + "/someid").exchange().expectStatus().isOk();
+        webTestClient.get().uri(CategoryController.BASE_URL + "/someid").exchange().expectStatus().isOk();
+
+        verify(categoryRepository, times(1)).findById("someid");
+    }
+
+    @Test
+    public void getByIdNotModified() {
+        given(categoryRepository.findVersionById("someid"))
+                .willReturn(Mono.just(Category.builder().id("someid").version(3L).build()));
+
+        webTestClient.get().uri(CategoryController.BASE_URL + "/someid")
+                .ifNoneMatch("\"3\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"3\"");
+
+        verify(categoryRepository, never()).findById(anyString());
+    }
+
+    @Test
+    public void getByIdNotFound() {
+        given(categoryRepository.findById("missing"))
+                .willReturn(Mono.empty());
+
+        webTestClient.get().uri(CategoryController.BASE_URL + "/missing")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void updateKeepsCurrentVersion() {
+        given(categoryRepository.findVersionById("id"))
+                .willReturn(Mono.just(Category.builder().id("id").version(4L).build()));
+        given(categoryRepository.save(any(Category.class)))
+                .willAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        webTestClient.put().uri(CategoryController.BASE_URL + "/id")
+                .body(Mono.just(Category.builder().description("desc").version(1L).build()), Category.class)
+                .exchange()
+                .expectStatus().isOk();
+
+        verify(categoryRepository).save(Category.builder().id("id").description("desc").version(4L).build());
+    }
+
+    @Test
+    public void updateIfMatchConflict() {
+        given(categoryRepository.findVersionById("id"))
+                .willReturn(Mono.just(Category.builder().id("id").version(4L).build()));
+
+        webTestClient.put().uri(CategoryController.BASE_URL + "/id")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .body(Mono.just(Category.builder().description("desc").build()), Category.class)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        verify(categoryRepository, never()).save(any(Category.class));
+    }
+
     @Test
     public void create() {
         given(categoryRepository.saveAll(any(Publisher.class)))
@@ -71,9 +280,30 @@ public class CategoryControllerTest {
                 .isCreated();
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void bulkCreate() {
+        given(bulkInsertService.insert(any(Flux.class), eq(Category.class)))
+                .willAnswer(invocation -> invocation.<Flux<Category>>getArgument(0)
+                        .count()
+                        .map(count -> BulkInsertResult.builder().inserted(count).build()));
+
+        BulkInsertResult result = webTestClient.post().uri(CategoryController.BASE_URL + "/_bulk")
+                .contentType(WebFluxConfig.APPLICATION_NDJSON)
+                .syncBody("{\"description\":\"a\"}\n{\"description\":\"b\"}\n{\"description\":\"c\"}\n")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BulkInsertResult.class)
+                .returnResult().getResponseBody();
+
+        assertEquals(3, result.getInserted());
+    }
+
     @Test
     public void update() {
         Category cat = Category.builder().description("desc").build();
+        given(categoryRepository.findVersionById(anyString()))
+                .willReturn(Mono.empty());
         given(categoryRepository.save(any(Category.class)))
                 .willReturn(Mono.just(cat));
 
@@ -91,72 +321,50 @@ public class CategoryControllerTest {
 
     @Test
     public void patchWithChange() {
-        given(categoryRepository.findById(anyString()))
-                .willReturn(Mono.just(Category.builder().description("desc").build()));
-
-        Category catRet = Category.builder().description("desc2").build();
-
-        given(categoryRepository.save(any(Category.class)))
-                .willReturn(Mono.just(catRet));
+        Category patched = Category.builder().id("id").description("desc2").version(1L).build();
 
-        Mono<Category> catToUpdatedMono = Mono.just(catRet);
+        given(patchService.patch(eq("id"), any(Category.class), eq(Category.class)))
+                .willReturn(Mono.just(patched));
 
         webTestClient.patch().uri(CategoryController.BASE_URL + "/id")
-                .body(catToUpdatedMono, Category.class)
+                .body(Mono.just(Category.builder().description("desc2").build()), Category.class)
                 .exchange()
                 .expectStatus().isOk()
                 .expectBody(Category.class)
-                .isEqualTo(catRet);
+                .isEqualTo(patched);
 
-        verify(categoryRepository).save(any());
-        then(categoryRepository).should().save(any());
+        then(patchService).should().patch("id", Category.builder().description("desc2").build(), Category.class);
+        then(categoryRepository).should(never()).save(any());
     }
 
     @Test
-    public void patchNoChange() {
-        Category cat = Category.builder().description("desc").build();
+    public void patchRefreshesCache() {
+        Category patched = Category.builder().id("id").description("desc2").version(1L).build();
 
-        given(categoryRepository.findById(anyString()))
-                .willReturn(Mono.just(cat));
-
-        Category catPatch = Category.builder().build();
-
-        given(categoryRepository.save(any(Category.class)))
-                .willReturn(Mono.just(catPatch));
-
-        Mono<Category> catToUpdatedMono = Mono.just(catPatch);
+        given(patchService.patch(eq("id"), any(Category.class), eq(Category.class)))
+                .willReturn(Mono.just(patched));
 
         webTestClient.patch().uri(CategoryController.BASE_URL + "/id")
-                .body(catToUpdatedMono, Category.class)
+                .body(Mono.just(Category.builder().description("desc2").build()), Category.class)
+                .exchange()
+                .expectStatus().isOk();
+
+        webTestClient.get().uri(CategoryController.BASE_URL + "/id")
                 .exchange()
-                .expectStatus().isOk()
                 .expectBody(Category.class)
-                .isEqualTo(cat);
+                .isEqualTo(patched);
 
-        verify(categoryRepository, never()).save(any());
-        then(categoryRepository).should(never()).save(any());
+        verify(categoryRepository, never()).findById(anyString());
     }
 
     @Test
-    public void patchWithSameDesc() {
-        Category cat = Category.builder().description("desc").build();
-
-        given(categoryRepository.findById(anyString()))
-                .willReturn(Mono.just(cat));
-
-        given(categoryRepository.save(any(Category.class)))
-                .willReturn(Mono.just(cat));
-
-        Mono<Category> catToUpdatedMono = Mono.just(cat);
+    public void patchNotFound() {
+        given(patchService.patch(eq("id"), any(Category.class), eq(Category.class)))
+                .willReturn(Mono.empty());
 
         webTestClient.patch().uri(CategoryController.BASE_URL + "/id")
-                .body(catToUpdatedMono, Category.class)
+                .body(Mono.just(Category.builder().description("desc2").build()), Category.class)
                 .exchange()
-                .expectStatus().isOk()
-                .expectBody(Category.class)
-                .isEqualTo(cat);
-
-        verify(categoryRepository, never()).save(any());
-        then(categoryRepository).should(never()).save(any());
+                .expectStatus().isNotFound();
     }
 }
\ No newline at end of file
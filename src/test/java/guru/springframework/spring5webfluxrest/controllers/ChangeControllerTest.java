@@ -0,0 +1,92 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.domain.EntityChange;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.services.ChangeStreamService;
+import org.bson.BsonBinary;
+import org.bson.BsonDocument;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+
+public class ChangeControllerTest {
+
+    private static final BsonDocument TOKEN = new BsonDocument("_data", new BsonBinary(new byte[]{1, 2, 3}));
+
+    private ChangeStreamService changeStreamService;
+    private WebTestClient webTestClient;
+
+    @Before
+    public void setUp() {
+        changeStreamService = Mockito.mock(ChangeStreamService.class);
+        webTestClient = WebTestClient.bindToController(new ChangeController(changeStreamService)).build();
+    }
+
+    @Test
+    public void vendorChanges() {
+        given(changeStreamService.subscribe(eq(Vendor.class), any()))
+                .willReturn(Flux.just(EntityChange.<Vendor>builder().operation("insert").id("v1")
+                        .entity(Vendor.builder().id("v1").fistName("Joe").build()).resumeToken(TOKEN).build()));
+
+        Flux<ServerSentEvent<Map<String, Object>>> events = webTestClient.get()
+                .uri(VendorController.BASE_URL + ChangeController.STREAM_PATH)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<Map<String, Object>>>() {})
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .assertNext(event -> {
+                    assertEquals("insert", event.event());
+                    assertEquals(ChangeController.encodeToken(TOKEN), event.id());
+                    assertEquals("v1", event.data().get("id"));
+                    assertEquals("Joe", ((Map<?, ?>) event.data().get("entity")).get("fistName"));
+                })
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    public void resumesAfterLastEventId() {
+        given(changeStreamService.subscribe(Vendor.class, TOKEN)).willReturn(Flux.just(
+                EntityChange.<Vendor>builder().operation("delete").id("v2").resumeToken(TOKEN).build()));
+
+        Flux<ServerSentEvent<Map<String, Object>>> events = webTestClient.get()
+                .uri(VendorController.BASE_URL + ChangeController.STREAM_PATH)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header(ChangeController.LAST_EVENT_ID, ChangeController.encodeToken(TOKEN))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<Map<String, Object>>>() {})
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .assertNext(event -> assertEquals("delete", event.event()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    public void invalidLastEventId() {
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + ChangeController.STREAM_PATH)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header(ChangeController.LAST_EVENT_ID, "not a token")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+}
@@ -0,0 +1,77 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.services.ExportService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.BDDMockito.given;
+
+public class ExportControllerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExportService exportService;
+    private WebTestClient webTestClient;
+
+    @Before
+    public void setUp() {
+        exportService = Mockito.mock(ExportService.class);
+        webTestClient = WebTestClient.bindToController(new ExportController(exportService)).build();
+    }
+
+    @Test
+    public void export() throws Exception {
+        Path file = Files.write(folder.getRoot().toPath().resolve("vendors.ndjson.gz"), new byte[]{1, 2, 3});
+        given(exportService.current(ExportService.VENDORS)).willReturn(Optional.of(file));
+
+        byte[] body = webTestClient.get().uri(ExportController.BASE_URL + "/vendors")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(ExportController.APPLICATION_GZIP)
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"vendors.ndjson.gz\"")
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"" + Long.toHexString(file.toFile().lastModified()) + "\"")
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+
+        assertArrayEquals(new byte[]{1, 2, 3}, body);
+    }
+
+    @Test
+    public void exportNotModified() throws Exception {
+        Path file = Files.write(folder.getRoot().toPath().resolve("vendors.ndjson.gz"), new byte[]{1, 2, 3});
+        given(exportService.current(ExportService.VENDORS)).willReturn(Optional.of(file));
+
+        webTestClient.get().uri(ExportController.BASE_URL + "/vendors")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"" + Long.toHexString(file.toFile().lastModified()) + "\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    public void exportNotReady() {
+        given(exportService.current(ExportService.CATEGORIES)).willReturn(Optional.empty());
+
+        webTestClient.get().uri(ExportController.BASE_URL + "/categories")
+                .exchange()
+                .expectStatus().isEqualTo(503);
+    }
+
+    @Test
+    public void exportUnknownCollection() {
+        webTestClient.get().uri(ExportController.BASE_URL + "/orders")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
@@ -0,0 +1,72 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.domain.SearchHit;
+import guru.springframework.spring5webfluxrest.services.SearchService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+public class SearchControllerTest {
+
+    WebTestClient webTestClient;
+    SearchService searchService;
+
+    @Before
+    public void setUp() throws Exception {
+        searchService = Mockito.mock(SearchService.class);
+        webTestClient = WebTestClient.bindToController(new SearchController(searchService)).build();
+    }
+
+    @Test
+    public void textSearch() {
+        given(searchService.text("joe", SearchController.DEFAULT_LIMIT))
+                .willReturn(Flux.just(SearchHit.builder().type(SearchHit.VENDOR).id("1").text("Joe Buck").score(1.5).build()));
+
+        webTestClient.get().uri(SearchController.BASE_URL + "?q=joe")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(SearchHit.class)
+                .hasSize(1);
+
+        then(searchService).should(never()).prefix(anyString(), anyInt());
+    }
+
+    @Test
+    public void prefixSearch() {
+        given(searchService.prefix("jo", 5))
+                .willReturn(Flux.just(SearchHit.builder().type(SearchHit.VENDOR).id("1").text("Joe Buck").build()));
+
+        webTestClient.get().uri(SearchController.BASE_URL + "?q=jo&mode=prefix&limit=5")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(SearchHit.class)
+                .hasSize(1);
+    }
+
+    @Test
+    public void limitIsCapped() {
+        given(searchService.prefix("jo", SearchController.MAX_LIMIT))
+                .willReturn(Flux.empty());
+
+        webTestClient.get().uri(SearchController.BASE_URL + "?q=jo&mode=prefix&limit=100000")
+                .exchange()
+                .expectStatus().isOk();
+
+        then(searchService).should().prefix("jo", SearchController.MAX_LIMIT);
+    }
+
+    @Test
+    public void unknownMode() {
+        webTestClient.get().uri(SearchController.BASE_URL + "?q=jo&mode=fuzzy")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+}
@@ -0,0 +1,41 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.domain.Stats;
+import guru.springframework.spring5webfluxrest.services.StatsService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.Collections;
+
+import static org.mockito.BDDMockito.given;
+
+public class StatsControllerTest {
+
+    WebTestClient webTestClient;
+    StatsService statsService;
+
+    @Before
+    public void setUp() throws Exception {
+        statsService = Mockito.mock(StatsService.class);
+        webTestClient = WebTestClient.bindToController(new StatsController(statsService)).build();
+    }
+
+    @Test
+    public void stats() {
+        given(statsService.snapshot()).willReturn(Stats.builder().vendors(2).categories(1)
+                .vendorsByInitial(Collections.singletonMap("B", 2L))
+                .vendorsByCreated(Collections.singletonMap("2018-01", 2L))
+                .build());
+
+        webTestClient.get().uri(StatsController.BASE_URL)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.vendors").isEqualTo(2)
+                .jsonPath("$.categories").isEqualTo(1)
+                .jsonPath("$.vendorsByInitial.B").isEqualTo(2)
+                .jsonPath("$.vendorsByCreated.2018-01").isEqualTo(2);
+    }
+}
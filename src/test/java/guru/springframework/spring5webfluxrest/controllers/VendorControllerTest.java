@@ -1,30 +1,64 @@
 package guru.springframework.spring5webfluxrest.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import guru.springframework.spring5webfluxrest.config.CacheProperties;
+import guru.springframework.spring5webfluxrest.config.UpdateProperties;
+import guru.springframework.spring5webfluxrest.config.WebFluxConfig;
+import guru.springframework.spring5webfluxrest.domain.BulkInsertResult;
 import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.MultiGetRequest;
 import guru.springframework.spring5webfluxrest.domain.Vendor;
 import guru.springframework.spring5webfluxrest.repository.VendorRepository;
+import guru.springframework.spring5webfluxrest.services.BulkInsertService;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import guru.springframework.spring5webfluxrest.services.PatchService;
 import org.junit.Before;
 import org.junit.Test;
+import org.bson.Document;
+import org.mockito.ArgumentCaptor;
 import org.mockito.BDDMockito;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.reactivestreams.Publisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 public class VendorControllerTest {
     //@Mock
     private VendorRepository vendorRepository;
+    private BulkInsertService bulkInsertService;
+    private PatchService patchService;
+    private EntityCache<Vendor> vendorCache;
+    private UpdateProperties updateProperties;
     private VendorController vendorController;
     private WebTestClient webTestClient;
 
@@ -32,8 +66,16 @@ public class VendorControllerTest {
     public void setUp() throws Exception {
         //MockitoAnnotations.initMocks(this);
         vendorRepository = Mockito.mock(VendorRepository.class);
-        vendorController = new VendorController(vendorRepository);
-        webTestClient = WebTestClient.bindToController(vendorController).build();
+        bulkInsertService = Mockito.mock(BulkInsertService.class);
+        patchService = Mockito.mock(PatchService.class);
+        vendorCache = new EntityCache<>(vendorRepository::findById, vendorRepository::findAllById, Vendor::getId,
+                new CacheProperties().getVendors());
+        updateProperties = new UpdateProperties();
+        vendorController = new VendorController(vendorRepository, vendorCache, bulkInsertService, patchService,
+                updateProperties);
+        webTestClient = WebTestClient.bindToController(vendorController)
+                .httpMessageCodecs(new WebFluxConfig(new ObjectMapper(), Collections.emptyList())::configureHttpMessageCodecs)
+                .build();
     }
 
     @Test
@@ -50,6 +92,177 @@ public class VendorControllerTest {
                 .hasSize(2);
     }
 
+    @Test
+    public void listFiltered() {
+        given(vendorRepository.findAll(any(Query.class)))
+                .willReturn(Flux.just(Vendor.builder().fistName("Joe").lastName("Buck").build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?lastName=Buck&fistName=Jo*&sort=-fistName&fields=fistName")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Vendor.class)
+                .hasSize(1);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        then(vendorRepository).should().findAll(query.capture());
+        assertEquals("Buck", query.getValue().getQueryObject().get("lastName"));
+        assertEquals("^\\QJo\\E", query.getValue().getQueryObject().get("fistName").toString());
+        assertEquals(new Document("fistName", -1), query.getValue().getSortObject());
+        assertEquals(new Document("fistName", 1), query.getValue().getFieldsObject());
+        then(vendorRepository).should(never()).findAll();
+    }
+
+    @Test
+    public void listIgnoresUnknownParams() {
+        given(vendorRepository.findAll())
+                .willReturn(Flux.just(Vendor.builder().fistName("vendor1").build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?foo=bar")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Vendor.class)
+                .hasSize(1);
+    }
+
+    @Test
+    public void listUnknownSortField() {
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?sort=password")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void streamNdjson() {
+        given(vendorRepository.findAll())
+                .willReturn(Flux.just(Vendor.builder().fistName("vendor1").build(),
+                        Vendor.builder().fistName("vendor2").build()));
+
+        String body = webTestClient.get()
+                .uri(VendorController.BASE_URL)
+                .accept(WebFluxConfig.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(WebFluxConfig.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+
+        assertEquals(2, body.trim().split("\n").length);
+    }
+
+    @Test
+    public void streamFiltered() {
+        given(vendorRepository.findAll(any(Query.class)))
+                .willReturn(Flux.just(Vendor.builder().lastName("Buck").build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?lastName=Buck&sort=fistName&fields=lastName")
+                .accept(WebFluxConfig.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        then(vendorRepository).should().findAll(query.capture());
+        assertEquals("Buck", query.getValue().getQueryObject().get("lastName"));
+        assertEquals(new Document("fistName", 1), query.getValue().getSortObject());
+        assertEquals(new Document("lastName", 1), query.getValue().getFieldsObject());
+        then(vendorRepository).should(never()).findAll();
+    }
+
+    @Test
+    public void streamUnknownSortField() {
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?sort=password")
+                .accept(WebFluxConfig.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void streamServerSentEvents() {
+        given(vendorRepository.findAll())
+                .willReturn(Flux.just(Vendor.builder().fistName("vendor1").build(),
+                        Vendor.builder().fistName("vendor2").build()));
+
+        Flux<Vendor> events = webTestClient.get()
+                .uri(VendorController.BASE_URL)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Vendor.class)
+                .getResponseBody();
+
+        StepVerifier.create(events)
+                .expectNextMatches(vendor -> "vendor1".equals(vendor.getFistName()))
+                .expectNextMatches(vendor -> "vendor2".equals(vendor.getFistName()))
+                .verifyComplete();
+    }
+
+    @Test
+    public void firstPage() {
+        given(vendorRepository.findAllBy(any(Pageable.class)))
+                .willReturn(Flux.just(Vendor.builder().id("a").build(),
+                        Vendor.builder().id("b").build(),
+                        Vendor.builder().id("c").build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?size=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(PageCursor.NEXT_CURSOR_HEADER, PageCursor.encode("b"))
+                .expectBodyList(Vendor.class)
+                .hasSize(2);
+
+        then(vendorRepository).should().findAllBy(PageCursor.pageable(2));
+    }
+
+    @Test
+    public void lastPage() {
+        given(vendorRepository.findByIdGreaterThan(anyString(), any(Pageable.class)))
+                .willReturn(Flux.just(Vendor.builder().id("c").build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?size=2&cursor=" + PageCursor.encode("b"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(PageCursor.NEXT_CURSOR_HEADER)
+                .expectBodyList(Vendor.class)
+                .hasSize(1);
+
+        then(vendorRepository).should().findByIdGreaterThan("b", PageCursor.pageable(2));
+    }
+
+    @Test
+    public void cursorWithoutSizeUsesDefaultSize() {
+        given(vendorRepository.findByIdGreaterThan(anyString(), any(Pageable.class)))
+                .willReturn(Flux.just(Vendor.builder().id("c").build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?cursor=" + PageCursor.encode("b"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Vendor.class)
+                .hasSize(1);
+
+        then(vendorRepository).should().findByIdGreaterThan("b", PageCursor.pageable(PageCursor.DEFAULT_PAGE_SIZE));
+        then(vendorRepository).should(never()).findAll();
+    }
+
+    @Test
+    public void pageSizeIsCapped() {
+        given(vendorRepository.findAllBy(any(Pageable.class)))
+                .willReturn(Flux.empty());
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?size=100000")
+                .exchange()
+                .expectStatus().isOk();
+
+        then(vendorRepository).should().findAllBy(PageCursor.pageable(PageCursor.MAX_PAGE_SIZE));
+    }
+
     @Test
     public void getById() {
         given(vendorRepository.findById("someid"))
@@ -62,6 +275,119 @@ public class VendorControllerTest {
                 .expectBody(Vendor.class);
     }
 
+    @Test
+    public void getByIdHasETag() {
+        given(vendorRepository.findById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").version(7L).build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "/someid")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"7\"");
+    }
+
+    @Test
+    public void getByIdNotModified() {
+        given(vendorRepository.findVersionById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").version(7L).build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "/someid")
+                .ifNoneMatch("\"7\"")
+                .exchange()
+                .expectStatus().isNotModified();
+
+        verify(vendorRepository, never()).findById(anyString());
+    }
+
+    @Test
+    public void getByIdModified() {
+        given(vendorRepository.findVersionById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").version(8L).build()));
+        given(vendorRepository.findById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").fistName("vendor1").version(8L).build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "/someid")
+                .ifNoneMatch("\"7\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"8\"");
+    }
+
+    @Test
+    public void getByIdModifiedReloadsStaleCacheEntry() {
+        given(vendorRepository.findById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").fistName("old").version(7L).build()))
+                .willReturn(Mono.just(Vendor.builder().id("someid").fistName("new").version(8L).build()));
+        given(vendorRepository.findVersionById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").version(8L).build()));
+        vendorCache.get("someid").block();
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "/someid")
+                .ifNoneMatch("\"7\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"8\"")
+                .expectBody().jsonPath("$.fistName").isEqualTo("new");
+
+        verify(vendorRepository, times(2)).findById("someid");
+    }
+
+    @Test
+    public void getByIdNotFound() {
+        given(vendorRepository.findById("missing"))
+                .willReturn(Mono.empty());
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "/missing")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void getByIdIsCached() {
+        given(vendorRepository.findById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").fistName("vendor1").build()));
+
+        for (int i = 0; i < 3; i++) {
+            webTestClient.get()
+                    .uri(VendorController.BASE_URL + "/someid")
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(Vendor.class);
+        }
+
+        verify(vendorRepository, times(1)).findById("someid");
+    }
+
+    @Test
+    public void updateRefreshesCache() {
+        Vendor vendorUpdated = Vendor.builder().id("someid").fistName("vendor2").build();
+
+        given(vendorRepository.findVersionById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").version(0L).build()));
+        given(vendorRepository.findById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").fistName("vendor1").build()));
+        given(vendorRepository.save(any(Vendor.class)))
+                .willReturn(Mono.just(vendorUpdated));
+
+        webTestClient.get().uri(VendorController.BASE_URL + "/someid").exchange();
+        webTestClient.put().uri(VendorController.BASE_URL + "/someid")
+                .body(Mono.just(vendorUpdated), Vendor.class)
+                .exchange();
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "/someid")
+                .exchange()
+                .expectBody(Vendor.class)
+                .isEqualTo(vendorUpdated);
+
+        verify(vendorRepository, times(1)).findById("someid");
+    }
+
     @Test
     public void createVendor() {
         BDDMockito.given(vendorRepository.saveAll(any(Publisher.class)))
@@ -93,10 +419,110 @@ public class VendorControllerTest {
 //                .isEqualTo(vend);
 //    }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void bulkCreate() {
+        given(bulkInsertService.insert(any(Flux.class), eq(Vendor.class)))
+                .willAnswer(invocation -> invocation.<Flux<Vendor>>getArgument(0)
+                        .count()
+                        .map(count -> BulkInsertResult.builder().inserted(count).build()));
+
+        BulkInsertResult result = webTestClient.post().uri(VendorController.BASE_URL + "/_bulk")
+                .contentType(WebFluxConfig.APPLICATION_NDJSON)
+                .syncBody("{\"fistName\":\"a\"}\n{\"fistName\":\"b\"}\n{\"fistName\":\"c\"}\n")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BulkInsertResult.class)
+                .returnResult().getResponseBody();
+
+        assertEquals(3, result.getInserted());
+    }
+
+    @Test
+    public void listAsCbor() throws Exception {
+        given(vendorRepository.findAll())
+                .willReturn(Flux.just(Vendor.builder().fistName("vendor1").build(),
+                        Vendor.builder().fistName("vendor2").build()));
+
+        byte[] body = webTestClient.get()
+                .uri(VendorController.BASE_URL)
+                .accept(WebFluxConfig.APPLICATION_CBOR)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(WebFluxConfig.APPLICATION_CBOR)
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+
+        Vendor[] vendors = new ObjectMapper(new CBORFactory()).readValue(body, Vendor[].class);
+        assertEquals(2, vendors.length);
+        assertEquals("vendor2", vendors[1].getFistName());
+    }
+
+    @Test
+    public void createFromCbor() throws Exception {
+        given(vendorRepository.saveAll(any(Publisher.class)))
+                .willAnswer(invocation -> Flux.from(invocation.<Publisher<Vendor>>getArgument(0)));
+        byte[] body = new ObjectMapper(new CBORFactory())
+                .writeValueAsBytes(Collections.singletonList(Vendor.builder().fistName("vendor1").build()));
+
+        webTestClient.post().uri(VendorController.BASE_URL)
+                .contentType(WebFluxConfig.APPLICATION_CBOR)
+                .syncBody(body)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBodyList(Vendor.class)
+                .contains(Vendor.builder().fistName("vendor1").build());
+    }
+
+    @Test
+    public void streamSmile() throws Exception {
+        given(vendorRepository.findAll())
+                .willReturn(Flux.just(Vendor.builder().fistName("vendor1").build(),
+                        Vendor.builder().fistName("vendor2").build()));
+
+        byte[] body = webTestClient.get()
+                .uri(VendorController.BASE_URL)
+                .accept(WebFluxConfig.APPLICATION_STREAM_SMILE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueMatches(HttpHeaders.CONTENT_TYPE, "application/stream\\+x-jackson-smile.*")
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+
+        List<Vendor> vendors = new ObjectMapper(new SmileFactory()).readerFor(Vendor.class)
+                .<Vendor>readValues(body).readAll();
+        assertEquals(2, vendors.size());
+    }
+
+    @Test
+    public void bulkCreateSmile() throws Exception {
+        given(bulkInsertService.insert(any(), eq(Vendor.class)))
+                .willAnswer(invocation -> invocation.<Flux<Vendor>>getArgument(0)
+                        .count()
+                        .map(count -> BulkInsertResult.builder().inserted(count).build()));
+        ObjectMapper smile = new ObjectMapper(new SmileFactory());
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (String name : Arrays.asList("a", "b", "c")) {
+            body.write(smile.writeValueAsBytes(Vendor.builder().fistName(name).build()));
+        }
+
+        BulkInsertResult result = webTestClient.post().uri(VendorController.BASE_URL + "/_bulk")
+                .contentType(WebFluxConfig.APPLICATION_STREAM_SMILE)
+                .syncBody(body.toByteArray())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BulkInsertResult.class)
+                .returnResult().getResponseBody();
+
+        assertEquals(3, result.getInserted());
+    }
+
     @Test
     public void update() {
         Vendor vendorUpdated = Vendor.builder().fistName("vendor1").lastName("vendor1").build();
 
+        given(vendorRepository.findVersionById(anyString()))
+                .willReturn(Mono.empty());
         given(vendorRepository.save(any(Vendor.class)))
                 .willReturn(Mono.just(vendorUpdated));
 
@@ -111,73 +537,234 @@ public class VendorControllerTest {
     }
 
     @Test
-    public void patchWithChange() {
-        given(vendorRepository.findById(anyString()))
-                .willReturn(Mono.just(Vendor.builder().build()));
+    public void updateIfMatch() {
+        Vendor saved = Vendor.builder().id("id").fistName("vendor1").version(4L).build();
+        given(vendorRepository.findVersionById("id"))
+                .willReturn(Mono.just(Vendor.builder().id("id").version(3L).build()));
+        given(vendorRepository.save(any(Vendor.class))).willReturn(Mono.just(saved));
 
-        Vendor vendorUpdated = Vendor.builder().fistName("vendor2").lastName("vendor2").build();
+        webTestClient.put().uri(VendorController.BASE_URL + "/id")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .body(Mono.just(Vendor.builder().fistName("vendor1").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"4\"");
+
+        then(vendorRepository).should().save(Vendor.builder().id("id").fistName("vendor1").version(3L).build());
+    }
 
+    @Test
+    public void updateIfMatchConflict() {
+        given(vendorRepository.findVersionById("id"))
+                .willReturn(Mono.just(Vendor.builder().id("id").version(4L).build()));
+
+        webTestClient.put().uri(VendorController.BASE_URL + "/id")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .body(Mono.just(Vendor.builder().fistName("vendor1").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        then(vendorRepository).should(never()).save(any());
+    }
+
+    @Test
+    public void updateIfMatchLosesRace() {
+        given(vendorRepository.findVersionById("id"))
+                .willReturn(Mono.just(Vendor.builder().id("id").version(3L).build()));
         given(vendorRepository.save(any(Vendor.class)))
-                .willReturn(Mono.just(vendorUpdated));
+                .willReturn(Mono.error(new OptimisticLockingFailureException("changed")));
 
-        Mono<Vendor> vendorToSavedMono = Mono.just(vendorUpdated);
+        webTestClient.put().uri(VendorController.BASE_URL + "/id")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .body(Mono.just(Vendor.builder().fistName("vendor1").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
 
-        webTestClient.patch().uri(VendorController.BASE_URL + "/id")
-                .body(vendorToSavedMono, Vendor.class)
+    @Test
+    public void updateIfMatchNotFound() {
+        given(vendorRepository.findVersionById("id")).willReturn(Mono.empty());
+
+        webTestClient.put().uri(VendorController.BASE_URL + "/id")
+                .header(HttpHeaders.IF_MATCH, "*")
+                .body(Mono.just(Vendor.builder().fistName("vendor1").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isNotFound();
+
+        then(vendorRepository).should(never()).save(any());
+    }
+
+    @Test
+    public void updateOnlyModeDoesNotInsert() {
+        updateProperties.setUpsert(false);
+        given(vendorRepository.findVersionById("id")).willReturn(Mono.empty());
+
+        webTestClient.put().uri(VendorController.BASE_URL + "/id")
+                .body(Mono.just(Vendor.builder().fistName("vendor1").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isNotFound();
+
+        then(vendorRepository).should(never()).save(any());
+    }
+
+    @Test
+    public void unconditionalUpdateRetriesConcurrentWrite() {
+        Vendor saved = Vendor.builder().id("id").fistName("vendor1").version(5L).build();
+        given(vendorRepository.findVersionById("id"))
+                .willReturn(Mono.just(Vendor.builder().id("id").version(3L).build()),
+                        Mono.just(Vendor.builder().id("id").version(4L).build()));
+        given(vendorRepository.save(any(Vendor.class)))
+                .willReturn(Mono.error(new OptimisticLockingFailureException("changed")), Mono.just(saved));
+
+        webTestClient.put().uri(VendorController.BASE_URL + "/id")
+                .body(Mono.just(Vendor.builder().fistName("vendor1").build()), Vendor.class)
                 .exchange()
                 .expectStatus().isOk()
                 .expectBody(Vendor.class)
-                .isEqualTo(vendorUpdated);
+                .isEqualTo(saved);
+    }
 
-        verify(vendorRepository).save(any());
-        then(vendorRepository).should().save(any());
+    @Test
+    public void ifMatchRequired() {
+        updateProperties.setRequireIfMatch(true);
+
+        webTestClient.patch().uri(VendorController.BASE_URL + "/id")
+                .body(Mono.just(Vendor.builder().fistName("vendor2").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_REQUIRED);
+
+        then(patchService).shouldHaveZeroInteractions();
     }
 
     @Test
-    public void patchNotChange() {
-        Vendor vendor = Vendor.builder().fistName("vendor").lastName("vendor").build();
+    public void patchIfMatch() {
+        Vendor patched = Vendor.builder().id("id").fistName("vendor2").version(4L).build();
+        given(patchService.patch(eq("id"), any(Vendor.class), eq(Vendor.class), any()))
+                .willReturn(Mono.just(patched));
+
+        webTestClient.patch().uri(VendorController.BASE_URL + "/id")
+                .header(HttpHeaders.IF_MATCH, "\"3\"", "W/\"2\"")
+                .body(Mono.just(Vendor.builder().fistName("vendor2").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"4\"");
 
-        given(vendorRepository.findById(anyString()))
-                .willReturn(Mono.just(vendor));
+        then(patchService).should().patch("id", Vendor.builder().fistName("vendor2").build(), Vendor.class,
+                Collections.singleton(3L));
+    }
 
-        Vendor vendEmpty = Vendor.builder().build();
+    @Test
+    public void patchIfMatchConflict() {
+        given(patchService.patch(eq("id"), any(Vendor.class), eq(Vendor.class), any()))
+                .willReturn(Mono.error(new OptimisticLockingFailureException("changed")));
 
-        given(vendorRepository.save(any(Vendor.class)))
-                .willReturn(Mono.just(vendEmpty));
+        webTestClient.patch().uri(VendorController.BASE_URL + "/id")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .body(Mono.just(Vendor.builder().fistName("vendor2").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+
+    @Test
+    public void patchWithChange() {
+        Vendor patched = Vendor.builder().id("id").fistName("vendor2").version(1L).build();
 
-        Mono<Vendor> vendorMono = Mono.just(vendEmpty);
+        given(patchService.patch(eq("id"), any(Vendor.class), eq(Vendor.class)))
+                .willReturn(Mono.just(patched));
 
         webTestClient.patch().uri(VendorController.BASE_URL + "/id")
-                .body(vendorMono, Vendor.class)
+                .body(Mono.just(Vendor.builder().fistName("vendor2").build()), Vendor.class)
                 .exchange()
                 .expectStatus().isOk()
                 .expectBody(Vendor.class)
-                .isEqualTo(vendor);
+                .isEqualTo(patched);
 
-        verify(vendorRepository, never()).save(any());
+        then(patchService).should().patch("id", Vendor.builder().fistName("vendor2").build(), Vendor.class);
         then(vendorRepository).should(never()).save(any());
     }
 
     @Test
-    public void patchWithSameName() {
-        Vendor vendor = Vendor.builder().fistName("vendor").lastName("vendor").build();
+    public void patchRefreshesCache() {
+        Vendor patched = Vendor.builder().id("id").fistName("vendor2").version(1L).build();
 
-        given(vendorRepository.findById(anyString()))
-                .willReturn(Mono.just(vendor));
+        given(patchService.patch(eq("id"), any(Vendor.class), eq(Vendor.class)))
+                .willReturn(Mono.just(patched));
 
-        given(vendorRepository.save(any(Vendor.class)))
-                .willReturn(Mono.just(vendor));
+        webTestClient.patch().uri(VendorController.BASE_URL + "/id")
+                .body(Mono.just(Vendor.builder().fistName("vendor2").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isOk();
 
-        Mono<Vendor> vendorMono = Mono.just(vendor);
+        webTestClient.get().uri(VendorController.BASE_URL + "/id")
+                .exchange()
+                .expectBody(Vendor.class)
+                .isEqualTo(patched);
+
+        verify(vendorRepository, never()).findById(anyString());
+    }
+
+    @Test
+    public void patchNotFound() {
+        given(patchService.patch(eq("id"), any(Vendor.class), eq(Vendor.class)))
+                .willReturn(Mono.empty());
 
         webTestClient.patch().uri(VendorController.BASE_URL + "/id")
-                .body(vendorMono, Vendor.class)
+                .body(Mono.just(Vendor.builder().fistName("vendor2").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void getByIds() {
+        vendorCache.put("v2", Vendor.builder().id("v2").fistName("cached").build());
+        given(vendorRepository.findAllById(anyIterable()))
+                .willReturn(Flux.just(Vendor.builder().id("v1").build(), Vendor.builder().id("v3").build()));
+
+        webTestClient.get().uri(VendorController.BASE_URL + "?ids=v3,v1,v2,v4,v1")
                 .exchange()
                 .expectStatus().isOk()
-                .expectBody(Vendor.class)
-                .isEqualTo(vendor);
+                .expectBody()
+                .jsonPath("$.items.length()").isEqualTo(3)
+                .jsonPath("$.items[0].id").isEqualTo("v3")
+                .jsonPath("$.items[1].id").isEqualTo("v1")
+                .jsonPath("$.items[2].id").isEqualTo("v2")
+                .jsonPath("$.items[2].fistName").isEqualTo("cached")
+                .jsonPath("$.missing.length()").isEqualTo(1)
+                .jsonPath("$.missing[0]").isEqualTo("v4");
+
+        ArgumentCaptor<Iterable<String>> ids = ArgumentCaptor.forClass(Iterable.class);
+        then(vendorRepository).should().findAllById(ids.capture());
+        assertEquals(new HashSet<>(Arrays.asList("v1", "v3", "v4")), new HashSet<>((List<String>) ids.getValue()));
+        then(vendorRepository).should(never()).findById(anyString());
+    }
 
-        verify(vendorRepository, never()).save(any());
-        then(vendorRepository).should(never()).save(any());
+    @Test
+    public void multiGet() {
+        given(vendorRepository.findAllById(anyIterable()))
+                .willReturn(Flux.just(Vendor.builder().id("v1").build()));
+
+        webTestClient.post().uri(VendorController.BASE_URL + MultiGet.PATH)
+                .syncBody(MultiGetRequest.builder().ids(Arrays.asList("v1", "v9")).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.items[0].id").isEqualTo("v1")
+                .jsonPath("$.missing[0]").isEqualTo("v9");
+    }
+
+    @Test
+    public void multiGetTooManyIds() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i <= MultiGet.MAX_IDS; i++) {
+            ids.add("v" + i);
+        }
+
+        webTestClient.post().uri(VendorController.BASE_URL + MultiGet.PATH)
+                .syncBody(MultiGetRequest.builder().ids(ids).build())
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        then(vendorRepository).should(never()).findAllById(anyIterable());
     }
-}
\ No newline at end of file
+}
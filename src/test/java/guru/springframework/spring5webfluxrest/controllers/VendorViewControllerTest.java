@@ -0,0 +1,76 @@
+package guru.springframework.spring5webfluxrest.controllers;
+
+import guru.springframework.spring5webfluxrest.domain.CategoryRef;
+import guru.springframework.spring5webfluxrest.domain.VendorView;
+import guru.springframework.spring5webfluxrest.repository.VendorViewRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+
+import static org.mockito.BDDMockito.given;
+
+public class VendorViewControllerTest {
+
+    WebTestClient webTestClient;
+    VendorViewRepository vendorViewRepository;
+
+    @Before
+    public void setUp() throws Exception {
+        vendorViewRepository = Mockito.mock(VendorViewRepository.class);
+        webTestClient = WebTestClient.bindToController(new VendorViewController(vendorViewRepository)).build();
+    }
+
+    @Test
+    public void getByIdEmbedsCategories() {
+        given(vendorViewRepository.findById("v1"))
+                .willReturn(Mono.just(VendorView.builder().id("v1").fistName("Joe").version(3L)
+                        .categories(Collections.singletonList(CategoryRef.builder().id("c1").description("Fruits").build()))
+                        .build()));
+
+        webTestClient.get().uri(VendorViewController.BASE_URL + "/v1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"3\"")
+                .expectBody()
+                .jsonPath("$.fistName").isEqualTo("Joe")
+                .jsonPath("$.categories[0].description").isEqualTo("Fruits");
+    }
+
+    @Test
+    public void getByIdNotModified() {
+        given(vendorViewRepository.findById("v1"))
+                .willReturn(Mono.just(VendorView.builder().id("v1").version(3L).build()));
+
+        webTestClient.get().uri(VendorViewController.BASE_URL + "/v1")
+                .ifNoneMatch("\"3\"")
+                .exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    public void getByIdNotFound() {
+        given(vendorViewRepository.findById("missing")).willReturn(Mono.empty());
+
+        webTestClient.get().uri(VendorViewController.BASE_URL + "/missing")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void byCategory() {
+        given(vendorViewRepository.findByCategoriesId("c1"))
+                .willReturn(Flux.just(VendorView.builder().id("v1").build(), VendorView.builder().id("v2").build()));
+
+        webTestClient.get().uri(VendorViewController.BASE_URL + "?categoryId=c1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(VendorView.class)
+                .hasSize(2);
+    }
+}
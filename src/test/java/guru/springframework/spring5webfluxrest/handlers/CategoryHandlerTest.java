@@ -0,0 +1,149 @@
+package guru.springframework.spring5webfluxrest.handlers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.springframework.spring5webfluxrest.config.CacheProperties;
+import guru.springframework.spring5webfluxrest.config.RouterConfig;
+import guru.springframework.spring5webfluxrest.config.UpdateProperties;
+import guru.springframework.spring5webfluxrest.config.WebFluxConfig;
+import guru.springframework.spring5webfluxrest.controllers.CategoryController;
+import guru.springframework.spring5webfluxrest.controllers.ETags;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.repository.CategoryRepository;
+import guru.springframework.spring5webfluxrest.services.BulkInsertService;
+import guru.springframework.spring5webfluxrest.services.ChangeStreamService;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import guru.springframework.spring5webfluxrest.services.PatchService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.HttpHandlerConnector;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+public class CategoryHandlerTest {
+
+    WebTestClient webTestClient;
+    CategoryRepository categoryRepository;
+    PatchService patchService;
+
+    @Before
+    public void setUp() throws Exception {
+        categoryRepository = Mockito.mock(CategoryRepository.class);
+        patchService = Mockito.mock(PatchService.class);
+        CategoryHandler categoryHandler = new CategoryHandler(categoryRepository,
+                new EntityCache<>(categoryRepository::findById, new CacheProperties().getCategories()),
+                Mockito.mock(BulkInsertService.class), patchService, new UpdateProperties());
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(new WebFluxConfig(new ObjectMapper(), Collections.emptyList())::configureHttpMessageCodecs)
+                .build();
+        webTestClient = WebTestClient.bindToServer(new HttpHandlerConnector(
+                RouterFunctions.toHttpHandler(new RouterConfig().categoryRoutes(categoryHandler,
+                        new ChangeHandler(Mockito.mock(ChangeStreamService.class))), strategies)))
+                .build();
+    }
+
+    @Test
+    public void list() {
+        given(categoryRepository.findAll())
+                .willReturn(Flux.just(Category.builder().description("Cat1").build(),
+                        Category.builder().description("Cat2").build()));
+
+        webTestClient.get().uri(CategoryController.BASE_URL)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Category.class)
+                .hasSize(2);
+    }
+
+    @Test
+    public void streamJson() {
+        given(categoryRepository.findAll())
+                .willReturn(Flux.just(Category.builder().description("Cat1").build()));
+
+        webTestClient.get().uri(CategoryController.BASE_URL)
+                .accept(MediaType.APPLICATION_STREAM_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_STREAM_JSON);
+    }
+
+    @Test
+    public void streamFiltered() {
+        given(categoryRepository.findAll(any(Query.class)))
+                .willReturn(Flux.just(Category.builder().description("Fruits").build()));
+
+        webTestClient.get().uri(CategoryController.BASE_URL + "?description=Fr*")
+                .accept(MediaType.APPLICATION_STREAM_JSON)
+                .exchange()
+                .expectStatus().isOk();
+
+        then(categoryRepository).should().findAll(any(Query.class));
+        then(categoryRepository).should(never()).findAll();
+    }
+
+    @Test
+    public void pageNotModified() {
+        given(categoryRepository.findVersionsBy(any(Pageable.class)))
+                .willReturn(Flux.just(Category.builder().id("a").version(1L).build(),
+                        Category.builder().id("b").version(2L).build()));
+
+        String etag = ETags.of(Arrays.asList(Category.builder().id("a").version(1L).build(),
+                Category.builder().id("b").version(2L).build()));
+
+        webTestClient.get().uri(CategoryController.BASE_URL + "?size=2")
+                .ifNoneMatch(etag)
+                .exchange()
+                .expectStatus().isNotModified();
+
+        then(categoryRepository).should(never()).findAllBy(any(Pageable.class));
+    }
+
+    @Test
+    public void invalidCursor() {
+        webTestClient.get().uri(CategoryController.BASE_URL + "?size=2&cursor=***")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void getById() {
+        given(categoryRepository.findById("someid"))
+                .willReturn(Mono.just(Category.builder().id("someid").description("Cat").version(1L).build()));
+
+        webTestClient.get().uri(CategoryController.BASE_URL + "/someid")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Category.class)
+                .isEqualTo(Category.builder().id("someid").description("Cat").version(1L).build());
+    }
+
+    @Test
+    public void patchWithChange() {
+        Category patched = Category.builder().id("id").description("Cat2").version(1L).build();
+
+        given(patchService.patch(eq("id"), any(Category.class), eq(Category.class)))
+                .willReturn(Mono.just(patched));
+
+        webTestClient.patch().uri(CategoryController.BASE_URL + "/id")
+                .body(Mono.just(Category.builder().description("Cat2").build()), Category.class)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Category.class)
+                .isEqualTo(patched);
+    }
+}
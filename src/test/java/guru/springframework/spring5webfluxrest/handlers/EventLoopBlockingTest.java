@@ -0,0 +1,132 @@
+package guru.springframework.spring5webfluxrest.handlers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.springframework.spring5webfluxrest.config.CacheProperties;
+import guru.springframework.spring5webfluxrest.config.RouterConfig;
+import guru.springframework.spring5webfluxrest.config.UpdateProperties;
+import guru.springframework.spring5webfluxrest.config.WebFluxConfig;
+import guru.springframework.spring5webfluxrest.controllers.VendorController;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.repository.VendorRepository;
+import guru.springframework.spring5webfluxrest.services.BulkInsertService;
+import guru.springframework.spring5webfluxrest.services.ChangeStreamService;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import guru.springframework.spring5webfluxrest.services.PatchService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.NonBlocking;
+import reactor.ipc.netty.NettyContext;
+import reactor.ipc.netty.http.server.HttpServer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+
+/**
+ * Serves the functional routes from a real Netty server with BlockHound installed, and
+ * fails when a handler makes a blocking call on an event loop thread. Only the Netty event
+ * loops are checked: this Reactor has no BlockHound integration, so its own non-blocking
+ * schedulers would be reported for parking while idle. Console logging is allowed, as the
+ * test runs with debug logging.
+ */
+public class EventLoopBlockingTest {
+
+    static final List<String> blockingCalls = new CopyOnWriteArrayList<>();
+
+    /**
+     * Thread name prefix of the event loops from {@link reactor.ipc.netty.http.HttpResources}.
+     */
+    static final String EVENT_LOOP_PREFIX = "reactor-http-";
+
+    VendorRepository vendorRepository;
+    NettyContext server;
+    WebTestClient webTestClient;
+
+    @BeforeClass
+    public static void installBlockHound() {
+        BlockHound.builder()
+                .nonBlockingThreadPredicate(current -> current.or(EventLoopBlockingTest::isEventLoop))
+                .allowBlockingCallsInside("ch.qos.logback.core.OutputStreamAppender", "append")
+                .blockingMethodCallback(method -> blockingCalls.add(
+                        Thread.currentThread().getName() + ": " + method.getClassName() + "." + method.getName()))
+                .install();
+    }
+
+    static boolean isEventLoop(Thread thread) {
+        return thread instanceof NonBlocking && thread.getName().startsWith(EVENT_LOOP_PREFIX);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        blockingCalls.clear();
+        vendorRepository = Mockito.mock(VendorRepository.class);
+        VendorHandler vendorHandler = new VendorHandler(vendorRepository,
+                new EntityCache<>(vendorRepository::findById, new CacheProperties().getVendors()),
+                Mockito.mock(BulkInsertService.class), Mockito.mock(PatchService.class), new UpdateProperties());
+        RouterFunction<ServerResponse> routes = new RouterConfig()
+                .vendorRoutes(vendorHandler, new ChangeHandler(Mockito.mock(ChangeStreamService.class)))
+                .andRoute(GET("/blocking"), request -> ServerResponse.ok()
+                        .body(Mono.fromCallable(() -> {
+                            Thread.sleep(1);
+                            return "slept";
+                        }), String.class));
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(new WebFluxConfig(new ObjectMapper(), Collections.emptyList())::configureHttpMessageCodecs)
+                .build();
+
+        server = HttpServer.create("localhost", 0)
+                .newHandler(new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(routes, strategies)))
+                .block();
+        webTestClient = WebTestClient.bindToServer()
+                .baseUrl("http://localhost:" + server.address().getPort())
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        server.dispose();
+    }
+
+    @Test
+    public void vendorRoutesDoNotBlock() {
+        Vendor vendor = Vendor.builder().id("1").fistName("vendor1").version(0L).build();
+        given(vendorRepository.findAll()).willReturn(Flux.just(vendor));
+        given(vendorRepository.findById("1")).willReturn(Mono.just(vendor));
+        given(vendorRepository.findAllBy(any(Pageable.class))).willReturn(Flux.just(vendor));
+
+        webTestClient.get().uri(VendorController.BASE_URL).exchange().expectStatus().isOk();
+        webTestClient.get().uri(VendorController.BASE_URL + "/1").exchange().expectStatus().isOk();
+        webTestClient.get().uri(VendorController.BASE_URL + "/1")
+                .accept(WebFluxConfig.APPLICATION_CBOR).exchange().expectStatus().isOk();
+        webTestClient.get().uri(VendorController.BASE_URL + "?size=1").exchange().expectStatus().isOk();
+        webTestClient.get().uri(VendorController.BASE_URL + "?ids=1").exchange().expectStatus().isOk();
+
+        assertEquals(blockingCalls.toString(), 0, blockingCalls.size());
+    }
+
+    @Test
+    public void blockingCallIsDetected() {
+        webTestClient.get().uri("/blocking").exchange();
+
+        assertFalse(blockingCalls.isEmpty());
+    }
+}
@@ -0,0 +1,359 @@
+package guru.springframework.spring5webfluxrest.handlers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import guru.springframework.spring5webfluxrest.config.CacheProperties;
+import guru.springframework.spring5webfluxrest.config.RouterConfig;
+import guru.springframework.spring5webfluxrest.config.UpdateProperties;
+import guru.springframework.spring5webfluxrest.config.WebFluxConfig;
+import guru.springframework.spring5webfluxrest.controllers.ChangeController;
+import guru.springframework.spring5webfluxrest.controllers.PageCursor;
+import guru.springframework.spring5webfluxrest.controllers.VendorController;
+import guru.springframework.spring5webfluxrest.domain.BulkInsertResult;
+import guru.springframework.spring5webfluxrest.domain.EntityChange;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.repository.VendorRepository;
+import guru.springframework.spring5webfluxrest.services.BulkInsertService;
+import guru.springframework.spring5webfluxrest.services.ChangeStreamService;
+import guru.springframework.spring5webfluxrest.services.EntityCache;
+import guru.springframework.spring5webfluxrest.services.PatchService;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.reactivestreams.Publisher;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.HttpHandlerConnector;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+public class VendorHandlerTest {
+
+    WebTestClient webTestClient;
+    VendorRepository vendorRepository;
+    BulkInsertService bulkInsertService;
+    PatchService patchService;
+    ChangeStreamService changeStreamService;
+
+    @Before
+    public void setUp() throws Exception {
+        vendorRepository = Mockito.mock(VendorRepository.class);
+        bulkInsertService = Mockito.mock(BulkInsertService.class);
+        patchService = Mockito.mock(PatchService.class);
+        changeStreamService = Mockito.mock(ChangeStreamService.class);
+        VendorHandler vendorHandler = new VendorHandler(vendorRepository,
+                new EntityCache<>(vendorRepository::findById, new CacheProperties().getVendors()), bulkInsertService, patchService,
+                new UpdateProperties());
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(new WebFluxConfig(new ObjectMapper(), Collections.emptyList())::configureHttpMessageCodecs)
+                .build();
+        webTestClient = WebTestClient.bindToServer(new HttpHandlerConnector(
+                RouterFunctions.toHttpHandler(new RouterConfig().vendorRoutes(vendorHandler, new ChangeHandler(changeStreamService)), strategies)))
+                .build();
+    }
+
+    @Test
+    public void list() {
+        given(vendorRepository.findAll())
+                .willReturn(Flux.just(Vendor.builder().fistName("vendor1").build(),
+                        Vendor.builder().fistName("vendor2").build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBodyList(Vendor.class)
+                .hasSize(2);
+    }
+
+    @Test
+    public void getByIdAsCbor() throws Exception {
+        given(vendorRepository.findById("1"))
+                .willReturn(Mono.just(Vendor.builder().id("1").fistName("vendor1").version(0L).build()));
+
+        byte[] body = webTestClient.get()
+                .uri(VendorController.BASE_URL + "/1")
+                .accept(WebFluxConfig.APPLICATION_CBOR)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(WebFluxConfig.APPLICATION_CBOR)
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+
+        assertEquals("vendor1", new ObjectMapper(new CBORFactory()).readValue(body, Vendor.class).getFistName());
+    }
+
+    @Test
+    public void listFiltered() {
+        given(vendorRepository.findAll(any(Query.class)))
+                .willReturn(Flux.just(Vendor.builder().lastName("Buck").build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?lastName=Buck")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Vendor.class)
+                .hasSize(1);
+
+        then(vendorRepository).should(never()).findAll();
+    }
+
+    @Test
+    public void streamNdjson() {
+        given(vendorRepository.findAll())
+                .willReturn(Flux.just(Vendor.builder().fistName("vendor1").build(),
+                        Vendor.builder().fistName("vendor2").build()));
+
+        String body = webTestClient.get()
+                .uri(VendorController.BASE_URL)
+                .accept(WebFluxConfig.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(WebFluxConfig.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+
+        assertEquals(2, body.trim().split("\n").length);
+    }
+
+    @Test
+    public void firstPage() {
+        given(vendorRepository.findAllBy(any(Pageable.class)))
+                .willReturn(Flux.just(Vendor.builder().id("a").build(),
+                        Vendor.builder().id("b").build(),
+                        Vendor.builder().id("c").build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?size=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(PageCursor.NEXT_CURSOR_HEADER, PageCursor.encode("b"))
+                .expectBodyList(Vendor.class)
+                .hasSize(2);
+
+        then(vendorRepository).should().findAllBy(PageCursor.pageable(2));
+    }
+
+    @Test
+    public void cursorWithoutSizeUsesDefaultSize() {
+        given(vendorRepository.findByIdGreaterThan(anyString(), any(Pageable.class)))
+                .willReturn(Flux.just(Vendor.builder().id("c").build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?cursor=" + PageCursor.encode("b"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Vendor.class)
+                .hasSize(1);
+
+        then(vendorRepository).should().findByIdGreaterThan("b", PageCursor.pageable(PageCursor.DEFAULT_PAGE_SIZE));
+        then(vendorRepository).should(never()).findAll();
+    }
+
+    @Test
+    public void invalidPageSize() {
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "?size=0")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void getByIdHasETag() {
+        given(vendorRepository.findById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").version(7L).build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "/someid")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"7\"");
+    }
+
+    @Test
+    public void getByIdNotModified() {
+        given(vendorRepository.findVersionById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").version(7L).build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "/someid")
+                .ifNoneMatch("\"7\"")
+                .exchange()
+                .expectStatus().isNotModified();
+
+        then(vendorRepository).should(never()).findById(anyString());
+    }
+
+    @Test
+    public void getByIdModifiedReloadsStaleCacheEntry() {
+        given(vendorRepository.findById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").version(7L).build()))
+                .willReturn(Mono.just(Vendor.builder().id("someid").version(8L).build()));
+        given(vendorRepository.findVersionById("someid"))
+                .willReturn(Mono.just(Vendor.builder().id("someid").version(8L).build()));
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "/someid")
+                .exchange()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"7\"");
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "/someid")
+                .ifNoneMatch("\"7\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"8\"");
+    }
+
+    @Test
+    public void getByIdNotFound() {
+        given(vendorRepository.findById("missing"))
+                .willReturn(Mono.empty());
+
+        webTestClient.get()
+                .uri(VendorController.BASE_URL + "/missing")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void create() {
+        given(vendorRepository.saveAll(any(Publisher.class)))
+                .willReturn(Flux.just(Vendor.builder().build()));
+
+        webTestClient.post().uri(VendorController.BASE_URL)
+                .body(Mono.just(Vendor.builder().fistName("vendor1").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBodyList(Vendor.class)
+                .hasSize(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void bulkCreate() {
+        given(bulkInsertService.insert(any(Flux.class), eq(Vendor.class)))
+                .willAnswer(invocation -> invocation.<Flux<Vendor>>getArgument(0)
+                        .count()
+                        .map(count -> BulkInsertResult.builder().inserted(count).build()));
+
+        BulkInsertResult result = webTestClient.post().uri(VendorController.BASE_URL + "/_bulk")
+                .contentType(WebFluxConfig.APPLICATION_NDJSON)
+                .syncBody("{\"fistName\":\"a\"}\n{\"fistName\":\"b\"}\n")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BulkInsertResult.class)
+                .returnResult().getResponseBody();
+
+        assertEquals(2, result.getInserted());
+    }
+
+    @Test
+    public void updateKeepsCurrentVersion() {
+        Vendor vendorUpdated = Vendor.builder().id("id").fistName("vendor1").version(3L).build();
+
+        given(vendorRepository.findVersionById("id"))
+                .willReturn(Mono.just(Vendor.builder().id("id").version(3L).build()));
+        given(vendorRepository.save(any(Vendor.class)))
+                .willReturn(Mono.just(vendorUpdated));
+
+        webTestClient.put().uri(VendorController.BASE_URL + "/id")
+                .body(Mono.just(Vendor.builder().fistName("vendor1").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Vendor.class)
+                .isEqualTo(vendorUpdated);
+
+        then(vendorRepository).should().save(vendorUpdated);
+    }
+
+    @Test
+    public void updateIfMatchConflict() {
+        given(vendorRepository.findVersionById("id"))
+                .willReturn(Mono.just(Vendor.builder().id("id").version(4L).build()));
+
+        webTestClient.put().uri(VendorController.BASE_URL + "/id")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .body(Mono.just(Vendor.builder().fistName("vendor1").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        then(vendorRepository).should(never()).save(any(Vendor.class));
+    }
+
+    @Test
+    public void patchIfMatchReturnsNewETag() {
+        given(patchService.patch(eq("id"), any(Vendor.class), eq(Vendor.class), any()))
+                .willReturn(Mono.just(Vendor.builder().id("id").fistName("vendor2").version(4L).build()));
+
+        webTestClient.patch().uri(VendorController.BASE_URL + "/id")
+                .header(HttpHeaders.IF_MATCH, "\"3\"")
+                .body(Mono.just(Vendor.builder().fistName("vendor2").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"4\"");
+    }
+
+    @Test
+    public void patchNotFound() {
+        given(patchService.patch(eq("id"), any(Vendor.class), eq(Vendor.class)))
+                .willReturn(Mono.empty());
+
+        webTestClient.patch().uri(VendorController.BASE_URL + "/id")
+                .body(Mono.just(Vendor.builder().fistName("vendor2").build()), Vendor.class)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void changesRouteIsNotTakenForAnId() {
+        given(changeStreamService.subscribe(Vendor.class, null))
+                .willReturn(Flux.just(EntityChange.<Vendor>builder().operation("delete").id("v1")
+                        .resumeToken(new BsonDocument("_data", new BsonInt32(1))).build()));
+
+        StepVerifier.create(webTestClient.get().uri(VendorController.BASE_URL + ChangeController.STREAM_PATH)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody())
+                .expectNextMatches(data -> data.contains("\"id\":\"v1\""))
+                .thenCancel()
+                .verify();
+
+        then(vendorRepository).should(never()).findById(anyString());
+    }
+
+    @Test
+    public void getByIds() {
+        given(vendorRepository.findById(anyString())).willReturn(Mono.empty());
+        given(vendorRepository.findById("v1")).willReturn(Mono.just(Vendor.builder().id("v1").build()));
+
+        webTestClient.get().uri(VendorController.BASE_URL + "?ids=v2,v1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.items[0].id").isEqualTo("v1")
+                .jsonPath("$.missing[0]").isEqualTo("v2");
+    }
+}
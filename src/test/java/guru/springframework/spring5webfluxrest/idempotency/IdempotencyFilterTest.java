@@ -0,0 +1,185 @@
+package guru.springframework.spring5webfluxrest.idempotency;
+
+import guru.springframework.spring5webfluxrest.config.IdempotencyProperties;
+import guru.springframework.spring5webfluxrest.config.RateLimitProperties;
+import guru.springframework.spring5webfluxrest.controllers.MultiGet;
+import guru.springframework.spring5webfluxrest.controllers.VendorController;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IdempotencyFilterTest {
+
+    private IdempotencyFilter filter;
+    private AtomicInteger executions;
+    private MonoProcessor<Void> release;
+    private WebFilterChain chain;
+
+    @Before
+    public void setUp() {
+        RateLimitProperties rateLimitProperties = new RateLimitProperties();
+        rateLimitProperties.setApiKeys(new HashSet<>(Arrays.asList("client1", "client2")));
+        filter = new IdempotencyFilter(new IdempotencyProperties(), rateLimitProperties, null);
+        executions = new AtomicInteger();
+        release = MonoProcessor.create();
+        release.onComplete();
+        chain = exchange -> release.then(Mono.defer(() -> {
+            int execution = executions.incrementAndGet();
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.CREATED);
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            return response.writeWith(Mono.just(response.bufferFactory()
+                    .wrap(("{\"execution\":" + execution + "}").getBytes(StandardCharsets.UTF_8))));
+        }));
+    }
+
+    @Test
+    public void replaysTheFirstResponse() {
+        MockServerWebExchange first = exchange(MockServerHttpRequest.post(VendorController.BASE_URL).header("Idempotency-Key", "a"));
+        MockServerWebExchange retry = exchange(MockServerHttpRequest.post(VendorController.BASE_URL).header("Idempotency-Key", "a"));
+        filter.filter(first, chain).block();
+        filter.filter(retry, chain).block();
+
+        assertEquals(1, executions.get());
+        assertEquals(HttpStatus.CREATED, retry.getResponse().getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, retry.getResponse().getHeaders().getContentType());
+        assertEquals("true", retry.getResponse().getHeaders().getFirst(IdempotencyFilter.REPLAYED_HEADER));
+        assertNull(first.getResponse().getHeaders().getFirst(IdempotencyFilter.REPLAYED_HEADER));
+        assertEquals(first.getResponse().getBodyAsString().block(), retry.getResponse().getBodyAsString().block());
+    }
+
+    @Test
+    public void concurrentDuplicatesWaitForTheFirst() {
+        release = MonoProcessor.create();
+        MockServerWebExchange first = exchange(MockServerHttpRequest.put(VendorController.BASE_URL + "/1").header("Idempotency-Key", "a"));
+        MockServerWebExchange duplicate = exchange(MockServerHttpRequest.put(VendorController.BASE_URL + "/1").header("Idempotency-Key", "a"));
+        MonoProcessor<Void> firstDone = filter.filter(first, chain).toProcessor();
+        MonoProcessor<Void> duplicateDone = filter.filter(duplicate, chain).toProcessor();
+
+        release.onComplete();
+        firstDone.block();
+        duplicateDone.block();
+
+        assertEquals(1, executions.get());
+        assertEquals("{\"execution\":1}", duplicate.getResponse().getBodyAsString().block());
+    }
+
+    @Test
+    public void failedExecutionRunsAgain() {
+        WebFilterChain failing = exchange -> Mono.error(new IllegalStateException("boom"));
+        try {
+            filter.filter(exchange(MockServerHttpRequest.post(VendorController.BASE_URL).header("Idempotency-Key", "a")), failing).block();
+        } catch (IllegalStateException expected) {
+        }
+        MockServerWebExchange retry = exchange(MockServerHttpRequest.post(VendorController.BASE_URL).header("Idempotency-Key", "a"));
+        filter.filter(retry, chain).block();
+
+        assertEquals(1, executions.get());
+        assertNull(retry.getResponse().getHeaders().getFirst(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    @Test
+    public void keysAreScopedToMethodAndPath() {
+        filter.filter(exchange(MockServerHttpRequest.put(VendorController.BASE_URL + "/1").header("Idempotency-Key", "a")), chain).block();
+        filter.filter(exchange(MockServerHttpRequest.put(VendorController.BASE_URL + "/2").header("Idempotency-Key", "a")), chain).block();
+        filter.filter(exchange(MockServerHttpRequest.post(VendorController.BASE_URL).header("Idempotency-Key", "a")), chain).block();
+        filter.filter(exchange(MockServerHttpRequest.post(VendorController.BASE_URL)), chain).block();
+        filter.filter(exchange(MockServerHttpRequest.post(VendorController.BASE_URL)), chain).block();
+
+        assertEquals(5, executions.get());
+    }
+
+    @Test
+    public void keysAreScopedToClients() {
+        filter.filter(exchange(MockServerHttpRequest.post(VendorController.BASE_URL)
+                .header("Idempotency-Key", "a").header("X-API-Key", "client1")), chain).block();
+        filter.filter(exchange(MockServerHttpRequest.post(VendorController.BASE_URL)
+                .header("Idempotency-Key", "a").header("X-API-Key", "client2")), chain).block();
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void keyReusedWithAnotherBodyIsRejected() {
+        filter.filter(exchange(MockServerHttpRequest.post(VendorController.BASE_URL).header("Idempotency-Key", "a")
+                .body("{\"fistName\":\"Joe\"}")), chain).block();
+
+        StepVerifier.create(filter.filter(exchange(MockServerHttpRequest.post(VendorController.BASE_URL)
+                .header("Idempotency-Key", "a").body("{\"fistName\":\"Jim\"}")), chain))
+                .expectErrorMatches(e -> ((ResponseStatusException) e).getStatus() == HttpStatus.UNPROCESSABLE_ENTITY)
+                .verify();
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void bodyIsPassedOn() {
+        chain = exchange -> exchange.getResponse().writeWith(DataBufferUtils.join(exchange.getRequest().getBody()));
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.post(VendorController.BASE_URL)
+                .header("Idempotency-Key", "a").body("{\"fistName\":\"Joe\"}"));
+
+        filter.filter(exchange, chain).block();
+
+        assertEquals("{\"fistName\":\"Joe\"}", exchange.getResponse().getBodyAsString().block());
+    }
+
+    @Test
+    public void bulkInsertsAndMultiGetsAreNotCovered() {
+        for (int i = 0; i < 2; i++) {
+            filter.filter(exchange(MockServerHttpRequest.post(VendorController.BASE_URL + "/_bulk")
+                    .header("Idempotency-Key", "a").body("{}\n{}\n")), chain).block();
+            filter.filter(exchange(MockServerHttpRequest.post(VendorController.BASE_URL + MultiGet.PATH)
+                    .header("Idempotency-Key", "b").body("{\"ids\":[]}")), chain).block();
+        }
+
+        assertEquals(4, executions.get());
+        assertTrue(IdempotencyFilter.isWrite(HttpMethod.PATCH, VendorController.BASE_URL + "/1"));
+        assertFalse(IdempotencyFilter.isWrite(HttpMethod.PUT, VendorController.BASE_URL));
+        assertFalse(IdempotencyFilter.isWrite(HttpMethod.POST, VendorController.BASE_URL + "/_bulk"));
+    }
+
+    @Test
+    public void largeBodiesAreRejected() {
+        IdempotencyProperties properties = new IdempotencyProperties();
+        properties.setMaxRequestSize(8);
+        filter = new IdempotencyFilter(properties, new RateLimitProperties(), null);
+
+        StepVerifier.create(filter.filter(exchange(MockServerHttpRequest.post(VendorController.BASE_URL)
+                .header("Idempotency-Key", "a").body("{\"fistName\":\"Joe\"}")), chain))
+                .expectErrorMatches(e -> ((ResponseStatusException) e).getStatus() == HttpStatus.PAYLOAD_TOO_LARGE)
+                .verify();
+        StepVerifier.create(filter.filter(exchange(MockServerHttpRequest.post(VendorController.BASE_URL)
+                .header("Idempotency-Key", "b").contentLength(9).body("{}")), chain))
+                .expectErrorMatches(e -> ((ResponseStatusException) e).getStatus() == HttpStatus.PAYLOAD_TOO_LARGE)
+                .verify();
+        assertEquals(0, executions.get());
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return MockServerWebExchange.from(request.build());
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest request) {
+        return MockServerWebExchange.from(request);
+    }
+}
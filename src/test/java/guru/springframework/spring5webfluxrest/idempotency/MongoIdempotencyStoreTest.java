@@ -0,0 +1,95 @@
+package guru.springframework.spring5webfluxrest.idempotency;
+
+import com.mongodb.client.result.UpdateResult;
+import guru.springframework.spring5webfluxrest.config.IdempotencyProperties;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+public class MongoIdempotencyStoreTest {
+
+    private static final String COLLECTION = "idempotency_keys";
+
+    private ReactiveMongoOperations mongoOperations;
+    private MongoIdempotencyStore store;
+
+    @Before
+    public void setUp() {
+        mongoOperations = Mockito.mock(ReactiveMongoOperations.class);
+        given(mongoOperations.insert(any(Document.class), eq(COLLECTION)))
+                .willReturn(Mono.error(new DuplicateKeyException("E11000")));
+        store = new MongoIdempotencyStore(mongoOperations, new IdempotencyProperties());
+    }
+
+    @Test
+    public void runningClaimConflicts() {
+        given(mongoOperations.findById("k", Document.class, COLLECTION)).willReturn(Mono.just(
+                new Document("_id", "k").append(MongoIdempotencyStore.CLAIMED_UNTIL, new Date(System.currentTimeMillis() + 60_000))));
+        given(mongoOperations.updateFirst(any(Query.class), any(Update.class), eq(COLLECTION)))
+                .willReturn(Mono.just(UpdateResult.acknowledged(0, 0L, null)));
+
+        StepVerifier.create(store.claim("k", "h"))
+                .expectErrorMatches(e -> ((ResponseStatusException) e).getStatus() == HttpStatus.CONFLICT)
+                .verify();
+    }
+
+    @Test
+    public void expiredClaimIsTakenOver() {
+        given(mongoOperations.findById("k", Document.class, COLLECTION)).willReturn(Mono.just(
+                new Document("_id", "k").append(MongoIdempotencyStore.CLAIMED_UNTIL, new Date(0))));
+        given(mongoOperations.updateFirst(any(Query.class), any(Update.class), eq(COLLECTION)))
+                .willReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+
+        StepVerifier.create(store.claim("k", "h")).verifyComplete();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        then(mongoOperations).should().updateFirst(query.capture(), any(Update.class), eq(COLLECTION));
+        Document criteria = query.getValue().getQueryObject();
+        assertEquals("k", criteria.get("_id"));
+        assertEquals(new Document("$exists", false), criteria.get(MongoIdempotencyStore.STATUS));
+    }
+
+    @Test
+    public void keyUsedWithAnotherBodyIsRejected() {
+        given(mongoOperations.findById("k", Document.class, COLLECTION)).willReturn(Mono.just(new Document("_id", "k")
+                .append(MongoIdempotencyStore.REQUEST_HASH, "other")
+                .append(MongoIdempotencyStore.STATUS, 201)));
+
+        StepVerifier.create(store.claim("k", "h"))
+                .expectErrorMatches(e -> ((ResponseStatusException) e).getStatus() == HttpStatus.UNPROCESSABLE_ENTITY)
+                .verify();
+    }
+
+    @Test
+    public void completedKeyIsReplayed() {
+        given(mongoOperations.findById("k", Document.class, COLLECTION)).willReturn(Mono.just(new Document("_id", "k")
+                .append(MongoIdempotencyStore.STATUS, 201)
+                .append(MongoIdempotencyStore.HEADERS, new Document())
+                .append(MongoIdempotencyStore.BODY, new Binary(new byte[]{1}))));
+
+        StepVerifier.create(store.claim("k", "h"))
+                .expectNextMatches(stored -> stored.getStatus() == 201)
+                .verifyComplete();
+        then(mongoOperations).should(never()).updateFirst(any(Query.class), any(Update.class), eq(COLLECTION));
+    }
+}
@@ -0,0 +1,56 @@
+package guru.springframework.spring5webfluxrest.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import static org.junit.Assert.assertEquals;
+
+public class FluxMetricsTest {
+
+    SimpleMeterRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Metrics.removeRegistry(registry);
+    }
+
+    @Test
+    public void countElements() {
+        StepVerifier.create(FluxMetrics.countElements("test.list", Flux.just("a", "b", "c")))
+                .expectNextCount(3)
+                .verifyComplete();
+
+        DistributionSummary summary = registry.get(FluxMetrics.RESPONSE_ELEMENTS)
+                .tag("endpoint", "test.list")
+                .tag("signal", "ON_COMPLETE")
+                .summary();
+        assertEquals(1, summary.count());
+        assertEquals(3, summary.totalAmount(), 0);
+    }
+
+    @Test
+    public void countElementsOnCancel() {
+        StepVerifier.create(FluxMetrics.countElements("test.cancel", Flux.range(0, 100)), 2)
+                .expectNextCount(2)
+                .thenCancel()
+                .verify();
+
+        DistributionSummary summary = registry.get(FluxMetrics.RESPONSE_ELEMENTS)
+                .tag("endpoint", "test.cancel")
+                .tag("signal", "CANCEL")
+                .summary();
+        assertEquals(2, summary.totalAmount(), 0);
+    }
+}
@@ -0,0 +1,137 @@
+package guru.springframework.spring5webfluxrest.ratelimit;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import guru.springframework.spring5webfluxrest.config.RateLimitProperties;
+import guru.springframework.spring5webfluxrest.controllers.VendorController;
+import org.bson.BsonDocument;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimitFilterTest {
+
+    private static final ConnectionDescription CONNECTION =
+            new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    private RateLimitProperties properties;
+    private MongoConcurrencyLimit mongoLimit;
+    private RateLimitFilter filter;
+    private AtomicInteger passed;
+    private WebFilterChain chain;
+
+    @Before
+    public void setUp() {
+        properties = new RateLimitProperties();
+        properties.setApiKeys(new HashSet<>(Arrays.asList("a", "b")));
+        properties.setRead(new RateLimitProperties.Bucket(2, 0.001));
+        properties.setWrite(new RateLimitProperties.Bucket(1, 0.001));
+        properties.getMongo().setInitialLimit(2);
+        properties.getMongo().setMinLimit(1);
+        mongoLimit = new MongoConcurrencyLimit(properties.getMongo());
+        filter = new RateLimitFilter(properties, mongoLimit);
+        passed = new AtomicInteger();
+        chain = exchange -> {
+            passed.incrementAndGet();
+            return Mono.empty();
+        };
+    }
+
+    @Test
+    public void limitsPerClient() {
+        assertNull(filter(MockServerHttpRequest.get(VendorController.BASE_URL).header("X-API-Key", "a")));
+        assertNull(filter(MockServerHttpRequest.get(VendorController.BASE_URL).header("X-API-Key", "a")));
+
+        MockServerWebExchange limited = exchange(MockServerHttpRequest.get(VendorController.BASE_URL).header("X-API-Key", "a"));
+        filter.filter(limited, chain).block();
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, limited.getResponse().getStatusCode());
+        assertEquals("1000", limited.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+        assertNull(filter(MockServerHttpRequest.get(VendorController.BASE_URL).header("X-API-Key", "b")));
+        assertEquals(3, passed.get());
+    }
+
+    @Test
+    public void unknownKeysShareTheRemoteAddressBucket() {
+        assertNull(filter(MockServerHttpRequest.post(VendorController.BASE_URL).header("X-API-Key", "made-up-1")));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS,
+                filter(MockServerHttpRequest.post(VendorController.BASE_URL).header("X-API-Key", "made-up-2")));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, filter(MockServerHttpRequest.post(VendorController.BASE_URL)));
+        assertNull(filter(MockServerHttpRequest.post(VendorController.BASE_URL).header("X-API-Key", "a")));
+    }
+
+    @Test
+    public void readsAndWritesHaveSeparateBuckets() {
+        assertNull(filter(MockServerHttpRequest.post(VendorController.BASE_URL).header("X-API-Key", "a")));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS,
+                filter(MockServerHttpRequest.put(VendorController.BASE_URL + "/1").header("X-API-Key", "a")));
+        assertNull(filter(MockServerHttpRequest.get(VendorController.BASE_URL + "/1").header("X-API-Key", "a")));
+    }
+
+    @Test
+    public void otherPathsAreNotLimited() {
+        for (int i = 0; i < 5; i++) {
+            assertNull(filter(MockServerHttpRequest.get("/actuator/health")));
+        }
+    }
+
+    @Test
+    public void shedsWhileMongoIsOverloaded() {
+        mongoLimit.commandStarted(started(1));
+        mongoLimit.commandStarted(started(2));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+                filter(MockServerHttpRequest.get(VendorController.BASE_URL).header("X-API-Key", "a")));
+
+        mongoLimit.commandSucceeded(new CommandSucceededEvent(1, CONNECTION, "find", new BsonDocument(), 1_000));
+        assertNull(filter(MockServerHttpRequest.get(VendorController.BASE_URL).header("X-API-Key", "a")));
+    }
+
+    @Test
+    public void slowCommandsShrinkTheLimit() {
+        properties.getMongo().setInitialLimit(10);
+        mongoLimit = new MongoConcurrencyLimit(properties.getMongo());
+
+        mongoLimit.commandStarted(started(1));
+        mongoLimit.commandSucceeded(new CommandSucceededEvent(1, CONNECTION, "find", new BsonDocument(),
+                properties.getMongo().getTargetLatency().toNanos() * 2));
+        assertEquals(9, mongoLimit.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            mongoLimit.commandStarted(started(i));
+            mongoLimit.commandSucceeded(new CommandSucceededEvent(i, CONNECTION, "find", new BsonDocument(), 1_000));
+        }
+        assertTrue(mongoLimit.getLimit() > 9);
+    }
+
+    private HttpStatus filter(MockServerHttpRequest.BaseBuilder<?> request) {
+        MockServerWebExchange exchange = exchange(request);
+        filter.filter(exchange, chain).block();
+        return exchange.getResponse().getStatusCode();
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return MockServerWebExchange.from(request.build());
+    }
+
+    private static CommandStartedEvent started(int requestId) {
+        return new CommandStartedEvent(requestId, CONNECTION, "test", "find", new BsonDocument("find", new BsonDocument()));
+    }
+}
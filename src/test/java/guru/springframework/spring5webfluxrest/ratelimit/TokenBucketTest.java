@@ -0,0 +1,52 @@
+package guru.springframework.spring5webfluxrest.ratelimit;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void allowsBurstUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(3, 1);
+
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(SECOND, bucket.tryAcquire(0));
+    }
+
+    @Test
+    public void refillsAtSustainedRate() {
+        TokenBucket bucket = new TokenBucket(1, 10);
+
+        assertEquals(0, bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(SECOND / 20) > 0);
+        assertEquals(0, bucket.tryAcquire(SECOND / 10));
+    }
+
+    @Test
+    public void idleTimeDoesNotExceedCapacity() {
+        TokenBucket bucket = new TokenBucket(2, 1);
+
+        assertEquals(0, bucket.tryAcquire(100 * SECOND));
+        assertEquals(0, bucket.tryAcquire(100 * SECOND));
+        assertTrue(bucket.tryAcquire(100 * SECOND) > 0);
+    }
+
+    @Test
+    public void rejectedAttemptsTakeNoToken() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+
+        assertEquals(0, bucket.tryAcquire(0));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(bucket.tryAcquire(SECOND / 2) > 0);
+        }
+        assertEquals(0, bucket.tryAcquire(SECOND));
+    }
+}
@@ -0,0 +1,225 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.reactivestreams.client.ChangeStreamPublisher;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import guru.springframework.spring5webfluxrest.config.ChangeStreamProperties;
+import guru.springframework.spring5webfluxrest.domain.EntityChange;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.ReactiveCollectionCallback;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+
+public class ChangeStreamServiceTest {
+
+    private ReactiveMongoOperations mongoOperations;
+    private ChangeStreamProperties properties;
+    private ChangeStreamService changeStreamService;
+    private DirectProcessor<ChangeStreamDocument<Document>> shared;
+    private DirectProcessor<ChangeStreamDocument<Document>> dedicated;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        MappingMongoConverter converter = new MappingMongoConverter(Mockito.mock(DbRefResolver.class),
+                new MongoMappingContext());
+        converter.afterPropertiesSet();
+
+        shared = DirectProcessor.create();
+        dedicated = DirectProcessor.create();
+        mongoOperations = Mockito.mock(ReactiveMongoOperations.class);
+        given(mongoOperations.getConverter()).willReturn(converter);
+        given(mongoOperations.execute(eq(Vendor.class), any(ReactiveCollectionCallback.class)))
+                .willReturn((Flux) shared, (Flux) dedicated);
+
+        properties = new ChangeStreamProperties();
+        properties.setEnabled(true);
+        changeStreamService = new ChangeStreamService(mongoOperations, properties);
+    }
+
+    @Test
+    public void resumesFromHistoryWithoutDuplicates() {
+        changeStreamService.changes(Vendor.class).subscribe();
+        shared.onNext(insert(1));
+        shared.onNext(insert(2));
+        shared.onNext(insert(3));
+
+        StepVerifier.create(changeStreamService.subscribe(Vendor.class, token(1)).map(EntityChange::getId))
+                .expectNext("v2", "v3")
+                .then(() -> shared.onNext(insert(4)))
+                .expectNext("v4")
+                .thenCancel()
+                .verify();
+
+        then(mongoOperations).should(times(1)).execute(eq(Vendor.class), any(ReactiveCollectionCallback.class));
+    }
+
+    @Test
+    public void unknownTokenOpensOwnChangeStream() {
+        changeStreamService.changes(Vendor.class).subscribe();
+
+        StepVerifier.create(changeStreamService.subscribe(Vendor.class, token(99)))
+                .then(() -> dedicated.onNext(insert(100)))
+                .assertNext(change -> {
+                    assertEquals("insert", change.getOperation());
+                    assertEquals("v100", change.getEntity().getId());
+                    assertEquals(token(100), change.getResumeToken());
+                })
+                .thenCancel()
+                .verify();
+
+        then(mongoOperations).should(times(2)).execute(eq(Vendor.class), any(ReactiveCollectionCallback.class));
+    }
+
+    @Test
+    public void resumeStreamsAreCapped() {
+        properties.setMaxResumeStreams(1);
+        changeStreamService.changes(Vendor.class).subscribe();
+        changeStreamService.subscribe(Vendor.class, token(98)).subscribe();
+
+        StepVerifier.create(changeStreamService.subscribe(Vendor.class, token(99)))
+                .assertNext(change -> assertEquals("invalidate", change.getOperation()))
+                .verifyComplete();
+
+        then(mongoOperations).should(times(2)).execute(eq(Vendor.class), any(ReactiveCollectionCallback.class));
+    }
+
+    @Test
+    public void tokenTooOldToResumeInvalidatesSubscription() {
+        changeStreamService.changes(Vendor.class).subscribe();
+
+        StepVerifier.create(changeStreamService.subscribe(Vendor.class, token(99)))
+                .then(() -> dedicated.onError(new MongoCommandException(
+                        new BsonDocument("code", new BsonInt32(286)), new ServerAddress())))
+                .assertNext(change -> {
+                    assertEquals("invalidate", change.getOperation());
+                    assertNull(change.getResumeToken());
+                })
+                .verifyComplete();
+
+        properties.setMaxResumeStreams(1);
+        changeStreamService.subscribe(Vendor.class, token(99)).subscribe().dispose();
+        then(mongoOperations).should(times(3)).execute(eq(Vendor.class), any(ReactiveCollectionCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lostResumeTokenReopensFromNowWithInvalidate() {
+        properties.setRetryDelay(Duration.ofMillis(1));
+        DirectProcessor<ChangeStreamDocument<Document>> reopened = DirectProcessor.create();
+        given(mongoOperations.execute(eq(Vendor.class), any(ReactiveCollectionCallback.class)))
+                .willReturn((Flux) shared, (Flux) reopened);
+
+        StepVerifier.create(changeStreamService.changes(Vendor.class))
+                .then(() -> shared.onNext(insert(1)))
+                .assertNext(event -> assertEquals(token(1), event.getResumeToken()))
+                .then(() -> shared.onError(new MongoCommandException(
+                        new BsonDocument("code", new BsonInt32(286)), new ServerAddress())))
+                .assertNext(event -> {
+                    assertEquals(OperationType.INVALIDATE, event.getOperation());
+                    assertNull(event.getResumeToken());
+                })
+                .then(this::assertReopenedFromNow)
+                .then(() -> reopened.onNext(insert(2)))
+                .assertNext(event -> assertEquals("v2", event.getId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void networkErrorsAreResumable() {
+        assertTrue(ChangeStreamService.isResumable(new MongoSocketReadException("reset", new ServerAddress())));
+        assertTrue(ChangeStreamService.isResumable(new MongoCommandException(
+                new BsonDocument("code", new BsonInt32(43)), new ServerAddress())));
+        assertFalse(ChangeStreamService.isResumable(new MongoCommandException(
+                new BsonDocument("code", new BsonInt32(280)), new ServerAddress())));
+    }
+
+    @Test
+    public void slowSubscriberIsDisconnected() {
+        properties.setSubscriberBufferSize(2);
+
+        StepVerifier.create(changeStreamService.subscribe(Vendor.class, null), 0)
+                .then(() -> {
+                    shared.onNext(insert(1));
+                    shared.onNext(insert(2));
+                    shared.onNext(insert(3));
+                })
+                .thenRequest(10)
+                .expectNextCount(2)
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
+
+    @Test
+    public void slowSubscriberDropsOldest() {
+        properties.setSubscriberBufferSize(2);
+        properties.setSlowSubscriberPolicy(ChangeStreamProperties.SlowSubscriberPolicy.DROP_OLDEST);
+
+        StepVerifier.create(changeStreamService.subscribe(Vendor.class, null).map(EntityChange::getId), 0)
+                .then(() -> {
+                    shared.onNext(insert(1));
+                    shared.onNext(insert(2));
+                    shared.onNext(insert(3));
+                })
+                .thenRequest(10)
+                .expectNext("v2", "v3")
+                .thenCancel()
+                .verify();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertReopenedFromNow() {
+        ArgumentCaptor<ReactiveCollectionCallback> callback = ArgumentCaptor.forClass(ReactiveCollectionCallback.class);
+        then(mongoOperations).should(timeout(1000).times(2)).execute(eq(Vendor.class), callback.capture());
+
+        MongoCollection<Document> collection = Mockito.mock(MongoCollection.class);
+        ChangeStreamPublisher<Document> publisher = Mockito.mock(ChangeStreamPublisher.class);
+        given(collection.watch()).willReturn(publisher);
+        given(publisher.fullDocument(any())).willReturn(publisher);
+        callback.getAllValues().get(1).doInCollection(collection);
+        then(publisher).should(never()).resumeAfter(any());
+    }
+
+    private static BsonDocument token(int n) {
+        return new BsonDocument("_data", new BsonInt32(n));
+    }
+
+    private static ChangeStreamDocument<Document> insert(int n) {
+        return new ChangeStreamDocument<>(token(n), new MongoNamespace("test.vendor"),
+                new Document("_id", "v" + n).append("fistName", "Joe"),
+                new BsonDocument("_id", new BsonString("v" + n)), OperationType.INSERT, null);
+    }
+}
@@ -0,0 +1,91 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import guru.springframework.spring5webfluxrest.config.ExecutionProperties;
+import guru.springframework.spring5webfluxrest.config.ExportProperties;
+import guru.springframework.spring5webfluxrest.config.WorkSchedulers;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.BDDMockito.given;
+
+public class ExportServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ReactiveMongoOperations mongoOperations;
+    private WorkSchedulers workSchedulers;
+    private ExportService exportService;
+
+    @Before
+    public void setUp() {
+        mongoOperations = Mockito.mock(ReactiveMongoOperations.class);
+        ExportProperties properties = new ExportProperties();
+        properties.setDirectory(folder.getRoot());
+        workSchedulers = new WorkSchedulers(new ExecutionProperties());
+        exportService = new ExportService(mongoOperations, new ObjectMapper(), properties, workSchedulers);
+    }
+
+    @After
+    public void tearDown() {
+        workSchedulers.destroy();
+    }
+
+    @Test
+    public void snapshotWritesGzippedNdjson() throws Exception {
+        given(mongoOperations.findAll(Vendor.class))
+                .willReturn(Flux.just(Vendor.builder().fistName("Joe").build(), Vendor.builder().fistName("Bill").build()));
+
+        assertFalse(exportService.current(ExportService.VENDORS).isPresent());
+        StepVerifier.create(exportService.snapshot(ExportService.VENDORS))
+                .expectNext(folder.getRoot().toPath().resolve("vendors.ndjson.gz"))
+                .verifyComplete();
+
+        List<String> lines = lines(exportService.current(ExportService.VENDORS).get());
+        assertEquals(2, lines.size());
+        assertEquals("Bill", new ObjectMapper().readValue(lines.get(1), Vendor.class).getFistName());
+    }
+
+    @Test
+    public void failedSnapshotKeepsPreviousFile() throws Exception {
+        given(mongoOperations.findAll(Vendor.class))
+                .willReturn(Flux.just(Vendor.builder().fistName("Joe").build()))
+                .willReturn(Flux.concat(Flux.just(Vendor.builder().fistName("Bill").build()),
+                        Flux.error(new IllegalStateException("cursor killed"))));
+
+        exportService.snapshot(ExportService.VENDORS).block();
+        StepVerifier.create(exportService.snapshot(ExportService.VENDORS))
+                .verifyError(IllegalStateException.class);
+
+        assertEquals(1, lines(exportService.current(ExportService.VENDORS).get()).size());
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    private static List<String> lines(Path file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import guru.springframework.spring5webfluxrest.config.PatchCoalescingProperties;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveCollectionCallback;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+public class PatchCoalescerTest {
+
+    private ReactiveMongoOperations mongoOperations;
+    private PatchCoalescingProperties properties;
+    private PatchCoalescer patchCoalescer;
+
+    @Before
+    public void setUp() throws Exception {
+        MappingMongoConverter converter = new MappingMongoConverter(Mockito.mock(DbRefResolver.class),
+                new MongoMappingContext());
+        converter.afterPropertiesSet();
+
+        mongoOperations = Mockito.mock(ReactiveMongoOperations.class);
+        given(mongoOperations.getConverter()).willReturn(converter);
+        given(mongoOperations.execute(eq(Vendor.class), any(ReactiveCollectionCallback.class))).willReturn(Flux.empty());
+
+        properties = new PatchCoalescingProperties();
+        properties.setEnabled(true);
+        properties.setWindow(Duration.ofHours(1));
+        patchCoalescer = new PatchCoalescer(mongoOperations, properties);
+    }
+
+    @Test
+    public void patchesToOneDocumentAreMergedIntoOneUpdate() {
+        Vendor stored = Vendor.builder().id("id").fistName("vendor3").lastName("vendor2").version(1L).build();
+        given(mongoOperations.find(any(Query.class), eq(Vendor.class))).willReturn(Flux.just(stored));
+        ApplicationEventPublisher eventPublisher = Mockito.mock(ApplicationEventPublisher.class);
+        patchCoalescer.setApplicationEventPublisher(eventPublisher);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        patchCoalescer.bindTo(registry);
+
+        MonoProcessor<Vendor> first = patch("id", new Document("fistName", "vendor2")).toProcessor();
+        MonoProcessor<Vendor> second = patch("id", new Document("lastName", "vendor2")).toProcessor();
+        MonoProcessor<Vendor> third = patch("id", new Document("fistName", "vendor3")).toProcessor();
+        assertFalse(first.isTerminated());
+
+        patchCoalescer.close();
+
+        assertEquals(stored, first.block(Duration.ZERO));
+        assertEquals(stored, second.block(Duration.ZERO));
+        assertEquals(stored, third.block(Duration.ZERO));
+
+        List<WriteModel<Document>> updates = bulkWrite();
+        assertEquals(1, updates.size());
+        Document update = (Document) ((UpdateOneModel<Document>) updates.get(0)).getUpdate();
+        assertEquals(new Document("fistName", "vendor3").append("lastName", "vendor2"), update.get("$set"));
+        assertEquals(new Document("version", 1), update.get("$inc"));
+        assertEquals(3.0, registry.get("patch.coalescing.ratio").gauge().value(), 0);
+        assertEquals(1.0, registry.get("patch.coalescing.writes").functionCounter().count(), 0);
+        then(eventPublisher).should().publishEvent(any(AfterSaveEvent.class));
+    }
+
+    @Test
+    public void fullBatchIsWrittenWithoutWaitingForTheWindow() {
+        properties.setBatchSize(2);
+        given(mongoOperations.find(any(Query.class), eq(Vendor.class))).willReturn(Flux.just(
+                Vendor.builder().id("id1").fistName("vendor1").build(),
+                Vendor.builder().id("id2").fistName("vendor2").build()));
+
+        MonoProcessor<Vendor> first = patch("id1", new Document("fistName", "vendor1")).toProcessor();
+
+        StepVerifier.create(patch("id2", new Document("fistName", "vendor2")))
+                .expectNextMatches(vendor -> "id2".equals(vendor.getId()))
+                .verifyComplete();
+        assertEquals("id1", first.block(Duration.ZERO).getId());
+        assertEquals(2, bulkWrite().size());
+    }
+
+    @Test
+    public void windowEndFlushes() {
+        properties.setWindow(Duration.ofMillis(10));
+        Vendor stored = Vendor.builder().id("id").fistName("vendor2").build();
+        given(mongoOperations.find(any(Query.class), eq(Vendor.class))).willReturn(Flux.just(stored));
+
+        StepVerifier.create(patch("id", new Document("fistName", "vendor2")))
+                .expectNext(stored)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void unknownIdCompletesEmpty() {
+        given(mongoOperations.find(any(Query.class), eq(Vendor.class))).willReturn(Flux.empty());
+
+        MonoProcessor<Vendor> result = patch("missing", new Document("fistName", "vendor2")).toProcessor();
+        patchCoalescer.close();
+
+        assertTrue(result.isTerminated());
+        assertEquals(null, result.block(Duration.ZERO));
+    }
+
+    @Test
+    public void patchesToOtherDocumentsAreWrittenDirectlyWhileFull() {
+        properties.setMaxPending(1);
+        Vendor direct = Vendor.builder().id("id2").build();
+
+        patch("id1", new Document("fistName", "vendor1")).subscribe();
+
+        StepVerifier.create(patchCoalescer.patch("id2", new Document("fistName", "vendor2"), Vendor.class,
+                Mono.just(direct)))
+                .expectNext(direct)
+                .verifyComplete();
+        assertEquals(1, patchCoalescer.pendingCount());
+    }
+
+    @Test
+    public void onlyUnconditionalPatchesAreCoalesced() {
+        PatchService patchService = new PatchService(mongoOperations, patchCoalescer);
+        Vendor patched = Vendor.builder().id("id").fistName("vendor2").version(4L).build();
+        given(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Vendor.class)))
+                .willReturn(Mono.just(patched));
+
+        StepVerifier.create(patchService.patch("id", Vendor.builder().fistName("vendor2").build(), Vendor.class,
+                Collections.singleton(3L)))
+                .expectNext(patched)
+                .verifyComplete();
+
+        patchService.patch("id", Vendor.builder().fistName("vendor3").build(), Vendor.class).subscribe();
+
+        assertEquals(1, patchCoalescer.pendingCount());
+        then(mongoOperations).should(times(1))
+                .findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Vendor.class));
+        then(mongoOperations).should(never()).execute(eq(Vendor.class), any(ReactiveCollectionCallback.class));
+    }
+
+    private Mono<Vendor> patch(String id, Document fields) {
+        return patchCoalescer.patch(id, fields, Vendor.class, Mono.error(new AssertionError("written directly")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<WriteModel<Document>> bulkWrite() {
+        ArgumentCaptor<ReactiveCollectionCallback> callback = ArgumentCaptor.forClass(ReactiveCollectionCallback.class);
+        then(mongoOperations).should().execute(eq(Vendor.class), callback.capture());
+
+        MongoCollection<Document> collection = Mockito.mock(MongoCollection.class);
+        callback.getValue().doInCollection(collection);
+
+        ArgumentCaptor<List> updates = ArgumentCaptor.forClass(List.class);
+        then(collection).should().bulkWrite(updates.capture(), any(BulkWriteOptions.class));
+        return updates.getValue();
+    }
+}
@@ -0,0 +1,171 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import guru.springframework.spring5webfluxrest.config.PatchCoalescingProperties;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+public class PatchServiceTest {
+
+    private ReactiveMongoOperations mongoOperations;
+    private PatchService patchService;
+
+    @Before
+    public void setUp() throws Exception {
+        MappingMongoConverter converter = new MappingMongoConverter(Mockito.mock(DbRefResolver.class),
+                new MongoMappingContext());
+        converter.afterPropertiesSet();
+
+        mongoOperations = Mockito.mock(ReactiveMongoOperations.class);
+        given(mongoOperations.getConverter()).willReturn(converter);
+        patchService = new PatchService(mongoOperations,
+                new PatchCoalescer(mongoOperations, new PatchCoalescingProperties()));
+    }
+
+    @Test
+    public void patchWithChange() {
+        Vendor patched = Vendor.builder().id("id").fistName("vendor2").lastName("vendor").version(1L).build();
+
+        given(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Vendor.class)))
+                .willReturn(Mono.just(patched));
+
+        StepVerifier.create(patchService.patch("id", Vendor.builder().fistName("vendor2").build(), Vendor.class))
+                .expectNext(patched)
+                .verifyComplete();
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        then(mongoOperations).should().findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class), eq(Vendor.class));
+        assertEquals(new Document("fistName", "vendor2"), update.getValue().getUpdateObject().get("$set"));
+        assertEquals(new Document("version", 1), update.getValue().getUpdateObject().get("$inc"));
+        then(mongoOperations).should(never()).findById(anyString(), any());
+    }
+
+    @Test
+    public void patchPublishesAfterSave() {
+        Vendor patched = Vendor.builder().id("id").fistName("vendor2").version(1L).build();
+        ApplicationEventPublisher eventPublisher = Mockito.mock(ApplicationEventPublisher.class);
+        patchService.setApplicationEventPublisher(eventPublisher);
+
+        given(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Vendor.class)))
+                .willReturn(Mono.just(patched));
+
+        StepVerifier.create(patchService.patch("id", Vendor.builder().fistName("vendor2").build(), Vendor.class))
+                .expectNext(patched)
+                .verifyComplete();
+
+        ArgumentCaptor<AfterSaveEvent> event = ArgumentCaptor.forClass(AfterSaveEvent.class);
+        then(eventPublisher).should().publishEvent(event.capture());
+        assertEquals(patched, event.getValue().getSource());
+        assertEquals("vendor", event.getValue().getCollectionName());
+        assertEquals("vendor2", event.getValue().getDocument().get("fistName"));
+    }
+
+    @Test
+    public void patchNoChange() {
+        Vendor vendor = Vendor.builder().id("id").fistName("vendor").lastName("vendor").version(0L).build();
+
+        given(mongoOperations.findById("id", Vendor.class))
+                .willReturn(Mono.just(vendor));
+
+        StepVerifier.create(patchService.patch("id", Vendor.builder().version(5L).build(), Vendor.class))
+                .expectNext(vendor)
+                .verifyComplete();
+
+        then(mongoOperations).should(never()).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), any(Class.class));
+    }
+
+    @Test
+    public void patchWithSameDesc() {
+        Category cat = Category.builder().id("id").description("desc").version(2L).build();
+
+        given(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Category.class)))
+                .willReturn(Mono.empty());
+        given(mongoOperations.findById("id", Category.class))
+                .willReturn(Mono.just(cat));
+
+        StepVerifier.create(patchService.patch("id", Category.builder().description("desc").build(), Category.class))
+                .expectNext(cat)
+                .verifyComplete();
+    }
+
+    @Test
+    public void patchMissing() {
+        given(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Category.class)))
+                .willReturn(Mono.empty());
+        given(mongoOperations.findById("missing", Category.class))
+                .willReturn(Mono.empty());
+
+        StepVerifier.create(patchService.patch("missing", Category.builder().description("desc").build(), Category.class))
+                .verifyComplete();
+    }
+
+    @Test
+    public void patchAtExpectedVersion() {
+        Vendor patched = Vendor.builder().id("id").fistName("vendor2").version(4L).build();
+
+        given(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Vendor.class)))
+                .willReturn(Mono.just(patched));
+
+        StepVerifier.create(patchService.patch("id", Vendor.builder().fistName("vendor2").build(), Vendor.class,
+                Collections.singleton(3L)))
+                .expectNext(patched)
+                .verifyComplete();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        then(mongoOperations).should().findAndModify(query.capture(), any(Update.class), any(FindAndModifyOptions.class), eq(Vendor.class));
+        assertEquals(new Document("$in", Collections.singleton(3L)), query.getValue().getQueryObject().get("version"));
+    }
+
+    @Test
+    public void patchAtOtherVersion() {
+        given(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Vendor.class)))
+                .willReturn(Mono.empty());
+        given(mongoOperations.findById("id", Vendor.class))
+                .willReturn(Mono.just(Vendor.builder().id("id").fistName("vendor1").version(4L).build()));
+
+        StepVerifier.create(patchService.patch("id", Vendor.builder().fistName("vendor2").build(), Vendor.class,
+                Collections.singleton(3L)))
+                .verifyError(OptimisticLockingFailureException.class);
+    }
+
+    @Test
+    public void patchWithoutChangeAtExpectedVersion() {
+        Vendor vendor = Vendor.builder().id("id").fistName("vendor2").version(3L).build();
+
+        given(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Vendor.class)))
+                .willReturn(Mono.empty());
+        given(mongoOperations.findById("id", Vendor.class))
+                .willReturn(Mono.just(vendor));
+
+        StepVerifier.create(patchService.patch("id", Vendor.builder().fistName("vendor2").build(), Vendor.class,
+                Collections.singleton(3L)))
+                .expectNext(vendor)
+                .verifyComplete();
+    }
+}
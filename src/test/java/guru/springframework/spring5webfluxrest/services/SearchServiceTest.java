@@ -0,0 +1,57 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import guru.springframework.spring5webfluxrest.domain.SearchHit;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+
+public class SearchServiceTest {
+
+    private ReactiveMongoOperations mongoOperations;
+    private SearchService searchService;
+
+    @Before
+    public void setUp() throws Exception {
+        MappingMongoConverter converter = new MappingMongoConverter(Mockito.mock(DbRefResolver.class),
+                new MongoMappingContext());
+        converter.afterPropertiesSet();
+
+        mongoOperations = Mockito.mock(ReactiveMongoOperations.class);
+        given(mongoOperations.getConverter()).willReturn(converter);
+        searchService = new SearchService(mongoOperations, new TypeaheadIndex());
+    }
+
+    @Test
+    public void textRanksAcrossCollections() {
+        given(mongoOperations.find(any(Query.class), eq(Document.class), eq("vendor")))
+                .willReturn(Flux.just(new Document("_id", "v1").append("fistName", "Joe").append("score", 0.75)));
+        given(mongoOperations.find(any(Query.class), eq(Document.class), eq("category")))
+                .willReturn(Flux.just(new Document("_id", "c1").append("description", "Joe's Nuts").append("score", 1.5)));
+
+        StepVerifier.create(searchService.text("joe", 10))
+                .expectNext(SearchHit.builder().type(SearchHit.CATEGORY).id("c1").text("Joe's Nuts").score(1.5).build())
+                .expectNext(SearchHit.builder().type(SearchHit.VENDOR).id("v1").text("Joe").score(0.75).build())
+                .verifyComplete();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        then(mongoOperations).should().find(query.capture(), eq(Document.class), eq("vendor"));
+        assertEquals(new Document("$search", "joe"), query.getValue().getQueryObject().get("$text"));
+        assertEquals(new Document("$meta", "textScore"), query.getValue().getSortObject().get("score"));
+        assertEquals(10, query.getValue().getLimit());
+    }
+}
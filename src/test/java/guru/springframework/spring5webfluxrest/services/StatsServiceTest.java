@@ -0,0 +1,208 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.mongodb.client.model.changestream.OperationType;
+import guru.springframework.spring5webfluxrest.config.StatsProperties;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.ChangeEvent;
+import guru.springframework.spring5webfluxrest.domain.Stats;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class StatsServiceTest {
+
+    private static final ObjectId JANUARY = new ObjectId(Date.from(Instant.parse("2018-01-15T00:00:00Z")));
+    private static final ObjectId MARCH = new ObjectId(Date.from(Instant.parse("2018-03-15T00:00:00Z")));
+
+    private ReactiveMongoOperations mongoOperations;
+    private ChangeStreamService changeStreamService;
+    private DirectProcessor<ChangeEvent> vendorChanges;
+    private StatsService statsService;
+
+    @Before
+    public void setUp() throws Exception {
+        MappingMongoConverter converter = new MappingMongoConverter(Mockito.mock(DbRefResolver.class),
+                new MongoMappingContext());
+        converter.afterPropertiesSet();
+        mongoOperations = Mockito.mock(ReactiveMongoOperations.class);
+        given(mongoOperations.getConverter()).willReturn(converter);
+        given(mongoOperations.findOne(any(Query.class), eq(Document.class), eq("vendor")))
+                .willReturn(Mono.just(new Document("_id", JANUARY)));
+        given(mongoOperations.count(any(Query.class), eq("category"))).willReturn(Mono.just(2L));
+
+        vendorChanges = DirectProcessor.create();
+        changeStreamService = Mockito.mock(ChangeStreamService.class);
+        given(changeStreamService.changes(Vendor.class)).willReturn((Flux) vendorChanges);
+        given(changeStreamService.changes(Category.class)).willReturn(Flux.never());
+
+        StatsProperties statsProperties = new StatsProperties();
+        statsProperties.setRecountDelay(Duration.ZERO);
+        statsService = new StatsService(mongoOperations, changeStreamService, statsProperties);
+        statsService.start();
+    }
+
+    @After
+    public void tearDown() {
+        statsService.stop();
+    }
+
+    @Test
+    public void insertsMoveCounters() {
+        saved(JANUARY.toHexString(), "Buck", "c1", "c2", "c1");
+        saved(MARCH.toHexString(), "Adams", "c1");
+        saved("custom", null);
+        statsService.onAfterSave(new AfterSaveEvent<>(Category.builder().id("c1").version(0L).build(),
+                new Document(), "category"));
+
+        Stats stats = statsService.snapshot();
+        assertEquals(3, stats.getVendors());
+        assertEquals(1, stats.getCategories());
+        assertEquals(Long.valueOf(1), stats.getVendorsByInitial().get("B"));
+        assertEquals(Long.valueOf(1), stats.getVendorsByInitial().get(StatsService.OTHER_INITIAL));
+        assertEquals(Long.valueOf(1), stats.getVendorsByCreated().get("2018-01"));
+        assertEquals(Long.valueOf(1), stats.getVendorsByCreated().get(StatsService.UNKNOWN_CREATED));
+        assertEquals(Long.valueOf(2), stats.getVendorsByCategory().get("c1"));
+        assertEquals(Long.valueOf(1), stats.getVendorsByCategory().get("c2"));
+    }
+
+    @Test
+    public void changeStreamIsTheOnlySourceWhenEnabled() {
+        given(changeStreamService.isEnabled()).willReturn(true);
+
+        saved(JANUARY.toHexString(), "Buck");
+        vendorChanges.onNext(ChangeEvent.builder().operation(OperationType.INSERT).id(JANUARY.toHexString())
+                .document(new Document("_id", JANUARY).append("lastName", "Buck")).build());
+
+        assertEquals(1, statsService.snapshot().getVendors());
+        assertEquals(Collections.singletonMap("B", 1L), statsService.snapshot().getVendorsByInitial());
+    }
+
+    @Test
+    public void loadGroupsInMongo() {
+        given(mongoOperations.aggregate(any(Aggregation.class), eq("vendor"), eq(Document.class)))
+                .willReturn(Flux.just(facets()));
+
+        assertEquals(Long.valueOf(5), statsService.load().block());
+
+        Stats stats = statsService.snapshot();
+        assertEquals(3, stats.getVendors());
+        assertEquals(2, stats.getCategories());
+        assertEquals(Long.valueOf(2), stats.getVendorsByInitial().get("B"));
+        assertEquals(Long.valueOf(1), stats.getVendorsByInitial().get(StatsService.OTHER_INITIAL));
+        assertEquals(Long.valueOf(2), stats.getVendorsByCreated().get("2018-01"));
+        assertEquals(Long.valueOf(1), stats.getVendorsByCreated().get(StatsService.UNKNOWN_CREATED));
+        assertEquals(Collections.singletonMap("c1", 2L), stats.getVendorsByCategory());
+
+        ArgumentCaptor<Aggregation> aggregation = ArgumentCaptor.forClass(Aggregation.class);
+        verify(mongoOperations).aggregate(aggregation.capture(), eq("vendor"), eq(Document.class));
+        List<Document> pipeline = aggregation.getValue().toDocument("vendor", Aggregation.DEFAULT_CONTEXT)
+                .get("pipeline", List.class);
+        assertEquals(1, pipeline.size());
+        Document bucket = (Document) pipeline.get(0).get("$facet", Document.class)
+                .get("created", List.class).get(0);
+        List<?> boundaries = bucket.get("$bucket", Document.class).get("boundaries", List.class);
+        assertEquals(Date.from(Instant.parse("2018-01-01T00:00:00Z")), ((ObjectId) boundaries.get(0)).getDate());
+    }
+
+    @Test
+    public void updatesAndDeletesAreRecountedInMongo() {
+        saved(JANUARY.toHexString(), "Zed");
+        given(mongoOperations.aggregate(any(Aggregation.class), eq("vendor"), eq(Document.class)))
+                .willReturn(Flux.just(facets()));
+
+        saved(JANUARY.toHexString(), 1L, "Buck");
+
+        Stats stats = statsService.snapshot();
+        assertEquals(3, stats.getVendors());
+        assertEquals(Long.valueOf(2), stats.getVendorsByInitial().get("B"));
+        assertTrue(!stats.getVendorsByInitial().containsKey("Z"));
+
+        statsService.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", "custom"), Object.class, "vendor"));
+
+        verify(mongoOperations, Mockito.times(2)).aggregate(any(Aggregation.class), eq("vendor"), eq(Document.class));
+    }
+
+    @Test
+    public void insertsDoNotRecount() {
+        saved(JANUARY.toHexString(), "Buck");
+        saved(MARCH.toHexString(), "Adams");
+
+        verify(mongoOperations, never()).aggregate(any(Aggregation.class), eq("vendor"), eq(Document.class));
+        assertEquals(2, statsService.snapshot().getVendors());
+    }
+
+    @Test
+    public void missedChangesAreRecounted() {
+        given(changeStreamService.isEnabled()).willReturn(true);
+        given(mongoOperations.aggregate(any(Aggregation.class), eq("vendor"), eq(Document.class)))
+                .willReturn(Flux.just(facets()));
+
+        vendorChanges.onNext(ChangeEvent.invalidated());
+
+        assertEquals(3, statsService.snapshot().getVendors());
+        assertEquals(Collections.singletonMap("c1", 2L), statsService.snapshot().getVendorsByCategory());
+    }
+
+    @Test
+    public void initials() {
+        assertEquals("B", StatsService.initialOf("buck"));
+        assertEquals("É", StatsService.initialOf("élan"));
+        assertEquals(StatsService.OTHER_INITIAL, StatsService.initialOf("1st"));
+        assertEquals(StatsService.OTHER_INITIAL, StatsService.initialOf(""));
+        assertEquals(StatsService.OTHER_INITIAL, StatsService.initialOf(null));
+        assertEquals(StatsService.UNKNOWN_CREATED, StatsService.createdOf("custom"));
+    }
+
+    private static Document facets() {
+        return new Document("total", Collections.singletonList(new Document("count", 3)))
+                .append("initials", Arrays.asList(new Document("_id", "B").append("count", 2),
+                        new Document("_id", "1").append("count", 1)))
+                .append("created", Arrays.asList(
+                        new Document("_id", new ObjectId(Date.from(Instant.parse("2018-01-01T00:00:00Z"))))
+                                .append("count", 2),
+                        new Document("_id", StatsService.UNKNOWN_CREATED).append("count", 1)))
+                .append("categories", Collections.singletonList(new Document("_id", "c1").append("count", 2)));
+    }
+
+    private void saved(String id, String lastName, String... categoryIds) {
+        saved(id, 0L, lastName, categoryIds);
+    }
+
+    private void saved(String id, Long version, String lastName, String... categoryIds) {
+        Vendor vendor = Vendor.builder().id(id).version(version).lastName(lastName)
+                .categoryIds(Arrays.asList(categoryIds)).build();
+        statsService.onAfterSave(new AfterSaveEvent<>(vendor, new Document(), "vendor"));
+    }
+}
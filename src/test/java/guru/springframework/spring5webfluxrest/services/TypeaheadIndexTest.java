@@ -0,0 +1,105 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.SearchHit;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TypeaheadIndexTest {
+
+    TypeaheadIndex typeaheadIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        typeaheadIndex = new TypeaheadIndex();
+        typeaheadIndex.index(SearchHit.of(Vendor.builder().id("1").fistName("Joe").lastName("Buck").build()), 0L);
+        typeaheadIndex.index(SearchHit.of(Vendor.builder().id("2").fistName("Jessie").lastName("Waters").build()), 0L);
+        typeaheadIndex.index(SearchHit.of(Category.builder().id("3").description("Fruits").build()), 0L);
+    }
+
+    @Test
+    public void searchByPrefix() {
+        List<SearchHit> hits = typeaheadIndex.search("j", 10);
+
+        assertEquals(2, hits.size());
+        assertEquals("Jessie Waters", hits.get(0).getText());
+        assertEquals("Joe Buck", hits.get(1).getText());
+    }
+
+    @Test
+    public void searchMatchesLaterWords() {
+        List<SearchHit> hits = typeaheadIndex.search("BU", 10);
+
+        assertEquals(1, hits.size());
+        assertEquals("1", hits.get(0).getId());
+        assertEquals(SearchHit.VENDOR, hits.get(0).getType());
+    }
+
+    @Test
+    public void searchLimit() {
+        assertEquals(1, typeaheadIndex.search("j", 1).size());
+        assertTrue(typeaheadIndex.search(" ", 10).isEmpty());
+    }
+
+    @Test
+    public void reindexReplacesTerms() {
+        typeaheadIndex.index(SearchHit.of(Category.builder().id("3").description("Nuts").build()), 1L);
+
+        assertTrue(typeaheadIndex.search("fr", 10).isEmpty());
+        assertEquals(1, typeaheadIndex.search("nu", 10).size());
+        assertEquals(3, typeaheadIndex.size());
+    }
+
+    @Test
+    public void olderVersionIsIgnored() {
+        typeaheadIndex.index(SearchHit.of(Category.builder().id("3").description("Nuts").build()), 2L);
+        typeaheadIndex.index(SearchHit.of(Category.builder().id("3").description("Fruits").build()), 1L);
+
+        assertTrue(typeaheadIndex.search("fr", 10).isEmpty());
+        assertEquals(1, typeaheadIndex.search("nu", 10).size());
+    }
+
+    @Test
+    public void remove() {
+        typeaheadIndex.remove(SearchHit.VENDOR, "1");
+
+        assertEquals(1, typeaheadIndex.search("j", 10).size());
+        assertTrue(typeaheadIndex.search("buck", 10).isEmpty());
+    }
+
+    @Test
+    public void removedVersionsStayRemoved() {
+        typeaheadIndex.remove(SearchHit.VENDOR, "1");
+        typeaheadIndex.index(SearchHit.of(Vendor.builder().id("1").fistName("Joe").lastName("Buck").build()), 0L);
+
+        assertTrue(typeaheadIndex.search("buck", 10).isEmpty());
+
+        typeaheadIndex.index(SearchHit.of(Vendor.builder().id("1").fistName("Joe").lastName("Buck").build()), 1L);
+
+        assertEquals(1, typeaheadIndex.search("buck", 10).size());
+    }
+
+    @Test
+    public void removedBeforeIndexedStaysRemoved() {
+        typeaheadIndex.remove(SearchHit.CATEGORY, "4");
+        typeaheadIndex.index(SearchHit.of(Category.builder().id("4").description("Nuts").build()), 7L);
+
+        assertTrue(typeaheadIndex.search("nu", 10).isEmpty());
+        assertEquals(Collections.singleton("3"), typeaheadIndex.ids(SearchHit.CATEGORY));
+    }
+
+    @Test
+    public void idsByType() {
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), typeaheadIndex.ids(SearchHit.VENDOR));
+        assertEquals(Collections.singleton("3"), typeaheadIndex.ids(SearchHit.CATEGORY));
+    }
+}
@@ -0,0 +1,309 @@
+package guru.springframework.spring5webfluxrest.services;
+
+import com.mongodb.client.result.UpdateResult;
+import guru.springframework.spring5webfluxrest.config.VendorViewProperties;
+import guru.springframework.spring5webfluxrest.domain.Category;
+import guru.springframework.spring5webfluxrest.domain.CategoryRef;
+import guru.springframework.spring5webfluxrest.domain.ChangeEvent;
+import guru.springframework.spring5webfluxrest.domain.Vendor;
+import guru.springframework.spring5webfluxrest.domain.VendorView;
+import com.mongodb.client.model.changestream.OperationType;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class VendorViewProjectorTest {
+
+    private ReactiveMongoOperations mongoOperations;
+    private ChangeStreamService changeStreamService;
+    private DirectProcessor<ChangeEvent> categoryChanges;
+    private VendorViewProperties vendorViewProperties;
+    private VendorViewProjector projector;
+
+    @Before
+    public void setUp() throws Exception {
+        MappingMongoConverter converter = new MappingMongoConverter(Mockito.mock(DbRefResolver.class),
+                new MongoMappingContext());
+        converter.afterPropertiesSet();
+        mongoOperations = Mockito.mock(ReactiveMongoOperations.class);
+        given(mongoOperations.getConverter()).willReturn(converter);
+        given(mongoOperations.upsert(any(Query.class), any(Update.class), eq(VendorView.class)))
+                .willReturn(Mono.just(UpdateResult.acknowledged(0, 0L, null)));
+        given(mongoOperations.updateMulti(any(Query.class), any(Update.class), eq(VendorView.class)))
+                .willReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+
+        changeStreamService = Mockito.mock(ChangeStreamService.class);
+        categoryChanges = DirectProcessor.create();
+        given(changeStreamService.changes(Vendor.class)).willReturn(Flux.never());
+        given(changeStreamService.changes(Category.class)).willReturn((Flux) categoryChanges);
+
+        vendorViewProperties = new VendorViewProperties();
+        projector = new VendorViewProjector(mongoOperations, changeStreamService, vendorViewProperties);
+        projector.start();
+    }
+
+    @Test
+    public void vendorSaveEmbedsItsCategories() {
+        given(mongoOperations.find(any(Query.class), eq(Category.class)))
+                .willReturn(Flux.just(Category.builder().id("c2").description("Nuts").version(4L).build(),
+                        Category.builder().id("c1").description("Fruits").version(1L).build()));
+
+        projector.onAfterSave(new AfterSaveEvent<>(Vendor.builder().id("v1").fistName("Joe").lastName("Buck")
+                .categoryIds(Arrays.asList("c1", "missing", "c2", "c1")).version(3L).build(), new Document(), "vendor"));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        then(mongoOperations).should().upsert(query.capture(), update.capture(), eq(VendorView.class));
+
+        assertEquals(new Document("_id", "v1").append("version", new Document("$lte", 3L)),
+                query.getValue().getQueryObject());
+        Document set = (Document) update.getValue().getUpdateObject().get("$set");
+        assertEquals("Buck", set.get("lastName"));
+        assertEquals(3L, set.get("version"));
+        assertEquals(Arrays.asList(
+                CategoryRef.builder().id("c1").description("Fruits").version(1L).build(),
+                CategoryRef.builder().id("c2").description("Nuts").version(4L).build()), set.get("categories"));
+    }
+
+    @Test
+    public void vendorWithoutCategoriesIsProjectedWithoutLookup() {
+        projector.onAfterSave(new AfterSaveEvent<>(Vendor.builder().id("v1").build(), new Document(), "vendor"));
+
+        then(mongoOperations).should(never()).find(any(Query.class), eq(Category.class));
+        then(mongoOperations).should().upsert(any(Query.class), any(Update.class), eq(VendorView.class));
+    }
+
+    @Test
+    public void olderVendorVersionIsIgnored() {
+        given(mongoOperations.upsert(any(Query.class), any(Update.class), eq(VendorView.class)))
+                .willReturn(Mono.error(new DuplicateKeyException("E11000")));
+
+        StepVerifier.create(projector.rebuild(Vendor.builder().id("v1").version(1L).build()))
+                .verifyComplete();
+    }
+
+    @Test
+    public void categorySaveUpdatesStaleDescriptions() {
+        projector.onAfterSave(new AfterSaveEvent<>(Category.builder().id("c1").description("Fresh fruits").version(2L).build(),
+                new Document(), "category"));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        then(mongoOperations).should().updateMulti(query.capture(), update.capture(), eq(VendorView.class));
+
+        assertEquals(new Document("categories", new Document("$elemMatch",
+                        new Document("id", "c1").append("version", new Document("$lt", 2L)))),
+                query.getValue().getQueryObject());
+        assertEquals(new Document("categories.$.description", "Fresh fruits").append("categories.$.version", 2L),
+                update.getValue().getUpdateObject().get("$set"));
+    }
+
+    @Test
+    public void categoryInsertRebuildsVendorsReferencingIt() {
+        given(mongoOperations.find(new Query(where("categoryIds").is("c1")), Vendor.class))
+                .willReturn(Flux.just(Vendor.builder().id("v1").categoryIds(Collections.singletonList("c1")).build()));
+        given(mongoOperations.find(any(Query.class), eq(Category.class)))
+                .willReturn(Flux.just(Category.builder().id("c1").description("Fruits").version(0L).build()));
+
+        projector.onAfterSave(new AfterSaveEvent<>(Category.builder().id("c1").description("Fruits").version(0L).build(),
+                new Document(), "category"));
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        then(mongoOperations).should().upsert(eq(new Query(where("_id").is("v1").and("version").lte(0L))),
+                update.capture(), eq(VendorView.class));
+        assertEquals(Collections.singletonList(CategoryRef.builder().id("c1").description("Fruits").version(0L).build()),
+                ((Document) update.getValue().getUpdateObject().get("$set")).get("categories"));
+        then(mongoOperations).should(never()).updateMulti(any(Query.class), any(Update.class), eq(VendorView.class));
+    }
+
+    @Test
+    public void categoryChangedElsewhereIsApplied() {
+        categoryChanges.onNext(ChangeEvent.builder().operation(OperationType.UPDATE).id("c1")
+                .document(new Document("_id", "c1").append("description", "Nuts").append("version", 5L)).build());
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        then(mongoOperations).should().updateMulti(any(Query.class), update.capture(), eq(VendorView.class));
+        assertEquals("Nuts", ((Document) update.getValue().getUpdateObject().get("$set")).get("categories.$.description"));
+    }
+
+    @Test
+    public void deletesRemoveViewsAndEmbeddedCategories() {
+        given(mongoOperations.remove(any(Query.class), eq(VendorView.class))).willReturn(Mono.empty());
+
+        projector.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", "v1"), Object.class, "vendor"));
+        projector.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", "c1"), Object.class, "category"));
+
+        then(mongoOperations).should().remove(new Query(where("_id").is("v1")), VendorView.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        then(mongoOperations).should().updateMulti(any(Query.class), update.capture(), eq(VendorView.class));
+        assertEquals(new Document("categories", new Document("id", "c1")), update.getValue().getUpdateObject().get("$pull"));
+    }
+
+    @Test
+    public void failedTaskDoesNotStopLaterOnes() {
+        given(mongoOperations.upsert(any(Query.class), any(Update.class), eq(VendorView.class)))
+                .willReturn(Mono.error(new IllegalStateException("down")))
+                .willReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+
+        projector.onAfterSave(new AfterSaveEvent<>(Vendor.builder().id("v1").build(), new Document(), "vendor"));
+        projector.onAfterSave(new AfterSaveEvent<>(Vendor.builder().id("v2").build(), new Document(), "vendor"));
+
+        then(mongoOperations).should(Mockito.times(2)).upsert(any(Query.class), any(Update.class), eq(VendorView.class));
+    }
+
+    @Test
+    public void loadRebuildsMissingAndOutdatedViews() {
+        given(mongoOperations.find(any(Query.class), eq(VendorView.class)))
+                .willReturn(Flux.just(VendorView.builder().id("current").version(2L).build(),
+                        VendorView.builder().id("outdated").version(1L).build()));
+        given(mongoOperations.findAll(Vendor.class))
+                .willReturn(Flux.just(Vendor.builder().id("current").version(2L).build(),
+                        Vendor.builder().id("outdated").version(2L).build(),
+                        Vendor.builder().id("missing").build()));
+
+        assertEquals(Long.valueOf(2), projector.load().block());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        then(mongoOperations).should(Mockito.times(2)).upsert(query.capture(), any(Update.class), eq(VendorView.class));
+        assertEquals(Arrays.asList("outdated", "missing"), ids(query.getAllValues()));
+    }
+
+    @Test
+    public void loadIsOneTaskAheadOfLaterWrites() {
+        DirectProcessor<Vendor> vendors = DirectProcessor.create();
+        given(mongoOperations.find(any(Query.class), eq(VendorView.class))).willReturn(Flux.empty());
+        given(mongoOperations.findAll(Vendor.class)).willReturn(vendors);
+
+        Mono<Long> loaded = projector.load().cache();
+        loaded.subscribe();
+        projector.onAfterSave(new AfterSaveEvent<>(Vendor.builder().id("later").build(), new Document(), "vendor"));
+        then(mongoOperations).should(never()).upsert(any(Query.class), any(Update.class), eq(VendorView.class));
+
+        vendors.onNext(Vendor.builder().id("v1").build());
+        vendors.onNext(Vendor.builder().id("v2").build());
+        vendors.onComplete();
+
+        assertEquals(Long.valueOf(2), loaded.block());
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        then(mongoOperations).should(Mockito.times(3)).upsert(query.capture(), any(Update.class), eq(VendorView.class));
+        assertEquals(Arrays.asList("v1", "v2", "later"), ids(query.getAllValues()));
+    }
+
+    @Test
+    public void pendingWritesToAVendorAreCoalesced() {
+        MonoProcessor<UpdateResult> blocked = MonoProcessor.create();
+        given(mongoOperations.upsert(any(Query.class), any(Update.class), eq(VendorView.class)))
+                .willReturn(blocked)
+                .willReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+
+        saved(Vendor.builder().id("running").build());
+        saved(Vendor.builder().id("v1").lastName("A").version(1L).build());
+        saved(Vendor.builder().id("v1").lastName("B").version(2L).build());
+        blocked.onNext(UpdateResult.acknowledged(1, 1L, null));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        then(mongoOperations).should(Mockito.times(2)).upsert(query.capture(), update.capture(), eq(VendorView.class));
+        assertEquals(Arrays.asList("running", "v1"), ids(query.getAllValues()));
+        assertEquals("B", ((Document) update.getValue().getUpdateObject().get("$set")).get("lastName"));
+    }
+
+    @Test
+    public void tooManyPendingVendorsAreLeftToOnePass() {
+        vendorViewProperties.setMaxPending(1);
+        MonoProcessor<UpdateResult> blocked = MonoProcessor.create();
+        given(mongoOperations.upsert(any(Query.class), any(Update.class), eq(VendorView.class)))
+                .willReturn(blocked)
+                .willReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+        given(mongoOperations.find(any(Query.class), eq(VendorView.class)))
+                .willReturn(Flux.just(VendorView.builder().id("running").version(0L).build(),
+                        VendorView.builder().id("v1").version(0L).build()));
+        given(mongoOperations.findAll(Vendor.class))
+                .willReturn(Flux.just(Vendor.builder().id("running").build(), Vendor.builder().id("v1").build(),
+                        Vendor.builder().id("v2").build(), Vendor.builder().id("v3").build()));
+
+        saved(Vendor.builder().id("running").build());
+        saved(Vendor.builder().id("v1").build());
+        saved(Vendor.builder().id("v2").build());
+        saved(Vendor.builder().id("v3").build());
+        blocked.onNext(UpdateResult.acknowledged(1, 1L, null));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        then(mongoOperations).should(Mockito.times(4)).upsert(query.capture(), any(Update.class), eq(VendorView.class));
+        assertEquals(Arrays.asList("running", "v1", "v2", "v3"), ids(query.getAllValues()));
+        then(mongoOperations).should().findAll(Vendor.class);
+    }
+
+    @Test
+    public void localWritesAreLeftToTheChangeStreamWhenEnabled() {
+        given(changeStreamService.isEnabled()).willReturn(true);
+
+        saved(Vendor.builder().id("v1").build());
+        projector.onAfterDelete(new AfterDeleteEvent<>(new Document("_id", "c1"), Object.class, "category"));
+
+        then(mongoOperations).should(never()).upsert(any(Query.class), any(Update.class), eq(VendorView.class));
+        then(mongoOperations).should(never()).updateMulti(any(Query.class), any(Update.class), eq(VendorView.class));
+    }
+
+    @Test
+    public void missedChangesRebuildEveryView() {
+        given(mongoOperations.remove(any(Query.class), eq(VendorView.class))).willReturn(Mono.empty());
+        given(mongoOperations.find(any(Query.class), eq(VendorView.class)))
+                .willReturn(Flux.just(VendorView.builder().id("current").build(),
+                        VendorView.builder().id("deleted").build()));
+        given(mongoOperations.findAll(Vendor.class))
+                .willReturn(Flux.just(Vendor.builder().id("current").build()));
+
+        categoryChanges.onNext(ChangeEvent.invalidated());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        then(mongoOperations).should().upsert(query.capture(), any(Update.class), eq(VendorView.class));
+        assertEquals("current", query.getValue().getQueryObject().get("_id"));
+        then(mongoOperations).should().remove(new Query(where("_id").is("deleted")), VendorView.class);
+    }
+
+    @Test
+    public void refsKeepVendorOrder() {
+        Map<String, Category> found = Collections.singletonMap("c1", Category.builder().id("c1").description("d").build());
+
+        assertEquals(Collections.singletonList(CategoryRef.builder().id("c1").description("d").version(0L).build()),
+                VendorViewProjector.refs(Arrays.asList("c0", "c1"), found));
+    }
+
+    private void saved(Vendor vendor) {
+        projector.onAfterSave(new AfterSaveEvent<>(vendor, new Document(), "vendor"));
+    }
+
+    private static List<Object> ids(List<Query> queries) {
+        return Arrays.asList(queries.stream().map(query -> query.getQueryObject().get("_id")).toArray());
+    }
+}